@@ -30,18 +30,120 @@ public @interface WorkflowConfig {
     )
     int maxActiveExecutions() default 50;
 
+    @AttributeDefinition(
+        name = "Execution Worker Threads",
+        description = "Number of worker threads running workflow executions"
+    )
+    int executionWorkerThreads() default 10;
+
+    @AttributeDefinition(
+        name = "Execution Queue Depth",
+        description = "Maximum number of admitted executions waiting for a free execution slot before new starts are rejected"
+    )
+    int executionQueueDepth() default 500;
+
+    @AttributeDefinition(
+        name = "Priority Aging (seconds)",
+        description = "Waiting time after which a queued execution is scheduled as if it had the next higher priority. 0 disables aging"
+    )
+    long priorityAgingSeconds() default 30;
+
+    @AttributeDefinition(
+        name = "Max Admission Wait (ms)",
+        description = "Upper bound for the time a start request may block waiting for queue capacity when it asks to wait instead of being rejected"
+    )
+    long maxAdmissionWaitMillis() default 5000;
+
+    @AttributeDefinition(
+        name = "Idempotency Key TTL (minutes)",
+        description = "How long the Idempotency-Key of an execution start is remembered, so retries return the original execution"
+    )
+    long idempotencyKeyTtlMinutes() default 1440;
+
+    @AttributeDefinition(
+        name = "Max Idempotency Keys",
+        description = "Maximum number of remembered idempotency keys. The oldest keys are forgotten first"
+    )
+    int maxIdempotencyKeys() default 100000;
+
+    @AttributeDefinition(
+        name = "Max Executions Per User",
+        description = "Maximum number of running executions started by one user. 0 means no limit"
+    )
+    int maxExecutionsPerUser() default 0;
+
+    @AttributeDefinition(
+        name = "Max Executions Per Workflow",
+        description = "Maximum number of running executions of one workflow. 0 means no limit"
+    )
+    int maxExecutionsPerWorkflow() default 0;
+
+    @AttributeDefinition(
+        name = "User Weights",
+        description = "Fair-share scheduling weights as user=weight entries. Users not listed have weight 1"
+    )
+    String[] userWeights() default {};
+
+    @AttributeDefinition(
+        name = "Workflow Weights",
+        description = "Fair-share scheduling weights as workflowId=weight entries. Workflows not listed have weight 1"
+    )
+    String[] workflowWeights() default {};
+
+    @AttributeDefinition(
+        name = "Execution Plan Cache Size",
+        description = "Maximum number of compiled workflow execution plans to keep in cache"
+    )
+    int planCacheSize() default 200;
+
     @AttributeDefinition(
         name = "Execution Timeout (minutes)",
-        description = "Default timeout for workflow executions in minutes"
+        description = "Time in minutes an execution may run before it is stopped with a timeout status. Paused executions are not timed. 0 disables the timeout"
     )
     long executionTimeoutMinutes() default 60;
 
+    @AttributeDefinition(
+        name = "Max Sub-Workflow Depth",
+        description = "How deeply sub-workflow steps may nest child executions. Guards against workflows that call themselves"
+    )
+    int maxSubWorkflowDepth() default 16;
+
+    @AttributeDefinition(
+        name = "Execution Log Buffer Size",
+        description = "Number of recent log entries kept in memory per execution. Older entries are spilled to disk next to the execution journal"
+    )
+    int executionLogBufferSize() default 256;
+
+    @AttributeDefinition(
+        name = "Max Event Streams",
+        description = "Maximum number of open execution event streams. Further subscribers are refused with 503 until a stream closes"
+    )
+    int maxEventStreams() default 2000;
+
     @AttributeDefinition(
         name = "Enable Persistence",
         description = "Enable persistent storage of workflow executions"
     )
     boolean enablePersistence() default true;
 
+    @AttributeDefinition(
+        name = "Execution Journal Directory",
+        description = "File system directory for the execution write-ahead journal. Defaults to workflow-journal under sling.home"
+    )
+    String journalDirectory() default "";
+
+    @AttributeDefinition(
+        name = "Journal Flush Interval (ms)",
+        description = "Maximum time execution state changes are batched before they are written and fsynced as one group commit"
+    )
+    long journalFlushIntervalMillis() default 10;
+
+    @AttributeDefinition(
+        name = "Journal Compaction Interval (seconds)",
+        description = "How often the execution journal is compacted into JCR"
+    )
+    long journalCompactionIntervalSeconds() default 60;
+
     @AttributeDefinition(
         name = "Workflows Storage Path",
         description = "JCR path for storing workflow definitions"
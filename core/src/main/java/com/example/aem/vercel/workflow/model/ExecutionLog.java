@@ -0,0 +1,460 @@
+package com.example.aem.vercel.workflow.model;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongFunction;
+
+/**
+ * Fixed-capacity ring buffer of the most recent log records of an execution.
+ * Records are stored column-wise: the level as a byte, the step as an index into the step IDs
+ * of the execution's plan, and the message as a constant template with up to two arguments.
+ * Records below the minimum level are dropped before anything is allocated, and messages are
+ * only formatted when a record is read.
+ * <p>
+ * Every record gets a sequence number in append order. Once the buffer is full, the oldest
+ * record's raw columns are handed to the {@link Overflow} before it leaves the buffer, so the
+ * history can be kept outside the heap without formatting it while appends wait. Appends are serialised; reads are lock-free and return a consistent
+ * window of consecutive entries, copying at most the capacity of the buffer.
+ * <p>
+ * The log also keeps the version clock of its execution: every record and every other change
+ * published through {@link #nextVersion} gets the next version, in one total order.
+ */
+public final class ExecutionLog {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final byte DEBUG = 0;
+    public static final byte INFO = 1;
+    public static final byte WARN = 2;
+    public static final byte ERROR = 3;
+
+    /** Step index of records that do not belong to a step. */
+    public static final int NO_STEP = -1;
+
+    private static final String[] LEVEL_NAMES = { "DEBUG", "INFO", "WARN", "ERROR" };
+    private static final String PLACEHOLDER = "{}";
+    private static final int INITIAL_SLOTS = 16;
+
+    private final int capacity;
+    // One spare slot: the append in progress never overwrites a record readers may still copy
+    private final int slotCount;
+    private final byte minLevel;
+    private final StepIndex steps;
+    private final Overflow overflow;
+    // Step IDs the plan does not know, numbered after the plan's steps; guarded by this
+    private List<String> extraSteps;
+    private Map<String, Integer> extraStepIndexes;
+
+    // Grown up to slotCount before the first wrap, so a sequence keeps its slot when the columns grow
+    private volatile Slots slots;
+    // Sequence after the record being written; published before its slot is touched
+    private volatile long reserved;
+    // Number of records ever appended; published after the slot is written
+    private volatile long head;
+    // Latest version given to a record or a change; written under this
+    private volatile long version;
+
+    /**
+     * Dense numbering of step IDs, usually the step order of an execution plan.
+     */
+    public interface StepIndex {
+        StepIndex NONE = new StepIndex() {
+            @Override
+            public int indexOf(String stepId) {
+                return NO_STEP;
+            }
+
+            @Override
+            public String stepIdOf(int index) {
+                return null;
+            }
+
+            @Override
+            public int size() {
+                return 0;
+            }
+        };
+
+        /**
+         * @return the index of the step, or {@link #NO_STEP} if it is unknown
+         */
+        int indexOf(String stepId);
+
+        String stepIdOf(int index);
+
+        int size();
+    }
+
+    /**
+     * Receives records that leave the buffer, in sequence order. It is called while appends wait,
+     * so it should only hand the columns on; {@link #entryOf} formats them later.
+     */
+    @FunctionalInterface
+    public interface Overflow {
+        /**
+         * @param stepId the step of the record, or null
+         * @param template the message template, or null if {@code arg1} is a prebuilt entry
+         */
+        void overflow(long sequence, long timestamp, byte level, String stepId, String template,
+                      Object arg1, Object arg2);
+    }
+
+    public ExecutionLog() {
+        this(DEFAULT_CAPACITY, DEBUG, StepIndex.NONE, null);
+    }
+
+    /**
+     * @param capacity the number of records kept in memory
+     * @param minLevel records below this level are dropped
+     * @param steps the step IDs records refer to by index
+     * @param overflow where older records go, or null to drop them
+     */
+    public ExecutionLog(int capacity, byte minLevel, StepIndex steps, Overflow overflow) {
+        this.capacity = Math.max(1, capacity);
+        this.slotCount = this.capacity + 1;
+        this.minLevel = minLevel;
+        this.steps = steps != null ? steps : StepIndex.NONE;
+        this.overflow = overflow;
+        this.slots = new Slots(Math.min(slotCount, INITIAL_SLOTS));
+    }
+
+    /**
+     * @return true if records of the level are kept, for callers that need work to build arguments
+     */
+    public boolean isEnabled(byte level) {
+        return level >= minLevel;
+    }
+
+    public void append(byte level, int step, String template) {
+        if (level >= minLevel) {
+            write(level, step, template, null, null);
+        }
+    }
+
+    /**
+     * Append a record whose message is the template with its {@code {}} replaced by the argument.
+     * The argument is formatted when the record is read, so it should be immutable.
+     */
+    public void append(byte level, int step, String template, Object arg) {
+        if (level >= minLevel) {
+            write(level, step, template, arg, null);
+        }
+    }
+
+    public void append(byte level, int step, String template, Object arg1, Object arg2) {
+        if (level >= minLevel) {
+            write(level, step, template, arg1, arg2);
+        }
+    }
+
+    /**
+     * Append a prebuilt entry as is, e.g. one restored from storage.
+     */
+    public void append(WorkflowLogEntryModel entry) {
+        if (entry != null) {
+            byte level = levelOf(entry.getLevel());
+            if (level >= minLevel) {
+                // A null template marks the argument as the entry itself
+                write(level, NO_STEP, null, entry, null);
+            }
+        }
+    }
+
+    private synchronized void write(byte level, int step, String template, Object arg1, Object arg2) {
+        long sequence = head;
+        Slots current = slots;
+        // The record leaving the window of the latest capacity records goes to the overflow
+        long leaving = sequence - capacity;
+        if (overflow != null && leaving >= 0) {
+            int slot = (int) (leaving % slotCount);
+            overflow.overflow(leaving, current.timestamps[slot], current.levels[slot], stepIdOf(current.steps[slot]),
+                current.templates[slot], current.firstArgs[slot], current.secondArgs[slot]);
+        }
+        if (sequence == current.length() && sequence < slotCount) {
+            current = current.grow((int) Math.min(slotCount, (long) current.length() * 2));
+            slots = current;
+        }
+        // Readers that see any column of this record being written also see the reservation
+        reserved = sequence + 1;
+        VarHandle.storeStoreFence();
+        int slot = (int) (sequence % slotCount);
+        current.versions[slot] = ++version;
+        current.timestamps[slot] = System.currentTimeMillis();
+        current.levels[slot] = level;
+        current.steps[slot] = step;
+        current.templates[slot] = template;
+        current.firstArgs[slot] = arg1;
+        current.secondArgs[slot] = arg2;
+        head = sequence + 1;
+    }
+
+    /**
+     * Run an action with the next version, ordered with the versions of records.
+     * The action runs while appends wait, so it must be short.
+     */
+    public synchronized <T> T nextVersion(LongFunction<T> action) {
+        return action.apply(++version);
+    }
+
+    /**
+     * Continue the version clock of a log this one replaces, so versions never go back.
+     */
+    public synchronized void advanceTo(long previousVersion) {
+        if (previousVersion > version) {
+            version = previousVersion;
+        }
+    }
+
+    /**
+     * @return the latest version given to a record or a change
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the index records use for the step, numbering step IDs the plan does not know
+     */
+    public int stepIndexOf(String stepId) {
+        if (stepId == null) {
+            return NO_STEP;
+        }
+        int index = steps.indexOf(stepId);
+        if (index != NO_STEP) {
+            return index;
+        }
+        synchronized (this) {
+            if (extraStepIndexes == null) {
+                extraSteps = new ArrayList<>();
+                extraStepIndexes = new HashMap<>();
+            }
+            return extraStepIndexes.computeIfAbsent(stepId, id -> {
+                extraSteps.add(id);
+                return steps.size() + extraSteps.size() - 1;
+            });
+        }
+    }
+
+    private String stepIdOf(int index) {
+        if (index < 0) {
+            return null;
+        }
+        if (index < steps.size()) {
+            return steps.stepIdOf(index);
+        }
+        synchronized (this) {
+            return extraSteps != null ? extraSteps.get(index - steps.size()) : null;
+        }
+    }
+
+    /**
+     * Replace the whole log, e.g. when an execution is deserialised.
+     */
+    public synchronized void reset(List<WorkflowLogEntryModel> entries) {
+        slots = new Slots(Math.min(slotCount, INITIAL_SLOTS));
+        reserved = 0;
+        head = 0;
+        if (entries != null) {
+            for (WorkflowLogEntryModel entry : entries) {
+                append(entry);
+            }
+        }
+    }
+
+    /**
+     * Read the most recent records still in memory.
+     *
+     * @param limit the maximum number of entries, 0 or less for all entries in memory
+     * @return consecutive entries ending with the latest one
+     */
+    public Window window(int limit) {
+        return window(limit, 0);
+    }
+
+    /**
+     * Read the records still in memory that are newer than a version.
+     *
+     * @param limit the maximum number of entries, 0 or less for no limit
+     * @param afterVersion only records with a higher version are returned
+     * @return consecutive entries ending with the latest one
+     */
+    public Window window(int limit, long afterVersion) {
+        long end = head;
+        Slots current = slots;
+        long available = Math.min(end, capacity);
+        int count = (int) (limit > 0 ? Math.min(limit, available) : available);
+        long start = end - count;
+
+        // Copy the raw columns first and format only the records that survive validation
+        long[] versions = new long[count];
+        long[] timestamps = new long[count];
+        byte[] levels = new byte[count];
+        int[] stepIndexes = new int[count];
+        String[] templates = new String[count];
+        Object[] firstArgs = new Object[count];
+        Object[] secondArgs = new Object[count];
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((start + i) % slotCount);
+            versions[i] = current.versions[slot];
+            timestamps[i] = current.timestamps[slot];
+            levels[i] = current.levels[slot];
+            stepIndexes[i] = current.steps[slot];
+            templates[i] = current.templates[slot];
+            firstArgs[i] = current.firstArgs[slot];
+            secondArgs[i] = current.secondArgs[slot];
+        }
+        // Appends that raced with the copy may have overwritten its oldest slots; drop those
+        VarHandle.loadLoadFence();
+        int skip = (int) Math.max(0, Math.min(count, reserved - capacity - start));
+        // Versions grow with sequence numbers
+        boolean complete = start + skip == 0;
+        while (skip < count && versions[skip] <= afterVersion) {
+            skip++;
+            complete = true;
+        }
+
+        List<WorkflowLogEntryModel> entries = new ArrayList<>(count - skip);
+        for (int i = skip; i < count; i++) {
+            entries.add(toEntry(timestamps[i], levels[i], stepIndexes[i], templates[i], firstArgs[i], secondArgs[i]));
+        }
+        long lastVersion = count > skip ? versions[count - 1] : 0;
+        return new Window(start + skip, end, Collections.unmodifiableList(entries), lastVersion, complete);
+    }
+
+    private WorkflowLogEntryModel toEntry(long timestamp, byte level, int step, String template,
+                                          Object arg1, Object arg2) {
+        return entryOf(timestamp, level, template != null ? stepIdOf(step) : null, template, arg1, arg2);
+    }
+
+    /**
+     * Format the columns of a record into an entry.
+     */
+    public static WorkflowLogEntryModel entryOf(long timestamp, byte level, String stepId, String template,
+                                                Object arg1, Object arg2) {
+        if (template == null) {
+            return (WorkflowLogEntryModel) arg1;
+        }
+        WorkflowLogEntryModel entry = new WorkflowLogEntryModel(timestamp, levelName(level), format(template, arg1, arg2));
+        entry.setStepId(stepId);
+        return entry;
+    }
+
+    /**
+     * @return the number of records ever appended, including those no longer in memory
+     */
+    public long size() {
+        return head;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Replace the first {@code {}} placeholders of a template by the arguments, in order.
+     */
+    static String format(String template, Object arg1, Object arg2) {
+        if (arg1 == null && arg2 == null) {
+            return template;
+        }
+        StringBuilder message = new StringBuilder(template.length() + 32);
+        int from = 0;
+        for (int i = 0; i < 2; i++) {
+            int at = template.indexOf(PLACEHOLDER, from);
+            if (at < 0) {
+                break;
+            }
+            message.append(template, from, at).append(i == 0 ? arg1 : arg2);
+            from = at + PLACEHOLDER.length();
+        }
+        return message.append(template, from, template.length()).toString();
+    }
+
+    /**
+     * @return the level of a level name, INFO for unknown names
+     */
+    public static byte levelOf(String level) {
+        for (byte i = 0; i < LEVEL_NAMES.length; i++) {
+            if (LEVEL_NAMES[i].equals(level)) {
+                return i;
+            }
+        }
+        return INFO;
+    }
+
+    public static String levelName(byte level) {
+        return level >= 0 && level < LEVEL_NAMES.length ? LEVEL_NAMES[level] : LEVEL_NAMES[INFO];
+    }
+
+    /**
+     * Column storage of the ring; replaced as a whole when it grows.
+     */
+    private static final class Slots {
+        private final long[] versions;
+        private final long[] timestamps;
+        private final byte[] levels;
+        private final int[] steps;
+        private final String[] templates;
+        private final Object[] firstArgs;
+        private final Object[] secondArgs;
+
+        Slots(int length) {
+            versions = new long[length];
+            timestamps = new long[length];
+            levels = new byte[length];
+            steps = new int[length];
+            templates = new String[length];
+            firstArgs = new Object[length];
+            secondArgs = new Object[length];
+        }
+
+        int length() {
+            return levels.length;
+        }
+
+        Slots grow(int length) {
+            Slots grown = new Slots(length);
+            int count = length();
+            System.arraycopy(versions, 0, grown.versions, 0, count);
+            System.arraycopy(timestamps, 0, grown.timestamps, 0, count);
+            System.arraycopy(levels, 0, grown.levels, 0, count);
+            System.arraycopy(steps, 0, grown.steps, 0, count);
+            System.arraycopy(templates, 0, grown.templates, 0, count);
+            System.arraycopy(firstArgs, 0, grown.firstArgs, 0, count);
+            System.arraycopy(secondArgs, 0, grown.secondArgs, 0, count);
+            return grown;
+        }
+    }
+
+    /**
+     * Consecutive log entries with the sequence number of the first one.
+     */
+    public static final class Window {
+        private final long firstSequence;
+        private final long totalEntries;
+        private final List<WorkflowLogEntryModel> entries;
+        private final long lastVersion;
+        private final boolean complete;
+
+        Window(long firstSequence, long totalEntries, List<WorkflowLogEntryModel> entries,
+               long lastVersion, boolean complete) {
+            this.firstSequence = firstSequence;
+            this.totalEntries = totalEntries;
+            this.entries = entries;
+            this.lastVersion = lastVersion;
+            this.complete = complete;
+        }
+
+        public long getFirstSequence() { return firstSequence; }
+        public long getTotalEntries() { return totalEntries; }
+        public List<WorkflowLogEntryModel> getEntries() { return entries; }
+        /** @return the version of the last entry, 0 if there are no entries */
+        public long getLastVersion() { return lastVersion; }
+        /** @return false if records newer than the requested version may have left memory */
+        public boolean isComplete() { return complete; }
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.aem.vercel.workflow.model;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Immutable view of a {@link WorkflowExecutionModel} at one version.
+ * The model publishes a new snapshot on every change of its state, current step or variables;
+ * a snapshot is a handful of fields and shares the variables map and the log with the
+ * versions before it. Reading or serialising a snapshot never contends with the execution.
+ * <p>
+ * Logs are append-only and are read as a consistent window of the latest entries when
+ * {@link #getLogs()} is called, so they may include entries appended after this version.
+ * {@link WorkflowExecutionModel#getChangesSince} reads them consistently with a version instead.
+ * <p>
+ * Versions come from the execution's version clock, which also numbers log records, so they
+ * increase with every change but not by one per snapshot. Each snapshot remembers the version
+ * at which each group of fields last changed, so a {@link Delta} can carry only those.
+ */
+public final class ExecutionSnapshot {
+
+    private final long version;
+    private final String id;
+    private final String workflowId;
+    private final String status;
+    private final long startTime;
+    private final long endTime;
+    private final String currentStep;
+    private final Map<String, Object> variables;
+    private final ExecutionLog executionLog;
+
+    // Version at which each group of fields last changed
+    private final long identityVersion;
+    private final long statusVersion;
+    private final long timesVersion;
+    private final long currentStepVersion;
+    private final long variablesVersion;
+
+    ExecutionSnapshot(WorkflowExecutionModel execution, ExecutionSnapshot previous, long version) {
+        this.version = version;
+        this.id = execution.getId();
+        this.workflowId = execution.getWorkflowId();
+        this.status = execution.getStatus();
+        this.startTime = execution.getStartTime();
+        this.endTime = execution.getEndTime();
+        this.currentStep = execution.getCurrentStep();
+        this.variables = execution.getVariables();
+        this.executionLog = execution.getExecutionLog();
+
+        boolean first = previous == null
+            || !Objects.equals(previous.id, id) || !Objects.equals(previous.workflowId, workflowId);
+        this.identityVersion = first ? version : previous.identityVersion;
+        this.statusVersion = first || !Objects.equals(previous.status, status) ? version : previous.statusVersion;
+        this.timesVersion = first || previous.startTime != startTime || previous.endTime != endTime
+            ? version : previous.timesVersion;
+        this.currentStepVersion = first || !Objects.equals(previous.currentStep, currentStep)
+            ? version : previous.currentStepVersion;
+        // Variables are a persistent map: every write replaces it
+        this.variablesVersion = first || previous.variables != variables ? version : previous.variablesVersion;
+    }
+
+    /**
+     * @return the version of the execution when this snapshot was published
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getWorkflowId() {
+        return workflowId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public String getCurrentStep() {
+        return currentStep;
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    public List<WorkflowLogEntryModel> getLogs() {
+        return executionLog.window(0).getEntries();
+    }
+
+    ExecutionLog getExecutionLog() {
+        return executionLog;
+    }
+
+    @JsonIgnore
+    public WorkflowExecutionModel.State getState() {
+        return WorkflowExecutionModel.State.fromValue(status);
+    }
+
+    public boolean isRunning() {
+        return WorkflowExecutionModel.State.RUNNING.getValue().equals(status);
+    }
+
+    public boolean isCompleted() {
+        return WorkflowExecutionModel.State.COMPLETED.getValue().equals(status);
+    }
+
+    public boolean isFailed() {
+        return WorkflowExecutionModel.State.FAILED.getValue().equals(status);
+    }
+
+    public boolean isPaused() {
+        return WorkflowExecutionModel.State.PAUSED.getValue().equals(status);
+    }
+
+    public boolean isCancelled() {
+        return WorkflowExecutionModel.State.CANCELLED.getValue().equals(status);
+    }
+
+    public long getDuration() {
+        if (endTime > 0) {
+            return endTime - startTime;
+        }
+        return System.currentTimeMillis() - startTime;
+    }
+
+    /**
+     * The fields of a snapshot that changed after a version, and the log entries appended after it.
+     * Serialises like a snapshot with only the changed properties, plus {@code logsTruncated}
+     * when log entries after the version are no longer in memory.
+     */
+    public static final class Delta {
+        private final long version;
+        private final String id;
+        private final Map<String, Object> changes = new LinkedHashMap<>();
+        private final List<WorkflowLogEntryModel> logs;
+        private final boolean logsTruncated;
+
+        Delta(ExecutionSnapshot snapshot, long sinceVersion, ExecutionLog.Window logs) {
+            this.version = Math.max(sinceVersion, Math.max(snapshot.version, logs.getLastVersion()));
+            this.id = snapshot.id;
+            this.logs = logs.getEntries();
+            this.logsTruncated = !logs.isComplete();
+            if (snapshot.identityVersion > sinceVersion) {
+                changes.put("workflowId", snapshot.workflowId);
+            }
+            if (snapshot.statusVersion > sinceVersion) {
+                changes.put("status", snapshot.status);
+                changes.put("running", snapshot.isRunning());
+                changes.put("completed", snapshot.isCompleted());
+                changes.put("failed", snapshot.isFailed());
+                changes.put("paused", snapshot.isPaused());
+                changes.put("cancelled", snapshot.isCancelled());
+            }
+            if (snapshot.timesVersion > sinceVersion || snapshot.statusVersion > sinceVersion) {
+                changes.put("startTime", snapshot.startTime);
+                changes.put("endTime", snapshot.endTime);
+                changes.put("duration", snapshot.getDuration());
+            }
+            if (snapshot.currentStepVersion > sinceVersion) {
+                changes.put("currentStep", snapshot.currentStep);
+            }
+            if (snapshot.variablesVersion > sinceVersion) {
+                changes.put("variables", snapshot.variables);
+            }
+        }
+
+        /**
+         * @return the version to read changes after next time
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the changed properties; a changed property may be null
+         */
+        @JsonAnyGetter
+        public Map<String, Object> getChanges() {
+            return changes;
+        }
+
+        public List<WorkflowLogEntryModel> getLogs() {
+            return logs;
+        }
+
+        @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+        public boolean isLogsTruncated() {
+            return logsTruncated;
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.example.aem.vercel.workflow.model;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable hash map that shares structure between versions (a hash array mapped trie).
+ * {@link #plus} and {@link #minus} return a new map that copies only the path from the root
+ * to the changed entry, at most seven small arrays, so an update costs a few allocations
+ * regardless of the size of the map, and every earlier version stays valid and unchanged.
+ * That makes a reference to a map a free, consistent snapshot that can be read, iterated
+ * and serialised while writers publish newer versions.
+ * <p>
+ * The {@link Map} mutators throw {@link UnsupportedOperationException}. Null keys and values
+ * are allowed.
+ */
+public final class PersistentHashMap<K, V> extends AbstractMap<K, V> {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    // Seven levels of five bits cover the hash; deeper than that only collision nodes remain
+    private static final int MAX_DEPTH = 8;
+
+    private static final PersistentHashMap<Object, Object> EMPTY =
+        new PersistentHashMap<>(new BitmapNode(0, new Object[0]), 0);
+
+    private final Node root;
+    private final int size;
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * @return a persistent map with the entries of the given map; the map itself if it already is one
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentHashMap) {
+            return (PersistentHashMap<K, V>) map;
+        }
+        return PersistentHashMap.<K, V>empty().plusAll(map);
+    }
+
+    /**
+     * @return a map with the key mapped to the value; this map if it already was
+     */
+    public PersistentHashMap<K, V> plus(K key, V value) {
+        int hash = hash(key);
+        Leaf existing = root.find(hash, key, 0);
+        if (existing != null && existing.getValue() == value) {
+            return this;
+        }
+        return new PersistentHashMap<>(root.put(new Leaf(hash, key, value), 0), existing != null ? size : size + 1);
+    }
+
+    /**
+     * @return a map with all entries of this map and the given one, the given one winning
+     */
+    public PersistentHashMap<K, V> plusAll(Map<? extends K, ? extends V> map) {
+        PersistentHashMap<K, V> result = this;
+        if (map != null) {
+            for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+                result = result.plus(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return a map without the key; this map if it had no such key
+     */
+    public PersistentHashMap<K, V> minus(Object key) {
+        int hash = hash(key);
+        if (root.find(hash, key, 0) == null) {
+            return this;
+        }
+        Object removed = root.remove(hash, key, 0);
+        if (removed == null) {
+            return empty();
+        }
+        Node node = removed instanceof Node ? (Node) removed : BitmapNode.of((Leaf) removed, 0);
+        return new PersistentHashMap<>(node, size - 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return root.find(hash(key), key, 0) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        Leaf leaf = root.find(hash(key), key, 0);
+        return leaf != null ? (V) leaf.getValue() : null;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> entries = entrySet;
+        if (entries == null) {
+            entries = new AbstractSet<Map.Entry<K, V>>() {
+                @Override
+                public Iterator<Map.Entry<K, V>> iterator() {
+                    return new EntryIterator<>(root);
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+            entrySet = entries;
+        }
+        return entries;
+    }
+
+    private static int hash(Object key) {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    private static int bitFor(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * An entry; also the value of the trie slot that holds it.
+     */
+    private static final class Leaf extends AbstractMap.SimpleImmutableEntry<Object, Object> {
+        private final int hash;
+
+        Leaf(int hash, Object key, Object value) {
+            super(key, value);
+            this.hash = hash;
+        }
+
+        boolean matches(int hash, Object key) {
+            return this.hash == hash && Objects.equals(getKey(), key);
+        }
+    }
+
+    private abstract static class Node {
+        abstract Leaf find(int hash, Object key, int shift);
+
+        abstract Node put(Leaf leaf, int shift);
+
+        /**
+         * @return the node without the key, a single remaining leaf to inline in the parent, or null if empty
+         */
+        abstract Object remove(int hash, Object key, int shift);
+
+        /**
+         * @return the children, each a {@link Leaf} or a {@link Node}
+         */
+        abstract Object[] children();
+    }
+
+    /**
+     * Interior node: one slot per set bit of the bitmap, in bit order.
+     */
+    private static final class BitmapNode extends Node {
+        private final int bitmap;
+        private final Object[] children;
+
+        BitmapNode(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        static BitmapNode of(Leaf leaf, int shift) {
+            return new BitmapNode(bitFor(leaf.hash, shift), new Object[] { leaf });
+        }
+
+        @Override
+        Leaf find(int hash, Object key, int shift) {
+            int bit = bitFor(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = children[Integer.bitCount(bitmap & (bit - 1))];
+            if (child instanceof Leaf) {
+                Leaf leaf = (Leaf) child;
+                return leaf.matches(hash, key) ? leaf : null;
+            }
+            return ((Node) child).find(hash, key, shift + BITS);
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift) {
+            int bit = bitFor(leaf.hash, shift);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                Object[] grown = new Object[children.length + 1];
+                System.arraycopy(children, 0, grown, 0, index);
+                grown[index] = leaf;
+                System.arraycopy(children, index, grown, index + 1, children.length - index);
+                return new BitmapNode(bitmap | bit, grown);
+            }
+            Object child = children[index];
+            Object replacement;
+            if (child instanceof Leaf) {
+                Leaf existing = (Leaf) child;
+                replacement = existing.matches(leaf.hash, leaf.getKey())
+                    ? leaf : merge(existing, leaf, shift + BITS);
+            } else {
+                replacement = ((Node) child).put(leaf, shift + BITS);
+            }
+            Object[] copy = children.clone();
+            copy[index] = replacement;
+            return new BitmapNode(bitmap, copy);
+        }
+
+        private static Node merge(Leaf a, Leaf b, int shift) {
+            if (a.hash == b.hash) {
+                return new CollisionNode(a.hash, new Leaf[] { a, b });
+            }
+            int bitA = bitFor(a.hash, shift);
+            int bitB = bitFor(b.hash, shift);
+            if (bitA == bitB) {
+                return new BitmapNode(bitA, new Object[] { merge(a, b, shift + BITS) });
+            }
+            return new BitmapNode(bitA | bitB,
+                Integer.compareUnsigned(bitA, bitB) < 0 ? new Object[] { a, b } : new Object[] { b, a });
+        }
+
+        @Override
+        Object remove(int hash, Object key, int shift) {
+            int bit = bitFor(hash, shift);
+            int index = Integer.bitCount(bitmap & (bit - 1));
+            Object child = children[index];
+            Object replacement = child instanceof Leaf ? null : ((Node) child).remove(hash, key, shift + BITS);
+            if (replacement != null) {
+                Object[] copy = children.clone();
+                copy[index] = replacement;
+                return new BitmapNode(bitmap, copy);
+            }
+            if (children.length == 1) {
+                return null;
+            }
+            if (children.length == 2 && children[1 - index] instanceof Leaf) {
+                return children[1 - index];
+            }
+            Object[] shrunk = new Object[children.length - 1];
+            System.arraycopy(children, 0, shrunk, 0, index);
+            System.arraycopy(children, index + 1, shrunk, index, shrunk.length - index);
+            return new BitmapNode(bitmap & ~bit, shrunk);
+        }
+
+        @Override
+        Object[] children() {
+            return children;
+        }
+    }
+
+    /**
+     * Leaves whose keys have the same full hash.
+     */
+    private static final class CollisionNode extends Node {
+        private final int hash;
+        private final Leaf[] leaves;
+
+        CollisionNode(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        @Override
+        Leaf find(int hash, Object key, int shift) {
+            for (Leaf leaf : leaves) {
+                if (leaf.matches(hash, key)) {
+                    return leaf;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        Node put(Leaf leaf, int shift) {
+            if (leaf.hash != hash) {
+                // A different hash reached this node: split on the bits where they differ
+                return new BitmapNode(bitFor(hash, shift), new Object[] { this }).put(leaf, shift);
+            }
+            for (int i = 0; i < leaves.length; i++) {
+                if (leaves[i].matches(leaf.hash, leaf.getKey())) {
+                    Leaf[] copy = leaves.clone();
+                    copy[i] = leaf;
+                    return new CollisionNode(hash, copy);
+                }
+            }
+            Leaf[] grown = new Leaf[leaves.length + 1];
+            System.arraycopy(leaves, 0, grown, 0, leaves.length);
+            grown[leaves.length] = leaf;
+            return new CollisionNode(hash, grown);
+        }
+
+        @Override
+        Object remove(int hash, Object key, int shift) {
+            int index = 0;
+            while (!leaves[index].matches(hash, key)) {
+                index++;
+            }
+            if (leaves.length == 2) {
+                return leaves[1 - index];
+            }
+            Leaf[] shrunk = new Leaf[leaves.length - 1];
+            System.arraycopy(leaves, 0, shrunk, 0, index);
+            System.arraycopy(leaves, index + 1, shrunk, index, shrunk.length - index);
+            return new CollisionNode(hash, shrunk);
+        }
+
+        @Override
+        Object[] children() {
+            return leaves;
+        }
+    }
+
+    /**
+     * Depth-first walk over the leaves of one version of the trie.
+     */
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+        private final Object[][] stack = new Object[MAX_DEPTH][];
+        private final int[] positions = new int[MAX_DEPTH];
+        private int depth;
+        private Leaf next;
+
+        EntryIterator(Node root) {
+            stack[0] = root.children();
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (depth >= 0) {
+                Object[] children = stack[depth];
+                if (positions[depth] == children.length) {
+                    depth--;
+                    continue;
+                }
+                Object child = children[positions[depth]++];
+                if (child instanceof Leaf) {
+                    next = (Leaf) child;
+                    return;
+                }
+                depth++;
+                stack[depth] = ((Node) child).children();
+                positions[depth] = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Map.Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Leaf current = next;
+            advance();
+            return (Map.Entry<K, V>) (Map.Entry<?, ?>) current;
+        }
+    }
+}
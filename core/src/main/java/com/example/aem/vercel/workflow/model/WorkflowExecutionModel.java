@@ -1,19 +1,21 @@
 package com.example.aem.vercel.workflow.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.models.annotations.DefaultInjectionStrategy;
 import org.apache.sling.models.annotations.Model;
 import org.apache.sling.models.annotations.injectorspecific.ValueMapValue;
 
 import javax.annotation.PostConstruct;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 @Model(
     adaptables = Resource.class,
@@ -23,6 +25,12 @@ import java.util.Map;
 @NoArgsConstructor
 public class WorkflowExecutionModel {
 
+    private static final AtomicReferenceFieldUpdater<WorkflowExecutionModel, String> STATUS =
+        AtomicReferenceFieldUpdater.newUpdater(WorkflowExecutionModel.class, String.class, "status");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<WorkflowExecutionModel, PersistentHashMap> VARIABLES =
+        AtomicReferenceFieldUpdater.newUpdater(WorkflowExecutionModel.class, PersistentHashMap.class, "variables");
+
     @ValueMapValue
     private String id;
 
@@ -30,7 +38,7 @@ public class WorkflowExecutionModel {
     private String workflowId;
 
     @ValueMapValue
-    private String status;
+    private volatile String status;
 
     @ValueMapValue(name = "startTime")
     private long startTime;
@@ -41,16 +49,94 @@ public class WorkflowExecutionModel {
     @ValueMapValue(name = "currentStep")
     private String currentStep;
 
-    private List<WorkflowLogEntryModel> logs;
-    private Map<String, Object> variables;
+    // Set by the engine when a sub-workflow step starts the execution, never from variables
+    @ValueMapValue(name = "subWorkflowDepth")
+    private int subWorkflowDepth;
+
+    // Set by the engine when the execution starts, never from variables; the scheduler accounts
+    // the execution's slot to them, while the startedBy variable is only shown
+    @ValueMapValue(name = "owner")
+    private String owner;
+
+    // Scheduling priority name, set by the engine when the execution starts like the owner;
+    // the priority variable is only shown, so updating it never re-prioritises the execution
+    @ValueMapValue(name = "priority")
+    private String priority;
+
+    // Recent entries in memory; older ones go to the log's overflow
+    @JsonIgnore
+    private transient ExecutionLog executionLog = new ExecutionLog();
+    // Replaced as a whole on every write, so a read of the field is a consistent snapshot
+    private volatile PersistentHashMap<String, Object> variables = PersistentHashMap.empty();
+
+    @JsonIgnore
+    private transient StateListener stateListener;
+
+    // Latest published view; replaced after every change that readers can see
+    @JsonIgnore
+    @Setter(AccessLevel.NONE)
+    private transient volatile ExecutionSnapshot snapshot;
+
+    /**
+     * Execution states and the transitions allowed between them.
+     * Terminal states cannot be left.
+     */
+    public enum State {
+        RUNNING("running"),
+        PAUSED("paused"),
+        COMPLETED("completed"),
+        FAILED("failed"),
+        CANCELLED("cancelled"),
+        TIMEOUT("timeout");
+
+        private final String value;
+
+        State(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public boolean isTerminal() {
+            return this != RUNNING && this != PAUSED;
+        }
+
+        public boolean canTransitionTo(State target) {
+            return !isTerminal() && target != this;
+        }
+
+        /**
+         * @return the state with the given value, or null if it is unknown
+         */
+        public static State fromValue(String value) {
+            for (State state : values()) {
+                if (state.value.equals(value)) {
+                    return state;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return this.getValue();
+        }
+    }
+
+    /**
+     * Callback for state transitions, invoked on the thread that made the transition.
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        void stateChanged(WorkflowExecutionModel execution, State from, State to);
+    }
 
     @PostConstruct
     protected void init() {
-        if (logs == null) {
-            logs = new ArrayList<>();
-        }
         if (variables == null) {
-            variables = new HashMap<>();
+            variables = PersistentHashMap.empty();
         }
     }
 
@@ -60,15 +146,117 @@ public class WorkflowExecutionModel {
             @JsonProperty("workflowId") String workflowId) {
         this.id = id;
         this.workflowId = workflowId;
-        this.status = "running";
+        this.status = State.RUNNING.getValue();
         this.startTime = System.currentTimeMillis();
-        this.logs = new ArrayList<>();
-        this.variables = new HashMap<>();
+        publish();
+    }
+
+    /**
+     * @return the latest immutable view of this execution, for readers on other threads
+     */
+    @JsonIgnore
+    public ExecutionSnapshot getSnapshot() {
+        ExecutionSnapshot current = this.snapshot;
+        return current != null ? current : publish();
+    }
+
+    /**
+     * @return the latest version of this execution, counting changes and log records
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return executionLog.getVersion();
+    }
+
+    /**
+     * Read what changed after a version: the fields changed since, with the log entries still
+     * in memory that were appended since, both as of the same moment. A version newer than
+     * this execution has, e.g. from before a restart, reads everything.
+     */
+    @JsonIgnore
+    public ExecutionSnapshot.Delta getChangesSince(long sinceVersion) {
+        while (true) {
+            ExecutionSnapshot current = getSnapshot();
+            long since = sinceVersion <= current.getExecutionLog().getVersion() ? sinceVersion : 0;
+            ExecutionLog.Window logs = current.getExecutionLog().window(0, since);
+            // A change published during the read may be older than records read; read again
+            if (this.snapshot == current) {
+                return new ExecutionSnapshot.Delta(current, since, logs);
+            }
+        }
+    }
+
+    /**
+     * Publish a snapshot of the current fields with the next version. Publishing is ordered
+     * with log appends by the log's version clock, so the snapshot published last reflects
+     * the latest change even when writers race.
+     */
+    private ExecutionSnapshot publish() {
+        return executionLog.nextVersion(version -> {
+            ExecutionSnapshot next = new ExecutionSnapshot(this, this.snapshot, version);
+            this.snapshot = next;
+            return next;
+        });
+    }
+
+    public void setId(String id) {
+        this.id = id;
+        publish();
+    }
+
+    public void setWorkflowId(String workflowId) {
+        this.workflowId = workflowId;
+        publish();
+    }
+
+    /**
+     * Set the status without a transition, for deserialisation only; the engine moves between
+     * states with {@link #transitionTo} and the methods built on it.
+     */
+    void setStatus(String status) {
+        this.status = status;
+        publish();
+    }
+
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+        publish();
+    }
+
+    public void setEndTime(long endTime) {
+        this.endTime = endTime;
+        publish();
+    }
+
+    public void setCurrentStep(String currentStep) {
+        this.currentStep = currentStep;
+        publish();
+    }
+
+    public void setExecutionLog(ExecutionLog executionLog) {
+        if (this.executionLog != null) {
+            executionLog.advanceTo(this.executionLog.getVersion());
+        }
+        this.executionLog = executionLog;
+        publish();
+    }
+
+    /**
+     * @return a snapshot of the log entries still in memory, oldest first
+     */
+    @JsonProperty("logs")
+    public List<WorkflowLogEntryModel> getLogs() {
+        return executionLog.window(0).getEntries();
+    }
+
+    @JsonProperty("logs")
+    public void setLogs(List<WorkflowLogEntryModel> logs) {
+        executionLog.reset(logs);
     }
 
     // Utility methods
     public void addLog(WorkflowLogEntryModel log) {
-        this.logs.add(log);
+        this.executionLog.append(log);
     }
 
     public void addLog(String level, String message) {
@@ -76,59 +264,161 @@ public class WorkflowExecutionModel {
     }
 
     public void addLog(String level, String message, String stepId) {
-        WorkflowLogEntryModel log = new WorkflowLogEntryModel();
-        log.setTimestamp(System.currentTimeMillis());
-        log.setLevel(level);
-        log.setMessage(message);
-        log.setStepId(stepId);
-        this.logs.add(log);
+        this.executionLog.append(ExecutionLog.levelOf(level), this.executionLog.stepIndexOf(stepId), message);
+    }
+
+    /**
+     * Log a record of a step by index, formatting {@code {}} in the template with the argument
+     * only when the record is read. Below the log's level nothing is allocated.
+     *
+     * @param level one of the {@link ExecutionLog} levels
+     * @param stepIndex the plan index of the step, or {@link ExecutionLog#NO_STEP}
+     */
+    public void addLog(byte level, int stepIndex, String template, Object arg) {
+        this.executionLog.append(level, stepIndex, template, arg);
+    }
+
+    public void addLog(byte level, int stepIndex, String template) {
+        this.executionLog.append(level, stepIndex, template);
+    }
+
+    /**
+     * @return the current variables; an immutable snapshot that later writes do not change
+     */
+    @JsonProperty("variables")
+    public Map<String, Object> getVariables() {
+        return this.variables;
     }
 
+    @JsonProperty("variables")
+    public void setVariables(Map<String, Object> variables) {
+        this.variables = variables != null ? PersistentHashMap.copyOf(variables) : PersistentHashMap.empty();
+        publish();
+    }
+
+    @SuppressWarnings("unchecked")
     public void setVariable(String key, Object value) {
-        this.variables.put(key, value);
+        PersistentHashMap<String, Object> current;
+        do {
+            current = this.variables;
+        } while (!VARIABLES.compareAndSet(this, current, current.plus(key, value)));
+        publish();
+    }
+
+    /**
+     * Set several variables in one atomic update.
+     */
+    @SuppressWarnings("unchecked")
+    public void putVariables(Map<String, Object> values) {
+        PersistentHashMap<String, Object> current;
+        do {
+            current = this.variables;
+        } while (!VARIABLES.compareAndSet(this, current, current.plusAll(values)));
+        publish();
+    }
+
+    @SuppressWarnings("unchecked")
+    public void removeVariable(String key) {
+        PersistentHashMap<String, Object> current;
+        do {
+            current = this.variables;
+        } while (!VARIABLES.compareAndSet(this, current, current.minus(key)));
+        publish();
     }
 
     public Object getVariable(String key) {
         return this.variables.get(key);
     }
 
+    public Map<String, Object> snapshotVariables() {
+        return this.variables;
+    }
+
+    @JsonIgnore
+    public State getState() {
+        return State.fromValue(status);
+    }
+
+    /**
+     * Atomically move to the target state if it can be reached from the current one.
+     * Concurrent transitions are decided by compare-and-set, so e.g. a cancel racing
+     * with completion either wins or observes the terminal state and fails.
+     *
+     * @return true if this call made the transition
+     */
+    public boolean transitionTo(State target) {
+        String current;
+        State from;
+        do {
+            current = this.status;
+            from = State.fromValue(current);
+            if (from == null || !from.canTransitionTo(target)) {
+                return false;
+            }
+        } while (!STATUS.compareAndSet(this, current, target.getValue()));
+
+        if (target.isTerminal()) {
+            this.endTime = System.currentTimeMillis();
+        }
+        if (target == State.COMPLETED) {
+            // Cleared before publishing, so no snapshot shows a completed execution at a step
+            this.currentStep = null;
+        }
+        publish();
+        StateListener listener = this.stateListener;
+        if (listener != null) {
+            listener.stateChanged(this, from, target);
+        }
+        return true;
+    }
+
     public boolean isRunning() {
-        return "running".equals(status);
+        return State.RUNNING.getValue().equals(status);
     }
 
     public boolean isCompleted() {
-        return "completed".equals(status);
+        return State.COMPLETED.getValue().equals(status);
     }
 
     public boolean isFailed() {
-        return "failed".equals(status);
+        return State.FAILED.getValue().equals(status);
     }
 
     public boolean isPaused() {
-        return "paused".equals(status);
+        return State.PAUSED.getValue().equals(status);
     }
 
-    public void complete() {
-        this.status = "completed";
-        this.endTime = System.currentTimeMillis();
-        this.currentStep = null;
+    public boolean isCancelled() {
+        return State.CANCELLED.getValue().equals(status);
     }
 
-    public void fail(String errorMessage) {
-        this.status = "failed";
-        this.endTime = System.currentTimeMillis();
-        this.addLog("ERROR", errorMessage);
+    public boolean complete() {
+        return transitionTo(State.COMPLETED);
     }
 
-    public void pause() {
-        this.status = "paused";
+    public boolean fail(String errorMessage) {
+        if (!transitionTo(State.FAILED)) {
+            return false;
+        }
+        this.addLog(ExecutionLog.ERROR, ExecutionLog.NO_STEP, errorMessage);
+        return true;
     }
 
-    public void resume() {
-        this.status = "running";
+    public boolean cancel(String reason) {
+        if (!transitionTo(State.CANCELLED)) {
+            return false;
+        }
+        this.addLog(ExecutionLog.WARN, ExecutionLog.NO_STEP, "Cancelled: {}", reason);
+        return true;
     }
 
+    public boolean pause() {
+        return transitionTo(State.PAUSED);
+    }
 
+    public boolean resume() {
+        return transitionTo(State.RUNNING);
+    }
 
     public long getDuration() {
         if (endTime > 0) {
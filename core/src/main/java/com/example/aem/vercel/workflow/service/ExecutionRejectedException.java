@@ -0,0 +1,25 @@
+package com.example.aem.vercel.workflow.service;
+
+/**
+ * Thrown when a workflow execution cannot be admitted because the execution queue is full.
+ * Carries an estimate of when capacity is likely to be available again, derived from the
+ * rate at which running executions currently finish.
+ */
+public class ExecutionRejectedException extends IllegalStateException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterMillis;
+
+    public ExecutionRejectedException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * @return the suggested delay before the start is retried, in milliseconds
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.aem.vercel.workflow.service;
+
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import org.osgi.annotation.versioning.ConsumerType;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Behaviour of one or more step types. Register an implementation as an OSGi service with the
+ * {@value #STEP_TYPE_PROPERTY} property naming the step types it runs; when several executors
+ * claim a type, the one with the highest service ranking runs it. Steps of a type without an
+ * executor complete without doing anything.
+ * <p>
+ * {@link #execute} is called on a workflow worker thread and must return without blocking.
+ * Work that waits on I/O or another system belongs on the executor's own threads or an
+ * asynchronous client; the returned stage is completed from there and the execution continues
+ * on a worker once it is. The execution's step stays in flight until then, so a pause or
+ * a recovery waits for it.
+ */
+@ConsumerType
+public interface StepExecutor {
+
+    /**
+     * Service property with the step types, a string or an array of strings, an executor runs.
+     */
+    String STEP_TYPE_PROPERTY = "workflow.step.type";
+
+    /**
+     * Start running a step.
+     *
+     * @param context the step and the execution it runs in
+     * @return a stage completed with variables to set on the execution, or null or an empty map
+     *         for none; completing it exceptionally fails the execution
+     */
+    CompletionStage<Map<String, Object>> execute(StepContext context);
+
+    /**
+     * Describe what a step's result depends on, so identical steps of other executions can share
+     * one invocation. Steps of the same type whose inputs are equal and that start while one of
+     * them is in flight wait for its result instead of calling {@link #execute}; every one of
+     * them receives the same variables, or the same failure. Only in-flight invocations are
+     * shared, nothing is cached. Called on a worker thread before {@link #execute}, so it must
+     * be cheap.
+     *
+     * @param context the step and the execution it runs in
+     * @return the inputs, a value with {@code equals} and {@code hashCode} such as a map of the
+     *         rendered prompt, provider and model of an AI call, or null to always run the step
+     */
+    default Object getCoalescingKey(StepContext context) {
+        return null;
+    }
+
+    /**
+     * Start running a step that reported a coalescing key, so the executor can reuse the work
+     * that went into the key, such as a rendered prompt. Runs {@link #execute(StepContext)} by
+     * default.
+     *
+     * @param context the step and the execution it runs in
+     * @param coalescingKey what {@link #getCoalescingKey} returned for this context
+     * @return as {@link #execute(StepContext)}
+     */
+    default CompletionStage<Map<String, Object>> execute(StepContext context, Object coalescingKey) {
+        return execute(context);
+    }
+
+    /**
+     * Called instead of {@link #execute} when a step waits for the result of an identical step in
+     * flight in another execution, so the executor can log to this execution what the shared
+     * invocation does. Does nothing by default.
+     *
+     * @param context the step that waits and the execution it runs in
+     * @param coalescingKey what {@link #getCoalescingKey} returned for this context
+     * @param leaderExecutionId the execution that runs the shared invocation
+     */
+    default void join(StepContext context, Object coalescingKey, String leaderExecutionId) {
+    }
+
+    /**
+     * The step an executor is asked to run.
+     */
+    interface StepContext {
+
+        String getExecutionId();
+
+        String getWorkflowId();
+
+        WorkflowStepModel getStep();
+
+        /**
+         * @return the execution's variables when the step started; an immutable snapshot
+         */
+        Map<String, Object> getVariables();
+
+        /**
+         * Add an entry to the execution log, attributed to the step.
+         */
+        void log(String message);
+    }
+}
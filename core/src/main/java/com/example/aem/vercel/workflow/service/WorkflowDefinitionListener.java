@@ -0,0 +1,25 @@
+package com.example.aem.vercel.workflow.service;
+
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Listener notified by the {@link WorkflowDefinitionService} when a workflow definition
+ * changes. Register an implementation as an OSGi service to receive notifications.
+ */
+@ConsumerType
+public interface WorkflowDefinitionListener {
+
+    /**
+     * Called after a workflow definition has been updated.
+     *
+     * @param workflowId the workflow ID
+     */
+    void workflowUpdated(String workflowId);
+
+    /**
+     * Called after a workflow definition has been deleted.
+     *
+     * @param workflowId the workflow ID
+     */
+    void workflowDeleted(String workflowId);
+}
@@ -0,0 +1,23 @@
+package com.example.aem.vercel.workflow.service;
+
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import org.osgi.annotation.versioning.ConsumerType;
+
+/**
+ * Listener notified by the {@link WorkflowExecutionService} when an execution changes
+ * state. Register an implementation as an OSGi service to receive notifications.
+ * Notifications are delivered on the thread that made the transition and must not block.
+ */
+@ConsumerType
+public interface WorkflowExecutionListener {
+
+    /**
+     * Called after an execution has moved from one state to another.
+     *
+     * @param execution the execution
+     * @param from the previous state
+     * @param to the new state
+     */
+    void executionStateChanged(WorkflowExecutionModel execution, WorkflowExecutionModel.State from,
+                               WorkflowExecutionModel.State to);
+}
@@ -20,9 +20,64 @@ public interface WorkflowExecutionService {
      * @param userId the user initiating the execution
      * @param initialVariables initial variables for the execution
      * @return the workflow execution instance
+     * @throws ExecutionRejectedException if the execution queue is full
      */
     WorkflowExecutionModel startExecution(String workflowId, String userId, java.util.Map<String, Object> initialVariables);
 
+    /**
+     * Start execution of a workflow with a scheduling priority.
+     * Higher priorities are given free execution slots first; waiting executions are aged
+     * up so low priorities are not starved.
+     *
+     * @param workflowId the workflow ID to execute
+     * @param userId the user initiating the execution
+     * @param initialVariables initial variables for the execution
+     * @param priority the scheduling priority
+     * @return the workflow execution instance
+     * @throws ExecutionRejectedException if the execution queue is full
+     */
+    WorkflowExecutionModel startExecution(String workflowId, String userId, java.util.Map<String, Object> initialVariables,
+                                          Priority priority);
+
+    /**
+     * Start execution of a workflow, waiting a bounded time for queue capacity if the
+     * execution queue is full instead of rejecting the start immediately.
+     *
+     * @param workflowId the workflow ID to execute
+     * @param userId the user initiating the execution
+     * @param initialVariables initial variables for the execution
+     * @param priority the scheduling priority
+     * @param admissionWaitMillis maximum time to wait for queue capacity, capped by configuration; 0 to not wait
+     * @return the workflow execution instance
+     * @throws ExecutionRejectedException if no queue capacity became available in time
+     */
+    WorkflowExecutionModel startExecution(String workflowId, String userId, java.util.Map<String, Object> initialVariables,
+                                          Priority priority, long admissionWaitMillis);
+
+    /**
+     * Start execution of a workflow from a request. If the request carries an idempotency key
+     * that was already used by the same user, the execution started for that key is returned
+     * and no new execution is started.
+     *
+     * @param request the execution to start
+     * @param admissionWaitMillis maximum time to wait for queue capacity, capped by configuration; 0 to not wait
+     * @return the new execution, or the execution started earlier with the same idempotency key
+     * @throws IllegalArgumentException if the idempotency key was used for a different workflow
+     * @throws ExecutionRejectedException if no queue capacity became available in time
+     */
+    WorkflowExecutionModel startExecution(ExecutionRequest request, long admissionWaitMillis);
+
+    /**
+     * Start a batch of executions. Each workflow definition is resolved once per batch, the
+     * executions are admitted together and their initial state is persisted in one commit.
+     * Requests that cannot be started are reported in their result instead of failing the batch.
+     * Requests with an idempotency key that was already used report the earlier execution.
+     *
+     * @param requests the executions to start
+     * @return one result per request, in request order
+     */
+    List<StartResult> startExecutions(List<ExecutionRequest> requests);
+
     /**
      * Get a workflow execution by ID.
      *
@@ -178,6 +233,20 @@ public interface WorkflowExecutionService {
      */
     ExecutionStatistics getExecutionStatistics(String workflowId);
 
+    /**
+     * Get execution scheduler statistics.
+     *
+     * @return current queue and worker saturation of the execution scheduler
+     */
+    SchedulerStatistics getSchedulerStatistics();
+
+    /**
+     * Get fair-share statistics of the per-tenant execution queues.
+     *
+     * @return depth, running executions and wait times of each tenant queue
+     */
+    List<QueueStatistics> getQueueStatistics();
+
     /**
      * Execution statistics data class.
      */
@@ -211,4 +280,194 @@ public interface WorkflowExecutionService {
             return totalExecutions > 0 ? (double) failedExecutions / totalExecutions * 100 : 0;
         }
     }
+
+    /**
+     * Execution scheduler statistics data class.
+     */
+    class SchedulerStatistics {
+        private final int workerThreads;
+        private final int activeWorkers;
+        private final int runningExecutions;
+        private final int maxActiveExecutions;
+        private final int queuedExecutions;
+        private final int queueCapacity;
+        private final long admittedExecutions;
+        private final long rejectedExecutions;
+        private final long finishedExecutions;
+
+        public SchedulerStatistics(int workerThreads, int activeWorkers, int runningExecutions,
+                                 int maxActiveExecutions, int queuedExecutions, int queueCapacity,
+                                 long admittedExecutions, long rejectedExecutions, long finishedExecutions) {
+            this.workerThreads = workerThreads;
+            this.activeWorkers = activeWorkers;
+            this.runningExecutions = runningExecutions;
+            this.maxActiveExecutions = maxActiveExecutions;
+            this.queuedExecutions = queuedExecutions;
+            this.queueCapacity = queueCapacity;
+            this.admittedExecutions = admittedExecutions;
+            this.rejectedExecutions = rejectedExecutions;
+            this.finishedExecutions = finishedExecutions;
+        }
+
+        public int getWorkerThreads() { return workerThreads; }
+        public int getActiveWorkers() { return activeWorkers; }
+        public int getRunningExecutions() { return runningExecutions; }
+        public int getMaxActiveExecutions() { return maxActiveExecutions; }
+        public int getQueuedExecutions() { return queuedExecutions; }
+        public int getQueueCapacity() { return queueCapacity; }
+        public long getAdmittedExecutions() { return admittedExecutions; }
+        public long getRejectedExecutions() { return rejectedExecutions; }
+        public long getFinishedExecutions() { return finishedExecutions; }
+
+        public double getWorkerSaturation() {
+            return workerThreads > 0 ? (double) activeWorkers / workerThreads * 100 : 0;
+        }
+
+        public double getSlotSaturation() {
+            return maxActiveExecutions > 0 ? (double) runningExecutions / maxActiveExecutions * 100 : 0;
+        }
+
+        public double getQueueSaturation() {
+            return queueCapacity > 0 ? (double) queuedExecutions / queueCapacity * 100 : 0;
+        }
+    }
+
+    /**
+     * Scheduling priority of an execution, from lowest to highest.
+     */
+    enum Priority {
+        LOW,
+        NORMAL,
+        HIGH,
+        URGENT;
+
+        /**
+         * @param value priority name, case-insensitive
+         * @return the priority, NORMAL if value is null or empty
+         * @throws IllegalArgumentException if value is not a priority name
+         */
+        public static Priority fromValue(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return NORMAL;
+            }
+            for (Priority priority : values()) {
+                if (priority.name().equalsIgnoreCase(value.trim())) {
+                    return priority;
+                }
+            }
+            throw new IllegalArgumentException("Invalid priority: " + value);
+        }
+    }
+
+    /**
+     * Request to start one execution of a batch.
+     */
+    class ExecutionRequest {
+        private final String workflowId;
+        private final String userId;
+        private final java.util.Map<String, Object> variables;
+        private final Priority priority;
+        private final String idempotencyKey;
+
+        public ExecutionRequest(String workflowId, String userId, java.util.Map<String, Object> variables,
+                                Priority priority) {
+            this(workflowId, userId, variables, priority, null);
+        }
+
+        public ExecutionRequest(String workflowId, String userId, java.util.Map<String, Object> variables,
+                                Priority priority, String idempotencyKey) {
+            this.workflowId = workflowId;
+            this.userId = userId;
+            this.variables = variables;
+            this.priority = priority != null ? priority : Priority.NORMAL;
+            this.idempotencyKey = idempotencyKey != null && !idempotencyKey.isEmpty() ? idempotencyKey : null;
+        }
+
+        public String getWorkflowId() { return workflowId; }
+        public String getUserId() { return userId; }
+        public java.util.Map<String, Object> getVariables() { return variables; }
+        public Priority getPriority() { return priority; }
+        public String getIdempotencyKey() { return idempotencyKey; }
+    }
+
+    /**
+     * Outcome of one request of a batch start: the started execution's ID, or why it was not started.
+     */
+    class StartResult {
+        private final String workflowId;
+        private final String executionId;
+        private final String error;
+        private final long retryAfterMillis;
+
+        private StartResult(String workflowId, String executionId, String error, long retryAfterMillis) {
+            this.workflowId = workflowId;
+            this.executionId = executionId;
+            this.error = error;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public static StartResult started(String workflowId, String executionId) {
+            return new StartResult(workflowId, executionId, null, 0);
+        }
+
+        public static StartResult invalid(String workflowId, String error) {
+            return new StartResult(workflowId, null, error, 0);
+        }
+
+        public static StartResult rejected(String workflowId, String error, long retryAfterMillis) {
+            return new StartResult(workflowId, null, error, retryAfterMillis);
+        }
+
+        public String getWorkflowId() { return workflowId; }
+        public String getExecutionId() { return executionId; }
+        public String getError() { return error; }
+        public long getRetryAfterMillis() { return retryAfterMillis; }
+
+        public boolean isStarted() {
+            return executionId != null;
+        }
+
+        public boolean isRejected() {
+            return retryAfterMillis > 0;
+        }
+    }
+
+    /**
+     * Fair-share statistics of one tenant queue of the execution scheduler.
+     */
+    class QueueStatistics {
+        private final String tenant;
+        private final Priority priority;
+        private final double weight;
+        private final int queuedExecutions;
+        private final int runningExecutions;
+        private final long dispatchedExecutions;
+        private final long oldestWaitMillis;
+        private final long averageWaitMillis;
+        private final long maxWaitMillis;
+
+        public QueueStatistics(String tenant, Priority priority, double weight, int queuedExecutions, int runningExecutions,
+                             long dispatchedExecutions, long oldestWaitMillis, long averageWaitMillis,
+                             long maxWaitMillis) {
+            this.tenant = tenant;
+            this.priority = priority;
+            this.weight = weight;
+            this.queuedExecutions = queuedExecutions;
+            this.runningExecutions = runningExecutions;
+            this.dispatchedExecutions = dispatchedExecutions;
+            this.oldestWaitMillis = oldestWaitMillis;
+            this.averageWaitMillis = averageWaitMillis;
+            this.maxWaitMillis = maxWaitMillis;
+        }
+
+        public String getTenant() { return tenant; }
+        public Priority getPriority() { return priority; }
+        public double getWeight() { return weight; }
+        public int getQueuedExecutions() { return queuedExecutions; }
+        public int getRunningExecutions() { return runningExecutions; }
+        public long getDispatchedExecutions() { return dispatchedExecutions; }
+        public long getOldestWaitMillis() { return oldestWaitMillis; }
+        public long getAverageWaitMillis() { return averageWaitMillis; }
+        public long getMaxWaitMillis() { return maxWaitMillis; }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,173 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import com.example.aem.vercel.workflow.service.AIService;
+import com.example.aem.vercel.workflow.service.StepExecutor;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs {@code aiStep} steps: renders the step's {@code prompt} with the execution's variables,
+ * sends it to the {@link AIService} with the step's {@code aiProvider} and {@code model}, and
+ * stores the result in the variable named by {@code outputVariable}, the step ID by default.
+ * <p>
+ * Placeholders are written {@code {{name}}} or {@code {{name.key}}} and read variables the same
+ * way edge conditions do. The rendered prompt, provider, model and output variable are the step's
+ * coalescing key, so executions that reach the same AI step with the same rendered prompt at the same time
+ * share one provider call.
+ */
+@Component(
+    service = StepExecutor.class,
+    immediate = true,
+    property = {
+        StepExecutor.STEP_TYPE_PROPERTY + "=" + AIStepExecutor.STEP_TYPE
+    }
+)
+public class AIStepExecutor implements StepExecutor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AIStepExecutor.class);
+
+    static final String STEP_TYPE = "aiStep";
+    private static final String PROMPT_PROPERTY = "prompt";
+    private static final String PROVIDER_PROPERTY = "aiProvider";
+    private static final String MODEL_PROPERTY = "model";
+    private static final String OUTPUT_PROPERTY = "outputVariable";
+
+    // Provider calls block, so they run here rather than on workflow workers
+    private final ExecutorService executorService = Executors.newFixedThreadPool(10, r -> {
+        Thread thread = new Thread(r, "workflow-ai-step");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Reference
+    private AIService aiService;
+
+    @Deactivate
+    protected void deactivate() {
+        executorService.shutdownNow();
+    }
+
+    @Override
+    public Object getCoalescingKey(StepContext context) {
+        return new Request(context);
+    }
+
+    @Override
+    public CompletionStage<Map<String, Object>> execute(StepContext context) {
+        return execute(context, new Request(context));
+    }
+
+    @Override
+    public CompletionStage<Map<String, Object>> execute(StepContext context, Object coalescingKey) {
+        // The key is the request rendered for this context; render again only if handed something else
+        Request request = coalescingKey instanceof Request ? (Request) coalescingKey : new Request(context);
+        if (request.prompt.isEmpty()) {
+            throw new IllegalArgumentException("AI step has no prompt: " + context.getStep().getId());
+        }
+        context.log("Calling AI provider " + request.provider + " with model " + request.model);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                Map<String, Object> result = aiService.generateContent(request.prompt, request.provider, request.model);
+                LOG.debug("AI step {} of execution {} completed", context.getStep().getId(), context.getExecutionId());
+                // Shared with every execution that coalesced onto this call
+                return Collections.singletonMap(request.outputVariable, Collections.unmodifiableMap(result));
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executorService);
+    }
+
+    @Override
+    public void join(StepContext context, Object coalescingKey, String leaderExecutionId) {
+        Request request = (Request) coalescingKey;
+        context.log("Waiting for the call to AI provider " + request.provider + " with model " + request.model
+            + " made by execution " + leaderExecutionId);
+    }
+
+    private static String stringData(WorkflowStepModel step, String key) {
+        Object value = step.getData() != null ? step.getData().get(key) : null;
+        return value != null ? value.toString() : "";
+    }
+
+    /**
+     * Replace {@code {{path}}} placeholders with variables; unknown variables render empty.
+     */
+    private static String render(String template, Map<String, Object> variables) {
+        StringBuilder rendered = new StringBuilder(template.length() + 64);
+        int position = 0;
+        while (true) {
+            int open = template.indexOf("{{", position);
+            int close = open >= 0 ? template.indexOf("}}", open + 2) : -1;
+            if (close < 0) {
+                return rendered.append(template, position, template.length()).toString();
+            }
+            rendered.append(template, position, open);
+            Object value = resolve(template.substring(open + 2, close).trim(), variables);
+            if (value != null) {
+                rendered.append(value);
+            }
+            position = close + 2;
+        }
+    }
+
+    private static Object resolve(String path, Map<String, Object> variables) {
+        Object value = variables;
+        for (String name : path.split("\\.")) {
+            if (!(value instanceof Map)) {
+                return null;
+            }
+            value = ((Map<?, ?>) value).get(name);
+        }
+        return value;
+    }
+
+    /**
+     * A rendered provider call and where its answer goes; equal requests get the same result.
+     */
+    private static final class Request {
+        private final String prompt;
+        private final String provider;
+        private final String model;
+        private final String outputVariable;
+
+        Request(StepContext context) {
+            WorkflowStepModel step = context.getStep();
+            this.prompt = render(stringData(step, PROMPT_PROPERTY), context.getVariables());
+            this.provider = stringData(step, PROVIDER_PROPERTY);
+            this.model = stringData(step, MODEL_PROPERTY);
+            String output = stringData(step, OUTPUT_PROPERTY);
+            this.outputVariable = output.isEmpty() ? step.getId() : output;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Request)) {
+                return false;
+            }
+            Request other = (Request) o;
+            return prompt.equals(other.prompt) && provider.equals(other.provider) && model.equals(other.model)
+                && outputVariable.equals(other.outputVariable);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(prompt, provider, model, outputVariable);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowEdgeModel;
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Branch condition of an edge, compiled into a tree of closures over execution variables.
+ * An expression is parsed once per plan version; testing it walks no syntax and uses no
+ * reflection, only the closures and a map lookup per variable.
+ * <p>
+ * Grammar, loosest binding first:
+ * <pre>
+ *   or         := and (("||" | "or") and)*
+ *   and        := unary (("&amp;&amp;" | "and") unary)*
+ *   unary      := ("!" | "not") unary | "(" or ")" | comparison
+ *   comparison := operand (("==" | "!=" | "&lt;" | "&lt;=" | "&gt;" | "&gt;=") operand)?
+ *   operand    := number | 'string' | "string" | true | false | null | path
+ *   path       := name ("." name)*
+ * </pre>
+ * A path reads a variable and then descends into nested maps, so {@code review.score > 0.8}
+ * reads the {@code score} entry of the {@code review} variable. An operand on its own is true
+ * unless it is null, false, zero or empty. Numbers compare by value, also against numeric
+ * strings; an ordering between values that have none, such as a string and a boolean, is false.
+ * <p>
+ * An edge carries its condition in {@code data.condition}. An edge leaving a step through the
+ * {@code true} or {@code false} handle instead follows the {@code condition} in the step's data,
+ * or its negation, so a decision step states its test once for both branches.
+ */
+final class EdgeCondition {
+
+    static final String CONDITION_PROPERTY = "condition";
+    private static final String TRUE_HANDLE = "true";
+    private static final String FALSE_HANDLE = "false";
+
+    private final String expression;
+    private final Test test;
+
+    private EdgeCondition(String expression, Test test) {
+        this.expression = expression;
+        this.test = test;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    static EdgeCondition compile(String expression) {
+        if (expression == null || expression.trim().isEmpty()) {
+            throw new IllegalArgumentException("Condition is empty");
+        }
+        return new EdgeCondition(expression, new Parser(expression).parse());
+    }
+
+    /**
+     * Compile the condition that decides whether an execution follows an edge.
+     *
+     * @param source the step the edge leaves, or null if unknown
+     * @return the condition, or null if the edge is always followed
+     * @throws IllegalArgumentException if the condition is not valid
+     */
+    static EdgeCondition of(WorkflowEdgeModel edge, WorkflowStepModel source) {
+        Object expression = edge.getData() != null ? edge.getData().get(CONDITION_PROPERTY) : null;
+        String handle = edge.getSourceHandle();
+        boolean negate = false;
+        if (isBlank(expression) && source != null && source.getData() != null
+                && (TRUE_HANDLE.equals(handle) || FALSE_HANDLE.equals(handle))) {
+            expression = source.getData().get(CONDITION_PROPERTY);
+            negate = FALSE_HANDLE.equals(handle);
+        }
+        if (isBlank(expression)) {
+            return null;
+        }
+        try {
+            EdgeCondition condition = compile(expression.toString());
+            return negate ? condition.negate() : condition;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid condition on edge " + edge.getId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isBlank(Object expression) {
+        return expression == null || expression.toString().trim().isEmpty();
+    }
+
+    /**
+     * @return true if the condition holds for the variables
+     */
+    boolean test(Map<String, Object> variables) {
+        return test.test(variables);
+    }
+
+    /**
+     * @return a condition that holds exactly when this one does not
+     */
+    EdgeCondition negate() {
+        Test inner = test;
+        return new EdgeCondition("!(" + expression + ")", variables -> !inner.test(variables));
+    }
+
+    String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    @FunctionalInterface
+    private interface Test {
+        boolean test(Map<String, Object> variables);
+    }
+
+    @FunctionalInterface
+    private interface Operand {
+        Object get(Map<String, Object> variables);
+    }
+
+    private static boolean truthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        if (value instanceof CharSequence) {
+            return ((CharSequence) value).length() > 0;
+        }
+        if (value instanceof Collection) {
+            return !((Collection<?>) value).isEmpty();
+        }
+        if (value instanceof Map) {
+            return !((Map<?, ?>) value).isEmpty();
+        }
+        return true;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if (a instanceof Number || b instanceof Number) {
+            Double x = toNumber(a);
+            Double y = toNumber(b);
+            if (x != null && y != null) {
+                return x.doubleValue() == y.doubleValue();
+            }
+        }
+        return a.equals(b) || a.toString().equals(b.toString());
+    }
+
+    /**
+     * @return the sign of a compared to b, or null if they have no order
+     */
+    private static Integer order(Object a, Object b) {
+        if (a == null || b == null) {
+            return null;
+        }
+        if (a instanceof Number || b instanceof Number) {
+            Double x = toNumber(a);
+            Double y = toNumber(b);
+            return x != null && y != null ? Double.compare(x, y) : null;
+        }
+        if (a instanceof CharSequence && b instanceof CharSequence) {
+            return Integer.signum(a.toString().compareTo(b.toString()));
+        }
+        return null;
+    }
+
+    private static Double toNumber(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof CharSequence) {
+            try {
+                return Double.parseDouble(value.toString().trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Recursive-descent parser that emits the closures as it goes.
+     */
+    private static final class Parser {
+        private final String source;
+        private int position;
+
+        Parser(String source) {
+            this.source = source;
+        }
+
+        Test parse() {
+            Test test = parseOr();
+            skipWhitespace();
+            if (position < source.length()) {
+                throw error("Unexpected '" + source.charAt(position) + "'");
+            }
+            return test;
+        }
+
+        private Test parseOr() {
+            Test left = parseAnd();
+            while (acceptSymbol("||") || acceptKeyword("or")) {
+                Test a = left;
+                Test b = parseAnd();
+                left = variables -> a.test(variables) || b.test(variables);
+            }
+            return left;
+        }
+
+        private Test parseAnd() {
+            Test left = parseUnary();
+            while (acceptSymbol("&&") || acceptKeyword("and")) {
+                Test a = left;
+                Test b = parseUnary();
+                left = variables -> a.test(variables) && b.test(variables);
+            }
+            return left;
+        }
+
+        private Test parseUnary() {
+            if (acceptSymbol("!") || acceptKeyword("not")) {
+                Test inner = parseUnary();
+                return variables -> !inner.test(variables);
+            }
+            if (acceptSymbol("(")) {
+                Test inner = parseOr();
+                expect(")");
+                return inner;
+            }
+            return parseComparison();
+        }
+
+        private Test parseComparison() {
+            Operand left = parseOperand();
+            Operand right;
+            if (acceptSymbol("==")) {
+                right = parseOperand();
+                return variables -> equal(left.get(variables), right.get(variables));
+            }
+            if (acceptSymbol("!=")) {
+                right = parseOperand();
+                return variables -> !equal(left.get(variables), right.get(variables));
+            }
+            if (acceptSymbol("<=")) {
+                right = parseOperand();
+                return variables -> {
+                    Integer order = order(left.get(variables), right.get(variables));
+                    return order != null && order <= 0;
+                };
+            }
+            if (acceptSymbol(">=")) {
+                right = parseOperand();
+                return variables -> {
+                    Integer order = order(left.get(variables), right.get(variables));
+                    return order != null && order >= 0;
+                };
+            }
+            if (acceptSymbol("<")) {
+                right = parseOperand();
+                return variables -> {
+                    Integer order = order(left.get(variables), right.get(variables));
+                    return order != null && order < 0;
+                };
+            }
+            if (acceptSymbol(">")) {
+                right = parseOperand();
+                return variables -> {
+                    Integer order = order(left.get(variables), right.get(variables));
+                    return order != null && order > 0;
+                };
+            }
+            return variables -> truthy(left.get(variables));
+        }
+
+        private Operand parseOperand() {
+            skipWhitespace();
+            if (position >= source.length()) {
+                throw error("Expected a value");
+            }
+            char c = source.charAt(position);
+            if (c == '\'' || c == '"') {
+                String value = parseString(c);
+                return variables -> value;
+            }
+            if (Character.isDigit(c) || (c == '-' && position + 1 < source.length()
+                    && Character.isDigit(source.charAt(position + 1)))) {
+                Number value = parseNumber();
+                return variables -> value;
+            }
+            if (!Character.isJavaIdentifierStart(c)) {
+                throw error("Unexpected '" + c + "'");
+            }
+            String name = parseName();
+            switch (name) {
+                case "true":
+                    return variables -> Boolean.TRUE;
+                case "false":
+                    return variables -> Boolean.FALSE;
+                case "null":
+                    return variables -> null;
+                case "and":
+                case "or":
+                case "not":
+                    throw error("Unexpected '" + name + "'");
+                default:
+                    return parsePath(name);
+            }
+        }
+
+        private Operand parsePath(String first) {
+            if (position >= source.length() || source.charAt(position) != '.') {
+                return variables -> variables.get(first);
+            }
+            List<String> names = new ArrayList<>();
+            names.add(first);
+            while (position < source.length() && source.charAt(position) == '.') {
+                position++;
+                if (position >= source.length() || !Character.isJavaIdentifierStart(source.charAt(position))) {
+                    throw error("Expected a name after '.'");
+                }
+                names.add(parseName());
+            }
+            String[] path = names.toArray(new String[0]);
+            return variables -> {
+                Object value = variables.get(path[0]);
+                for (int i = 1; i < path.length && value != null; i++) {
+                    value = value instanceof Map ? ((Map<?, ?>) value).get(path[i]) : null;
+                }
+                return value;
+            };
+        }
+
+        private String parseName() {
+            int start = position;
+            position++;
+            while (position < source.length() && Character.isJavaIdentifierPart(source.charAt(position))) {
+                position++;
+            }
+            return source.substring(start, position);
+        }
+
+        private Number parseNumber() {
+            int start = position;
+            position++;
+            boolean decimal = false;
+            while (position < source.length()) {
+                char c = source.charAt(position);
+                if (c == '.' && !decimal && position + 1 < source.length()
+                        && Character.isDigit(source.charAt(position + 1))) {
+                    decimal = true;
+                } else if (!Character.isDigit(c)) {
+                    break;
+                }
+                position++;
+            }
+            String text = source.substring(start, position);
+            try {
+                return decimal ? (Number) Double.parseDouble(text) : (Number) Long.parseLong(text);
+            } catch (NumberFormatException e) {
+                throw error("Invalid number '" + text + "'");
+            }
+        }
+
+        private String parseString(char quote) {
+            int start = position++;
+            StringBuilder value = new StringBuilder();
+            while (position < source.length()) {
+                char c = source.charAt(position++);
+                if (c == quote) {
+                    return value.toString();
+                }
+                if (c == '\\' && position < source.length()) {
+                    c = source.charAt(position++);
+                }
+                value.append(c);
+            }
+            position = start;
+            throw error("Unterminated string");
+        }
+
+        private boolean peekSymbol(String symbol) {
+            skipWhitespace();
+            return source.startsWith(symbol, position);
+        }
+
+        private boolean acceptSymbol(String symbol) {
+            if (!peekSymbol(symbol)) {
+                return false;
+            }
+            // "<" and ">" must not swallow the first character of "<=" and ">="
+            if (symbol.length() == 1 && (symbol.equals("<") || symbol.equals(">") || symbol.equals("!"))
+                    && source.startsWith("=", position + 1)) {
+                return false;
+            }
+            position += symbol.length();
+            return true;
+        }
+
+        private boolean acceptKeyword(String keyword) {
+            skipWhitespace();
+            int end = position + keyword.length();
+            if (!source.startsWith(keyword, position)
+                    || (end < source.length() && Character.isJavaIdentifierPart(source.charAt(end)))) {
+                return false;
+            }
+            position = end;
+            return true;
+        }
+
+        private void expect(String symbol) {
+            if (!acceptSymbol(symbol)) {
+                throw error("Expected '" + symbol + "'");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < source.length() && Character.isWhitespace(source.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + position + " in condition: " + source);
+        }
+    }
+}
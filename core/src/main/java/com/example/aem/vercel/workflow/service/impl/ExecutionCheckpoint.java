@@ -0,0 +1,306 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable record of an execution's state at one transition, as written to the
+ * execution journal and compacted into JCR.
+ * <p>
+ * Checkpoints of one execution are ordered by their {@link #getSequence() sequence}, the
+ * execution's version when the checkpoint was taken. It is read before any of the state, so a
+ * checkpoint that saw an older state never has a higher sequence than one that saw a newer state.
+ */
+final class ExecutionCheckpoint {
+
+    private static final ObjectMapper VARIABLES_MAPPER = new ObjectMapper();
+    private static final TypeReference<Map<String, Object>> VARIABLES_TYPE = new TypeReference<>() {};
+
+    private final String executionId;
+    private final String workflowId;
+    private final String status;
+    private final String currentStep;
+    private final long startTime;
+    private final long endTime;
+    private final Map<String, Object> variables;
+    private final long planVersion;
+    private final int subWorkflowDepth;
+    private final String owner;
+    private final String priority;
+    private final List<String> completedSteps;
+    private final List<String> skippedSteps;
+    private final List<String> untakenEdges;
+    private final long sequence;
+    private final long timestamp;
+
+    @JsonCreator
+    ExecutionCheckpoint(
+            @JsonProperty("executionId") String executionId,
+            @JsonProperty("workflowId") String workflowId,
+            @JsonProperty("status") String status,
+            @JsonProperty("currentStep") String currentStep,
+            @JsonProperty("startTime") long startTime,
+            @JsonProperty("endTime") long endTime,
+            @JsonProperty("variables") Map<String, Object> variables,
+            @JsonProperty("planVersion") long planVersion,
+            @JsonProperty("subWorkflowDepth") int subWorkflowDepth,
+            @JsonProperty("owner") String owner,
+            @JsonProperty("priority") String priority,
+            @JsonProperty("completedSteps") List<String> completedSteps,
+            @JsonProperty("skippedSteps") List<String> skippedSteps,
+            @JsonProperty("untakenEdges") List<String> untakenEdges,
+            @JsonProperty("sequence") long sequence,
+            @JsonProperty("timestamp") long timestamp) {
+        this.executionId = executionId;
+        this.workflowId = workflowId;
+        this.status = status;
+        this.currentStep = currentStep;
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.variables = variables != null ? Collections.unmodifiableMap(variables) : Collections.emptyMap();
+        this.planVersion = planVersion;
+        this.subWorkflowDepth = subWorkflowDepth;
+        this.owner = owner;
+        this.priority = priority;
+        this.completedSteps = completedSteps != null ? Collections.unmodifiableList(completedSteps) : Collections.emptyList();
+        this.skippedSteps = skippedSteps != null ? Collections.unmodifiableList(skippedSteps) : Collections.emptyList();
+        this.untakenEdges = untakenEdges != null ? Collections.unmodifiableList(untakenEdges) : Collections.emptyList();
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+    }
+
+    static ExecutionCheckpoint of(ExecutionRun run) {
+        long sequence = run.getExecution().getVersion();
+        // Completed steps are read first; a step's outcome is recorded before it counts as completed
+        List<String> completedSteps = run.getCompletedStepIds();
+        return of(run.getExecution(), run.getPlan().getVersion(), completedSteps, run.getSkippedStepIds(),
+            run.getUntakenEdgeIds(), sequence);
+    }
+
+    static ExecutionCheckpoint of(ExecutionCursor cursor) {
+        long sequence = cursor.getExecution().getVersion();
+        return of(cursor.getExecution(), cursor.getPlan().getVersion(), cursor.getCompletedStepIds(),
+            cursor.getSkippedStepIds(), cursor.getUntakenEdgeIds(), sequence);
+    }
+
+    /**
+     * Checkpoint an execution with the step outcomes of an earlier checkpoint of it.
+     */
+    static ExecutionCheckpoint of(WorkflowExecutionModel execution, long planVersion, ExecutionCheckpoint previous) {
+        long sequence = execution.getVersion();
+        return of(execution, planVersion, previous.completedSteps, previous.skippedSteps, previous.untakenEdges, sequence);
+    }
+
+    private static ExecutionCheckpoint of(WorkflowExecutionModel execution, long planVersion, List<String> completedSteps,
+                                          List<String> skippedSteps, List<String> untakenEdges, long sequence) {
+        return new ExecutionCheckpoint(
+            execution.getId(),
+            execution.getWorkflowId(),
+            execution.getStatus(),
+            execution.getCurrentStep(),
+            execution.getStartTime(),
+            execution.getEndTime(),
+            execution.snapshotVariables(),
+            planVersion,
+            execution.getSubWorkflowDepth(),
+            execution.getOwner(),
+            execution.getPriority(),
+            completedSteps,
+            skippedSteps,
+            untakenEdges,
+            sequence,
+            System.currentTimeMillis()
+        );
+    }
+
+    /**
+     * @return true if the execution had not finished when the checkpoint was taken
+     */
+    boolean isInFlight() {
+        WorkflowExecutionModel.State state = WorkflowExecutionModel.State.fromValue(status);
+        return state != null && !state.isTerminal();
+    }
+
+    /**
+     * Pick the newer of two checkpoints of an execution; the later one wins a tie.
+     */
+    static ExecutionCheckpoint newer(ExecutionCheckpoint earlier, ExecutionCheckpoint later) {
+        return later.sequence >= earlier.sequence ? later : earlier;
+    }
+
+    /**
+     * Rebuild an execution model from this checkpoint. Its version continues from the
+     * checkpoint's sequence, so checkpoints taken after a restart order after this one.
+     * The new model starts running and moves to the checkpoint's state by a transition;
+     * an unknown state leaves it running.
+     */
+    WorkflowExecutionModel toExecution() {
+        WorkflowExecutionModel execution = new WorkflowExecutionModel(executionId, workflowId);
+        execution.setCurrentStep(currentStep);
+        execution.setStartTime(startTime);
+        WorkflowExecutionModel.State state = WorkflowExecutionModel.State.fromValue(status);
+        if (state != null && state != WorkflowExecutionModel.State.RUNNING) {
+            execution.transitionTo(state);
+        }
+        // After the transition, which stamps a terminal state with the current time
+        execution.setEndTime(endTime);
+        execution.setVariables(variables);
+        execution.setSubWorkflowDepth(subWorkflowDepth);
+        execution.setOwner(owner);
+        execution.setPriority(priority);
+        execution.getExecutionLog().advanceTo(sequence);
+        return execution;
+    }
+
+    @JsonProperty("executionId")
+    String getExecutionId() {
+        return executionId;
+    }
+
+    @JsonProperty("workflowId")
+    String getWorkflowId() {
+        return workflowId;
+    }
+
+    @JsonProperty("status")
+    String getStatus() {
+        return status;
+    }
+
+    @JsonProperty("currentStep")
+    String getCurrentStep() {
+        return currentStep;
+    }
+
+    @JsonProperty("startTime")
+    long getStartTime() {
+        return startTime;
+    }
+
+    @JsonProperty("endTime")
+    long getEndTime() {
+        return endTime;
+    }
+
+    @JsonProperty("variables")
+    Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    /**
+     * Serialize the variables as one JSON object, so numbers, maps and lists keep their types
+     * when the checkpoint is compacted into a single JCR property.
+     */
+    String variablesToJson() throws JsonProcessingException {
+        return VARIABLES_MAPPER.writeValueAsString(variables);
+    }
+
+    static Map<String, Object> variablesFromJson(String json) throws JsonProcessingException {
+        return VARIABLES_MAPPER.readValue(json, VARIABLES_TYPE);
+    }
+
+    /**
+     * Make a variable value one a checkpoint can hold. Strings, numbers, booleans, null, and
+     * maps with string keys and lists of those are kept as they are; anything else is converted
+     * to them the way Jackson would write it.
+     *
+     * @throws IllegalArgumentException if the value cannot be written as JSON
+     */
+    static Object toJsonValue(Object value) {
+        return isJsonValue(value) ? value : VARIABLES_MAPPER.convertValue(value, Object.class);
+    }
+
+    private static boolean isJsonValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return true;
+        }
+        if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!(entry.getKey() instanceof String) || !isJsonValue(entry.getValue())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                if (!isJsonValue(element)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @JsonProperty("planVersion")
+    long getPlanVersion() {
+        return planVersion;
+    }
+
+    /**
+     * @return how many sub-workflow steps deep the execution runs, 0 for a top-level execution
+     */
+    @JsonProperty("subWorkflowDepth")
+    int getSubWorkflowDepth() {
+        return subWorkflowDepth;
+    }
+
+    /**
+     * @return the user the execution's scheduler slot is accounted to
+     */
+    @JsonProperty("owner")
+    String getOwner() {
+        return owner;
+    }
+
+    /**
+     * @return the name of the priority the execution is scheduled with
+     */
+    @JsonProperty("priority")
+    String getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return IDs of the steps the execution completed, skipped ones included
+     */
+    @JsonProperty("completedSteps")
+    List<String> getCompletedSteps() {
+        return completedSteps;
+    }
+
+    /**
+     * @return IDs of the completed steps that were skipped rather than run
+     */
+    @JsonProperty("skippedSteps")
+    List<String> getSkippedSteps() {
+        return skippedSteps;
+    }
+
+    /**
+     * @return IDs of the edges that completed steps which ran did not follow
+     */
+    @JsonProperty("untakenEdges")
+    List<String> getUntakenEdges() {
+        return untakenEdges;
+    }
+
+    @JsonProperty("sequence")
+    long getSequence() {
+        return sequence;
+    }
+
+    @JsonProperty("timestamp")
+    long getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Resumable position of a parked execution: the plan it runs on, the steps it has completed
+ * and which of them were skipped, and the edge slots of steps that ran that were not followed,
+ * as bit sets. Join barriers and the ready frontier are rebuilt from it on resume, so a parked
+ * execution holds no thread, scheduler slot or per-step counters.
+ */
+final class ExecutionCursor {
+
+    private final WorkflowExecutionModel execution;
+    private final ExecutionPlan plan;
+    private final BitSet completedSteps;
+    private final BitSet skippedSteps;
+    private final BitSet untakenEdges;
+
+    ExecutionCursor(WorkflowExecutionModel execution, ExecutionPlan plan, BitSet completedSteps,
+                    BitSet skippedSteps, BitSet untakenEdges) {
+        this.execution = execution;
+        this.plan = plan;
+        this.completedSteps = completedSteps;
+        this.skippedSteps = skippedSteps;
+        this.untakenEdges = untakenEdges;
+    }
+
+    WorkflowExecutionModel getExecution() {
+        return execution;
+    }
+
+    ExecutionPlan getPlan() {
+        return plan;
+    }
+
+    BitSet getCompletedSteps() {
+        return (BitSet) completedSteps.clone();
+    }
+
+    BitSet getSkippedSteps() {
+        return (BitSet) skippedSteps.clone();
+    }
+
+    /**
+     * @return the untaken edges, by {@link ExecutionPlan#getEdgeSlot edge slot}
+     */
+    BitSet getUntakenEdges() {
+        return (BitSet) untakenEdges.clone();
+    }
+
+    List<String> getCompletedStepIds() {
+        return stepIdsOf(completedSteps);
+    }
+
+    List<String> getSkippedStepIds() {
+        return stepIdsOf(skippedSteps);
+    }
+
+    List<String> getUntakenEdgeIds() {
+        List<String> edgeIds = new ArrayList<>(untakenEdges.cardinality());
+        for (int i = completedSteps.nextSetBit(0); i >= 0; i = completedSteps.nextSetBit(i + 1)) {
+            for (int k = 0; k < plan.getOutDegree(i); k++) {
+                if (untakenEdges.get(plan.getEdgeSlot(i, k))) {
+                    edgeIds.add(plan.getEdgeId(i, k));
+                }
+            }
+        }
+        return edgeIds;
+    }
+
+    private List<String> stepIdsOf(BitSet steps) {
+        List<String> stepIds = new ArrayList<>(steps.cardinality());
+        for (int i = steps.nextSetBit(0); i >= 0; i = steps.nextSetBit(i + 1)) {
+            stepIds.add(plan.getStepId(i));
+        }
+        return stepIds;
+    }
+}
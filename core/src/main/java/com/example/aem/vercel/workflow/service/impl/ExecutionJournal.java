@@ -0,0 +1,380 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable, append-only journal of execution checkpoints.
+ * Checkpoints are group-committed by a single writer thread: everything appended during
+ * one flush interval is written to the current segment file with a single write and
+ * fsync. Closed segments are periodically compacted into the {@link CheckpointStore}
+ * (JCR) with the latest checkpoint per execution, then deleted. Segments left behind by a
+ * previous run are replayed in parallel on startup and compacted like any other segment.
+ * <p>
+ * The latest checkpoint of an execution is the one with the highest
+ * {@link ExecutionCheckpoint#getSequence() sequence}, not the one appended or written last:
+ * checkpoints taken on different threads can reach the journal out of order.
+ */
+final class ExecutionJournal {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionJournal.class);
+
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".log";
+    private static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int MAX_BATCH_SIZE = 4096;
+
+    /**
+     * Destination of compacted checkpoints.
+     */
+    interface CheckpointStore {
+        void store(Collection<ExecutionCheckpoint> checkpoints) throws Exception;
+    }
+
+    private final Path directory;
+    private final long flushIntervalMillis;
+    private final long compactionIntervalMillis;
+    private final CheckpointStore store;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final BlockingQueue<PendingCheckpoint> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "workflow-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Latest checkpoint per execution not yet compacted, including the batch being compacted
+    private volatile Map<String, ExecutionCheckpoint> uncompacted = new ConcurrentHashMap<>();
+    private volatile Map<String, ExecutionCheckpoint> compacting = new ConcurrentHashMap<>();
+
+    private final List<Path> closedSegments = new ArrayList<>();
+    private FileChannel channel;
+    private long segmentSequence;
+    private long segmentBytes;
+    private long lastCompaction = System.currentTimeMillis();
+    private volatile boolean compactionRequested;
+    private volatile boolean running = true;
+
+    ExecutionJournal(Path directory, long flushIntervalMillis, long compactionIntervalMillis, CheckpointStore store)
+            throws IOException {
+        this.directory = directory;
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        this.compactionIntervalMillis = Math.max(1000, compactionIntervalMillis);
+        this.store = store;
+        Files.createDirectories(directory);
+        List<Path> existing = listSegments();
+        this.segmentSequence = existing.isEmpty() ? 0 : parseSegmentSequence(existing.get(existing.size() - 1));
+        replay(existing);
+        openNextSegment();
+        this.writer = new Thread(this::writeLoop, "workflow-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Append a checkpoint. It becomes durable with the next group commit.
+     *
+     * @return a future completed once the checkpoint is fsynced to the segment file
+     */
+    CompletableFuture<Void> append(ExecutionCheckpoint checkpoint) {
+        return appendAll(List.of(checkpoint));
+    }
+
+    /**
+     * Append several checkpoints so they are committed in the same group commit.
+     */
+    CompletableFuture<Void> appendAll(Collection<ExecutionCheckpoint> checkpoints) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("Execution journal is closed"));
+            return future;
+        }
+        queue.add(new PendingCheckpoint(new ArrayList<>(checkpoints), future));
+        return future;
+    }
+
+    /**
+     * Look up the latest checkpoint of an execution that has not been compacted yet.
+     */
+    ExecutionCheckpoint getUncompacted(String executionId) {
+        ExecutionCheckpoint checkpoint = uncompacted.get(executionId);
+        return checkpoint != null ? checkpoint : compacting.get(executionId);
+    }
+
+    /**
+     * @return the latest uncompacted checkpoint of every execution, including those replayed on startup
+     */
+    Collection<ExecutionCheckpoint> getUncompactedCheckpoints() {
+        Map<String, ExecutionCheckpoint> checkpoints = new HashMap<>(compacting);
+        checkpoints.putAll(uncompacted);
+        return Collections.unmodifiableCollection(checkpoints.values());
+    }
+
+    /**
+     * Ask the writer to roll the current segment and compact it at the next opportunity.
+     */
+    void requestCompaction() {
+        compactionRequested = true;
+    }
+
+    void close() {
+        // Not interrupted: an interrupt closes the segment channel under a commit in progress.
+        // The writer sees the flag within one flush interval and flushes what is still queued.
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactor.shutdown();
+    }
+
+    private void writeLoop() {
+        List<PendingCheckpoint> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingCheckpoint first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    // Group commit: collect everything appended while the previous fsync ran
+                    queue.drainTo(batch, MAX_BATCH_SIZE);
+                    commit(batch);
+                    batch.clear();
+                }
+                if (compactionRequested || segmentBytes >= MAX_SEGMENT_BYTES
+                        || System.currentTimeMillis() - lastCompaction >= compactionIntervalMillis) {
+                    rollAndCompact();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                LOG.error("Execution journal write failed", e);
+                for (PendingCheckpoint pending : batch) {
+                    pending.future.completeExceptionally(e);
+                }
+                batch.clear();
+            }
+        }
+        closeChannel();
+    }
+
+    private void commit(List<PendingCheckpoint> batch) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(batch.size() * 256);
+        List<PendingCheckpoint> written = new ArrayList<>(batch.size());
+        for (PendingCheckpoint pending : batch) {
+            // Serialized one append at a time: a checkpoint that cannot be written fails only its own future
+            byte[] lines;
+            try {
+                lines = serialize(pending.checkpoints);
+            } catch (IOException e) {
+                LOG.error("Failed to serialize execution checkpoint of: {}", pending.checkpoints.get(0).getExecutionId(), e);
+                pending.future.completeExceptionally(e);
+                continue;
+            }
+            buffer.write(lines, 0, lines.length);
+            written.add(pending);
+        }
+        if (written.isEmpty()) {
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining()) {
+            segmentBytes += channel.write(bytes);
+        }
+        channel.force(false);
+
+        Map<String, ExecutionCheckpoint> latest = uncompacted;
+        Map<String, ExecutionCheckpoint> beingCompacted = compacting;
+        for (PendingCheckpoint pending : written) {
+            for (ExecutionCheckpoint checkpoint : pending.checkpoints) {
+                // A checkpoint older than the one being compacted must not replace it afterwards
+                ExecutionCheckpoint compacted = beingCompacted.get(checkpoint.getExecutionId());
+                if (compacted == null || ExecutionCheckpoint.newer(compacted, checkpoint) == checkpoint) {
+                    latest.merge(checkpoint.getExecutionId(), checkpoint, ExecutionCheckpoint::newer);
+                }
+            }
+            pending.future.complete(null);
+        }
+    }
+
+    private byte[] serialize(List<ExecutionCheckpoint> checkpoints) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream(checkpoints.size() * 256);
+        for (ExecutionCheckpoint checkpoint : checkpoints) {
+            lines.write(objectMapper.writeValueAsBytes(checkpoint));
+            lines.write('\n');
+        }
+        return lines.toByteArray();
+    }
+
+    private void rollAndCompact() throws IOException {
+        compactionRequested = false;
+        lastCompaction = System.currentTimeMillis();
+        if (uncompacted.isEmpty() || !compacting.isEmpty()) {
+            return; // Nothing new, or the previous compaction is still running
+        }
+
+        closeChannel();
+        List<Path> segments;
+        synchronized (closedSegments) {
+            closedSegments.add(segmentPath(segmentSequence));
+            segments = new ArrayList<>(closedSegments);
+        }
+        openNextSegment();
+
+        Map<String, ExecutionCheckpoint> snapshot = uncompacted;
+        compacting = snapshot;
+        uncompacted = new ConcurrentHashMap<>();
+        compactor.execute(() -> compact(snapshot, segments));
+    }
+
+    private void compact(Map<String, ExecutionCheckpoint> snapshot, List<Path> segments) {
+        try {
+            store.store(snapshot.values());
+            for (Path segment : segments) {
+                Files.deleteIfExists(segment);
+            }
+            synchronized (closedSegments) {
+                closedSegments.removeAll(segments);
+            }
+            LOG.debug("Compacted {} execution checkpoints from {} journal segments", snapshot.size(), segments.size());
+        } catch (Exception e) {
+            // Keep the segments and retry with the next compaction; newer checkpoints win
+            LOG.error("Failed to compact execution journal, will retry", e);
+            snapshot.forEach((id, checkpoint) -> uncompacted.merge(id, checkpoint, (current, failed) ->
+                ExecutionCheckpoint.newer(failed, current)));
+        } finally {
+            compacting = new ConcurrentHashMap<>();
+        }
+    }
+
+    private void openNextSegment() throws IOException {
+        segmentSequence++;
+        channel = FileChannel.open(segmentPath(segmentSequence),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentBytes = channel.size();
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close journal segment", e);
+        }
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (var files = Files.list(directory)) {
+            return files.filter(file -> parseSegmentSequence(file) >= 0)
+                .sorted(Comparator.comparingLong(ExecutionJournal::parseSegmentSequence))
+                .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Read segments left by a previous run, one segment per thread, keeping the newest
+     * checkpoint of each execution. Segments are merged in order, so of two checkpoints with
+     * the same sequence the one written last wins. The segments are compacted with the next roll.
+     */
+    private void replay(List<Path> segments) throws IOException {
+        if (segments.isEmpty()) {
+            return;
+        }
+        List<Map<String, ExecutionCheckpoint>> newestPerSegment;
+        try {
+            newestPerSegment = segments.parallelStream()
+                .map(this::readSegment)
+                .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Map<String, ExecutionCheckpoint> replayed = new HashMap<>();
+        for (Map<String, ExecutionCheckpoint> newest : newestPerSegment) {
+            newest.forEach((id, checkpoint) -> replayed.merge(id, checkpoint, ExecutionCheckpoint::newer));
+        }
+        uncompacted.putAll(replayed);
+        closedSegments.addAll(segments);
+        compactionRequested = true;
+        LOG.info("Replayed {} execution checkpoints from {} journal segments", replayed.size(), segments.size());
+    }
+
+    private Map<String, ExecutionCheckpoint> readSegment(Path segment) {
+        Map<String, ExecutionCheckpoint> checkpoints = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(segment)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    ExecutionCheckpoint checkpoint = objectMapper.readValue(line, ExecutionCheckpoint.class);
+                    checkpoints.merge(checkpoint.getExecutionId(), checkpoint, ExecutionCheckpoint::newer);
+                } catch (IOException e) {
+                    // A torn write at the end of the last segment; everything before it was fsynced
+                    LOG.warn("Skipping unreadable checkpoint in journal segment: {}", segment);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read journal segment: " + segment, e);
+        }
+        return checkpoints;
+    }
+
+    static long parseSegmentSequence(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private static final class PendingCheckpoint {
+        private final List<ExecutionCheckpoint> checkpoints;
+        private final CompletableFuture<Void> future;
+
+        PendingCheckpoint(List<ExecutionCheckpoint> checkpoints, CompletableFuture<Void> future) {
+            this.checkpoints = checkpoints;
+            this.future = future;
+        }
+    }
+}
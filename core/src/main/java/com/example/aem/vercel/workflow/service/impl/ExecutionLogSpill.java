@@ -0,0 +1,294 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.ExecutionLog;
+import com.example.aem.vercel.workflow.model.WorkflowLogEntryModel;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Append-only on-disk segments for log entries that no longer fit in an execution's
+ * in-memory {@link ExecutionLog}. Each execution has one segment of lines of the form
+ * {@code <sequence>\t<entry JSON>}, in sequence order. The raw columns of records are queued by
+ * the appending thread, and formatted and written in batches by a background writer; logs are diagnostic, so segments are
+ * not fsynced, and entries are dropped rather than blocking a step when the writer falls behind.
+ * <p>
+ * A segment only extends the in-memory log it overflowed from, so it lives no longer than that
+ * log: it is {@link #discard(String) discarded} when the execution leaves memory, and segments
+ * left over from a previous run are deleted when the spill opens.
+ */
+final class ExecutionLogSpill {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionLogSpill.class);
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final Pattern SAFE_ID = Pattern.compile("[A-Za-z0-9._-]+");
+    private static final int MAX_PENDING = 100_000;
+    private static final int MAX_BATCH_SIZE = 4096;
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+
+    private final Path directory;
+    // Log entries serialise derived flags such as "error"; they are not read back
+    private final ObjectMapper objectMapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>(MAX_PENDING);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    ExecutionLogSpill(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        deleteSegments();
+        this.writer = new Thread(this::writeLoop, "workflow-log-spill");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * @return the overflow that spills the older log entries of one execution
+     */
+    ExecutionLog.Overflow forExecution(String executionId) {
+        if (!SAFE_ID.matcher(executionId).matches()) {
+            return null;
+        }
+        return (sequence, timestamp, level, stepId, template, arg1, arg2) -> {
+            // Never block a step on the disk: beyond the bound, older entries are dropped
+            SpilledEntry spilled = new SpilledEntry(executionId, sequence, timestamp, level, stepId, template, arg1, arg2);
+            if (!running || !queue.offer(spilled)) {
+                if (dropped.incrementAndGet() % 10_000 == 1) {
+                    LOG.warn("Execution log spill is behind; dropped {} log entries so far", dropped.get());
+                }
+            }
+        };
+    }
+
+    /**
+     * Read spilled entries of an execution.
+     *
+     * @param end sequence number after the last entry to read, {@code Long.MAX_VALUE} to read up to the latest
+     * @param limit the maximum number of entries, read backwards from {@code end}
+     * @return the entries, oldest first
+     */
+    List<WorkflowLogEntryModel> read(String executionId, long end, int limit) {
+        if (!SAFE_ID.matcher(executionId).matches() || end <= 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        flush();
+        // Keep only the last entries before end; older ones are skipped without being parsed
+        ArrayDeque<String> lines = new ArrayDeque<>(Math.min(limit, 1024));
+        try (BufferedReader reader = Files.newBufferedReader(segmentPath(executionId), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                if (separator <= 0) {
+                    continue;
+                }
+                if (Long.parseLong(line.substring(0, separator)) >= end) {
+                    break;
+                }
+                if (lines.size() == limit) {
+                    lines.removeFirst();
+                }
+                lines.addLast(line.substring(separator + 1));
+            }
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        } catch (IOException | NumberFormatException e) {
+            // A line torn by a crash ends the readable part of the segment
+            LOG.warn("Failed to read spilled log of execution: {}", executionId, e);
+        }
+
+        List<WorkflowLogEntryModel> entries = new ArrayList<>(lines.size());
+        for (String json : lines) {
+            try {
+                entries.add(objectMapper.readValue(json, WorkflowLogEntryModel.class));
+            } catch (IOException e) {
+                LOG.debug("Skipping unreadable spilled log entry of execution: {}", executionId);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Delete the spilled entries of an execution once the entries queued before are written,
+     * e.g. when it finishes and its in-memory log goes with it. Does not wait for the disk.
+     */
+    void discard(String executionId) {
+        if (!SAFE_ID.matcher(executionId).matches()) {
+            return;
+        }
+        if (!running || !queue.offer(new Discard(executionId))) {
+            // The segment is left for the next start to delete
+            LOG.debug("Execution log spill is behind; not discarding spilled log of execution: {}", executionId);
+        }
+    }
+
+    /**
+     * Wait until everything spilled so far is written.
+     */
+    private void flush() {
+        CompletableFuture<Void> flushed = new CompletableFuture<>();
+        try {
+            if (running && queue.offer(flushed, FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                flushed.get(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.debug("Execution log spill flush did not complete", e);
+        }
+    }
+
+    void close() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(FLUSH_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        List<Object> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                Object first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE);
+                write(batch);
+            } catch (InterruptedException e) {
+                // Closing: loop once more to write what is still queued
+                Thread.interrupted();
+            } catch (RuntimeException e) {
+                LOG.error("Execution log spill failed", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write(List<Object> batch) {
+        // One append per execution and batch; flush markers complete after everything before them
+        Map<String, ByteArrayOutputStream> segments = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> flushes = new ArrayList<>();
+        for (Object item : batch) {
+            if (item instanceof CompletableFuture) {
+                flushes.add((CompletableFuture<Void>) item);
+                continue;
+            }
+            if (item instanceof Discard) {
+                // Entries of the execution before the discard in this batch are dropped with it
+                String executionId = ((Discard) item).executionId;
+                segments.remove(executionId);
+                deleteSegment(executionId);
+                continue;
+            }
+            SpilledEntry spilled = (SpilledEntry) item;
+            ByteArrayOutputStream buffer = segments.computeIfAbsent(spilled.executionId, id -> new ByteArrayOutputStream());
+            try {
+                buffer.write(Long.toString(spilled.sequence).getBytes(StandardCharsets.UTF_8));
+                buffer.write('\t');
+                buffer.write(objectMapper.writeValueAsBytes(spilled.toEntry()));
+                buffer.write('\n');
+            } catch (IOException e) {
+                LOG.warn("Failed to serialise spilled log entry of execution: {}", spilled.executionId, e);
+            }
+        }
+        for (Map.Entry<String, ByteArrayOutputStream> segment : segments.entrySet()) {
+            try {
+                Files.write(segmentPath(segment.getKey()), segment.getValue().toByteArray(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                LOG.warn("Failed to spill log of execution: {}", segment.getKey(), e);
+            }
+        }
+        for (CompletableFuture<Void> flushed : flushes) {
+            flushed.complete(null);
+        }
+    }
+
+    private void deleteSegment(String executionId) {
+        try {
+            Files.deleteIfExists(segmentPath(executionId));
+        } catch (IOException e) {
+            LOG.warn("Failed to delete spilled log of execution: {}", executionId, e);
+        }
+    }
+
+    private void deleteSegments() throws IOException {
+        try (DirectoryStream<Path> segments = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : segments) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    private Path segmentPath(String executionId) {
+        return directory.resolve(executionId + SEGMENT_SUFFIX);
+    }
+
+    private static final class Discard {
+        private final String executionId;
+
+        Discard(String executionId) {
+            this.executionId = executionId;
+        }
+    }
+
+    private static final class SpilledEntry {
+        private final String executionId;
+        private final long sequence;
+        private final long timestamp;
+        private final byte level;
+        private final String stepId;
+        private final String template;
+        private final Object arg1;
+        private final Object arg2;
+
+        SpilledEntry(String executionId, long sequence, long timestamp, byte level, String stepId,
+                     String template, Object arg1, Object arg2) {
+            this.executionId = executionId;
+            this.sequence = sequence;
+            this.timestamp = timestamp;
+            this.level = level;
+            this.stepId = stepId;
+            this.template = template;
+            this.arg1 = arg1;
+            this.arg2 = arg2;
+        }
+
+        WorkflowLogEntryModel toEntry() {
+            return ExecutionLog.entryOf(timestamp, level, stepId, template, arg1, arg2);
+        }
+    }
+}
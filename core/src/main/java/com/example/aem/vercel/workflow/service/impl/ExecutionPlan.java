@@ -0,0 +1,474 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.ExecutionLog;
+import com.example.aem.vercel.workflow.model.WorkflowDefinitionModel;
+import com.example.aem.vercel.workflow.model.WorkflowEdgeModel;
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import com.example.aem.vercel.workflow.service.StepExecutor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled, immutable form of a {@link WorkflowDefinitionModel}.
+ * Steps are addressed by integer index and edges are stored as CSR adjacency arrays,
+ * so walking the graph never scans the edge list. A plan is compiled once per
+ * definition version ({@code updatedAt}) and shared by every execution of that version.
+ * <p>
+ * Executions run the DAG of steps reachable from the start step. Edges that close a
+ * cycle (back edges) are dropped, so every step with several incoming edges acts as a
+ * join barrier over its forward edges. Edge conditions are compiled with the plan; an edge
+ * whose condition does not hold still reaches the join barrier of its target, marked as not taken.
+ */
+final class ExecutionPlan {
+
+    private static final String START_END_TYPE = "startEnd";
+    private static final String START_STEP_ID = "start";
+    private static final String DELAY_PROPERTY = "delayMs";
+    static final String SUB_WORKFLOW_TYPE = "subWorkflow";
+    private static final String SUB_WORKFLOW_ID_PROPERTY = "workflowId";
+    private static final String SUB_WORKFLOW_MODE_PROPERTY = "mode";
+    private static final String SUB_WORKFLOW_OUTPUT_PROPERTY = "outputVariable";
+    private static final String DETACHED_MODE = "detached";
+
+    private final String workflowId;
+    private final String workflowName;
+    private final String workflowDescription;
+    private final long version;
+    private final WorkflowStepModel[] steps;
+    private final String[] stepIds;
+    private final Map<String, Integer> indexById;
+    private final WorkflowEdgeModel[] edges;
+
+    // Outgoing edges of step i: targets outTargets[outOffsets[i] .. outOffsets[i + 1]), edge index in outEdges
+    private final int[] outOffsets;
+    private final int[] outTargets;
+    private final int[] outEdges;
+
+    private final int startIndex;
+    private final boolean[] reachable;
+    private final boolean[] backEdge;
+    private final int[] joinCounts;
+    private final int reachableCount;
+    private final long[] delayMillis;
+    // Condition of outgoing edge slot, parallel to outTargets; null for edges that are always followed
+    private final EdgeCondition[] outConditions;
+    private final SubWorkflow[] subWorkflows;
+    // Executor slot of each step's type, resolved once so dispatch is an array read
+    private final StepExecutorRegistry.Slot[] executors;
+    private final ExecutionLog.StepIndex logSteps = new ExecutionLog.StepIndex() {
+        @Override
+        public int indexOf(String stepId) {
+            return ExecutionPlan.this.indexOf(stepId);
+        }
+
+        @Override
+        public String stepIdOf(int index) {
+            return stepIds[index];
+        }
+
+        @Override
+        public int size() {
+            return stepIds.length;
+        }
+    };
+
+    private ExecutionPlan(String workflowId, String workflowName, String workflowDescription, long version,
+                          WorkflowStepModel[] steps, String[] stepIds,
+                          Map<String, Integer> indexById, WorkflowEdgeModel[] edges,
+                          int[] outOffsets, int[] outTargets, int[] outEdges, StepExecutorRegistry stepExecutors) {
+        this.workflowId = workflowId;
+        this.workflowName = workflowName;
+        this.workflowDescription = workflowDescription;
+        this.version = version;
+        this.steps = steps;
+        this.stepIds = stepIds;
+        this.indexById = indexById;
+        this.edges = edges;
+        this.outOffsets = outOffsets;
+        this.outTargets = outTargets;
+        this.outEdges = outEdges;
+        this.startIndex = findStartIndex();
+        this.reachable = new boolean[steps.length];
+        this.backEdge = new boolean[outTargets.length];
+        this.reachableCount = classifyEdges();
+        this.joinCounts = computeJoinCounts();
+        this.delayMillis = computeDelays();
+        this.outConditions = computeConditions();
+        this.subWorkflows = computeSubWorkflows();
+        this.executors = resolveExecutors(stepExecutors);
+    }
+
+    /**
+     * Compile a workflow definition into an execution plan.
+     * Edges referencing unknown steps are ignored.
+     *
+     * @param workflow the workflow definition
+     * @return the compiled plan
+     * @throws IllegalArgumentException if an edge condition is not valid
+     */
+    static ExecutionPlan compile(WorkflowDefinitionModel workflow) {
+        return compile(workflow, null);
+    }
+
+    /**
+     * Compile a workflow definition into an execution plan whose steps run on the given executors.
+     *
+     * @param stepExecutors the executors by step type, or null if steps only complete
+     */
+    static ExecutionPlan compile(WorkflowDefinitionModel workflow, StepExecutorRegistry stepExecutors) {
+        List<WorkflowStepModel> stepList = workflow.getSteps() != null ? workflow.getSteps() : Collections.emptyList();
+        List<WorkflowEdgeModel> edgeList = workflow.getEdges() != null ? workflow.getEdges() : Collections.emptyList();
+
+        int n = stepList.size();
+        WorkflowStepModel[] steps = stepList.toArray(new WorkflowStepModel[0]);
+        String[] stepIds = new String[n];
+        Map<String, Integer> indexById = new HashMap<>(n * 2);
+        for (int i = 0; i < n; i++) {
+            stepIds[i] = steps[i].getId();
+            indexById.putIfAbsent(stepIds[i], i);
+        }
+
+        WorkflowEdgeModel[] edges = edgeList.toArray(new WorkflowEdgeModel[0]);
+        int[] edgeSource = new int[edges.length];
+        int[] edgeTarget = new int[edges.length];
+        int[] outOffsets = new int[n + 1];
+        int validEdges = 0;
+        for (int e = 0; e < edges.length; e++) {
+            Integer source = indexById.get(edges[e].getSource());
+            Integer target = indexById.get(edges[e].getTarget());
+            if (source == null || target == null) {
+                edgeSource[e] = -1;
+                continue;
+            }
+            edgeSource[e] = source;
+            edgeTarget[e] = target;
+            outOffsets[source + 1]++;
+            validEdges++;
+        }
+        for (int i = 0; i < n; i++) {
+            outOffsets[i + 1] += outOffsets[i];
+        }
+
+        // Fill in definition order so the first outgoing edge stays the first one declared
+        int[] outTargets = new int[validEdges];
+        int[] outEdges = new int[validEdges];
+        int[] outCursor = Arrays.copyOf(outOffsets, n);
+        for (int e = 0; e < edges.length; e++) {
+            if (edgeSource[e] < 0) {
+                continue;
+            }
+            int slot = outCursor[edgeSource[e]]++;
+            outTargets[slot] = edgeTarget[e];
+            outEdges[slot] = e;
+        }
+
+        return new ExecutionPlan(workflow.getId(), workflow.getName(), workflow.getDescription(),
+            workflow.getUpdatedAt(), steps, stepIds, indexById, edges,
+            outOffsets, outTargets, outEdges, stepExecutors);
+    }
+
+    private int findStartIndex() {
+        for (int i = 0; i < steps.length; i++) {
+            if (START_END_TYPE.equals(steps[i].getType()) && steps[i].getData() != null
+                    && "Start".equals(steps[i].getData().get("label"))) {
+                return i;
+            }
+        }
+        Integer start = indexById.get(START_STEP_ID);
+        if (start != null) {
+            return start;
+        }
+        // Otherwise the first step nothing leads to, or the first step if every step is on a cycle
+        boolean[] hasIncoming = new boolean[steps.length];
+        for (int target : outTargets) {
+            hasIncoming[target] = true;
+        }
+        for (int i = 0; i < steps.length; i++) {
+            if (!hasIncoming[i]) {
+                return i;
+            }
+        }
+        return steps.length > 0 ? 0 : -1;
+    }
+
+    /**
+     * Depth-first walk from the start step marking reachable steps and back edges.
+     *
+     * @return number of reachable steps
+     */
+    private int classifyEdges() {
+        if (startIndex < 0) {
+            return 0;
+        }
+        int n = steps.length;
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] cursor = new int[n];
+        int depth = 0;
+        int count = 1;
+        stack[depth++] = startIndex;
+        reachable[startIndex] = true;
+        onStack[startIndex] = true;
+        cursor[startIndex] = outOffsets[startIndex];
+        while (depth > 0) {
+            int step = stack[depth - 1];
+            if (cursor[step] == outOffsets[step + 1]) {
+                onStack[step] = false;
+                depth--;
+                continue;
+            }
+            int slot = cursor[step]++;
+            int target = outTargets[slot];
+            if (onStack[target]) {
+                backEdge[slot] = true;
+            } else if (!reachable[target]) {
+                reachable[target] = true;
+                onStack[target] = true;
+                cursor[target] = outOffsets[target];
+                stack[depth++] = target;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int[] computeJoinCounts() {
+        int[] counts = new int[steps.length];
+        for (int step = 0; step < steps.length; step++) {
+            if (!reachable[step]) {
+                continue;
+            }
+            for (int slot = outOffsets[step]; slot < outOffsets[step + 1]; slot++) {
+                if (!backEdge[slot]) {
+                    counts[outTargets[slot]]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private long[] computeDelays() {
+        long[] delays = new long[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            Object delay = steps[i].getData() != null ? steps[i].getData().get(DELAY_PROPERTY) : null;
+            if (delay instanceof Number) {
+                delays[i] = Math.max(0, ((Number) delay).longValue());
+            } else if (delay != null) {
+                try {
+                    delays[i] = Math.max(0, Long.parseLong(delay.toString().trim()));
+                } catch (NumberFormatException e) {
+                    delays[i] = 0;
+                }
+            }
+        }
+        return delays;
+    }
+
+    private EdgeCondition[] computeConditions() {
+        EdgeCondition[] conditions = new EdgeCondition[outTargets.length];
+        for (int step = 0; step < steps.length; step++) {
+            for (int slot = outOffsets[step]; slot < outOffsets[step + 1]; slot++) {
+                conditions[slot] = EdgeCondition.of(edges[outEdges[slot]], steps[step]);
+            }
+        }
+        return conditions;
+    }
+
+    private StepExecutorRegistry.Slot[] resolveExecutors(StepExecutorRegistry stepExecutors) {
+        StepExecutorRegistry.Slot[] slots = new StepExecutorRegistry.Slot[steps.length];
+        if (stepExecutors == null) {
+            return slots;
+        }
+        for (int i = 0; i < steps.length; i++) {
+            if (steps[i].getType() != null && subWorkflows[i] == null) {
+                slots[i] = stepExecutors.slotFor(steps[i].getType());
+            }
+        }
+        return slots;
+    }
+
+    private SubWorkflow[] computeSubWorkflows() {
+        SubWorkflow[] calls = new SubWorkflow[steps.length];
+        for (int i = 0; i < steps.length; i++) {
+            if (!SUB_WORKFLOW_TYPE.equals(steps[i].getType())) {
+                continue;
+            }
+            Map<String, Object> data = steps[i].getData() != null ? steps[i].getData() : Collections.emptyMap();
+            Object childId = data.get(SUB_WORKFLOW_ID_PROPERTY);
+            Object mode = data.get(SUB_WORKFLOW_MODE_PROPERTY);
+            Object output = data.get(SUB_WORKFLOW_OUTPUT_PROPERTY);
+            calls[i] = new SubWorkflow(childId != null ? childId.toString().trim() : "",
+                mode != null && DETACHED_MODE.equalsIgnoreCase(mode.toString().trim()),
+                output != null && !output.toString().isEmpty() ? output.toString() : null);
+        }
+        return calls;
+    }
+
+    String getWorkflowId() {
+        return workflowId;
+    }
+
+    String getWorkflowName() {
+        return workflowName;
+    }
+
+    String getWorkflowDescription() {
+        return workflowDescription;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    int getStepCount() {
+        return steps.length;
+    }
+
+    WorkflowStepModel getStep(int index) {
+        return steps[index];
+    }
+
+    String getStepId(int index) {
+        return stepIds[index];
+    }
+
+    /**
+     * @return the index of the step, or -1 if the plan has no such step
+     */
+    int indexOf(String stepId) {
+        Integer index = indexById.get(stepId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * @return the step numbering execution logs use to refer to steps by index
+     */
+    ExecutionLog.StepIndex getLogSteps() {
+        return logSteps;
+    }
+
+    int getStartIndex() {
+        return startIndex;
+    }
+
+    /**
+     * @return how long the execution waits after the step before continuing, in milliseconds
+     */
+    long getDelayMillis(int index) {
+        return delayMillis[index];
+    }
+
+    /**
+     * @return the executor that runs the step, or null if the step has nothing to run
+     */
+    StepExecutor getExecutor(int index) {
+        StepExecutorRegistry.Slot slot = executors[index];
+        return slot != null ? slot.get() : null;
+    }
+
+    /**
+     * @return the workflow the step invokes, or null if it is not a sub-workflow step
+     */
+    SubWorkflow getSubWorkflow(int index) {
+        return subWorkflows[index];
+    }
+
+    int getOutDegree(int index) {
+        return outOffsets[index + 1] - outOffsets[index];
+    }
+
+    int getSuccessor(int index, int k) {
+        return outTargets[outOffsets[index] + k];
+    }
+
+    /**
+     * @return number of edge slots; every outgoing edge of every step has one
+     */
+    int getEdgeSlotCount() {
+        return outTargets.length;
+    }
+
+    /**
+     * @return the slot of the k-th outgoing edge of the step, unique across the plan
+     */
+    int getEdgeSlot(int index, int k) {
+        return outOffsets[index] + k;
+    }
+
+    /**
+     * @return the ID of the k-th outgoing edge of the step, or its source and target steps if it has none
+     */
+    String getEdgeId(int index, int k) {
+        String edgeId = edges[outEdges[outOffsets[index] + k]].getId();
+        return edgeId != null ? edgeId : stepIds[index] + "->" + stepIds[getSuccessor(index, k)];
+    }
+
+    /**
+     * @return true if the k-th outgoing edge of the step closes a cycle and is not followed
+     */
+    boolean isBackEdge(int index, int k) {
+        return backEdge[outOffsets[index] + k];
+    }
+
+    /**
+     * @return true if the execution follows the k-th outgoing edge of the step given its variables
+     */
+    boolean isTaken(int index, int k, Map<String, Object> variables) {
+        EdgeCondition condition = outConditions[outOffsets[index] + k];
+        return condition == null || condition.test(variables);
+    }
+
+    boolean isReachable(int index) {
+        return reachable[index];
+    }
+
+    /**
+     * @return number of steps an execution runs: all steps reachable from the start step
+     */
+    int getReachableCount() {
+        return reachableCount;
+    }
+
+    /**
+     * @return a fresh copy of the join counts, used as per-execution barrier state
+     */
+    int[] newJoinCounters() {
+        return joinCounts.clone();
+    }
+
+    /**
+     * Call of another workflow from a {@code subWorkflow} step, read from the step's data:
+     * {@code workflowId}, {@code mode} ({@code inline}, the default, or {@code detached}) and
+     * an optional {@code outputVariable} that receives the child's final variables.
+     */
+    static final class SubWorkflow {
+        private final String workflowId;
+        private final boolean detached;
+        private final String outputVariable;
+
+        SubWorkflow(String workflowId, boolean detached, String outputVariable) {
+            this.workflowId = workflowId;
+            this.detached = detached;
+            this.outputVariable = outputVariable;
+        }
+
+        String getWorkflowId() {
+            return workflowId;
+        }
+
+        /**
+         * @return true if the child is queued as an execution of its own and the step does not wait for it
+         */
+        boolean isDetached() {
+            return detached;
+        }
+
+        String getOutputVariable() {
+            return outputVariable;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowDefinitionModel;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded LRU cache of compiled {@link ExecutionPlan}s keyed by workflow ID and definition
+ * version ({@code updatedAt}). The latest plan of each workflow is also indexed by ID, so
+ * repeated starts find their plan without loading the definition or analysing the graph.
+ * Entries are dropped when the definition is updated or deleted.
+ */
+final class ExecutionPlanCache {
+
+    private final int maxSize;
+    private final StepExecutorRegistry stepExecutors;
+    private final LinkedHashMap<PlanKey, ExecutionPlan> plans;
+    private final Map<String, ExecutionPlan> latestPlans = new ConcurrentHashMap<>();
+    // Bumped on invalidation so a plan compiled from a stale definition is not published as latest
+    private final Map<String, Long> generations = new HashMap<>();
+
+    private long hits;
+    private long misses;
+
+    ExecutionPlanCache(int maxSize, StepExecutorRegistry stepExecutors) {
+        this.maxSize = Math.max(1, maxSize);
+        this.stepExecutors = stepExecutors;
+        this.plans = new LinkedHashMap<PlanKey, ExecutionPlan>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanKey, ExecutionPlan> eldest) {
+                if (size() <= ExecutionPlanCache.this.maxSize) {
+                    return false;
+                }
+                latestPlans.remove(eldest.getKey().workflowId, eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Lock-free lookup of the most recent plan of a workflow.
+     *
+     * @return the plan, or null if the workflow has to be loaded and compiled
+     */
+    ExecutionPlan getLatest(String workflowId) {
+        return latestPlans.get(workflowId);
+    }
+
+    /**
+     * @return the current invalidation generation of a workflow; pass it to {@link #get}
+     */
+    synchronized long generation(String workflowId) {
+        return generations.getOrDefault(workflowId, 0L);
+    }
+
+    /**
+     * Get the plan for the given definition version, compiling it on a miss.
+     *
+     * @param workflow the definition, loaded after {@code generation} was read
+     * @param generation the generation read before loading the definition
+     * @return the compiled plan
+     */
+    ExecutionPlan get(WorkflowDefinitionModel workflow, long generation) {
+        PlanKey key = new PlanKey(workflow.getId(), workflow.getUpdatedAt());
+        synchronized (this) {
+            ExecutionPlan plan = plans.get(key);
+            if (plan != null) {
+                hits++;
+                publishLatest(plan, generation);
+                return plan;
+            }
+            misses++;
+        }
+
+        // Compile outside the lock; concurrent misses for the same version keep the first plan
+        ExecutionPlan compiled = ExecutionPlan.compile(workflow, stepExecutors);
+        synchronized (this) {
+            ExecutionPlan plan = plans.putIfAbsent(key, compiled);
+            if (plan == null) {
+                plan = compiled;
+            }
+            publishLatest(plan, generation);
+            return plan;
+        }
+    }
+
+    private void publishLatest(ExecutionPlan plan, long generation) {
+        if (generations.getOrDefault(plan.getWorkflowId(), 0L) != generation) {
+            return;
+        }
+        latestPlans.merge(plan.getWorkflowId(), plan,
+            (current, candidate) -> candidate.getVersion() >= current.getVersion() ? candidate : current);
+    }
+
+    /**
+     * Drop every cached plan of a workflow.
+     */
+    synchronized void invalidate(String workflowId) {
+        generations.merge(workflowId, 1L, Long::sum);
+        latestPlans.remove(workflowId);
+        Iterator<PlanKey> keys = plans.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().workflowId.equals(workflowId)) {
+                keys.remove();
+            }
+        }
+    }
+
+    synchronized void clear() {
+        plans.clear();
+        latestPlans.clear();
+        generations.clear();
+    }
+
+    synchronized int size() {
+        return plans.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    private static final class PlanKey {
+        private final String workflowId;
+        private final long version;
+
+        PlanKey(String workflowId, long version) {
+            this.workflowId = workflowId;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof PlanKey)) {
+                return false;
+            }
+            PlanKey other = (PlanKey) o;
+            return version == other.version && workflowId.equals(other.workflowId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(workflowId, version);
+        }
+    }
+}
@@ -0,0 +1,407 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.Priority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Runtime state of one execution over a compiled {@link ExecutionPlan}.
+ * Join barriers are per-step arrival counters; the execution completes when every
+ * reachable step has finished. All state changes are lock-free so parallel branches
+ * can complete steps concurrently. A step that every incoming edge reached untaken is skipped:
+ * it completes without running and its own edges are all untaken. Each step's outcome, whether it
+ * ran or was skipped and which of its edges it followed, is recorded so a run can be rebuilt from
+ * a checkpoint without running steps or testing conditions again.
+ */
+final class ExecutionRun {
+
+    private static final int RAN = 1;
+    private static final int SKIPPED = 2;
+
+    private final WorkflowExecutionModel execution;
+    private final ExecutionPlan plan;
+    private final String owner;
+    private final Priority priority;
+    private final AtomicIntegerArray pendingArrivals;
+    // Arrivals over edges whose condition held; a step none arrived over is skipped
+    private final AtomicIntegerArray takenArrivals;
+    private final AtomicInteger remainingSteps;
+    // Outcome of each step: 0 while it has not completed, then RAN or SKIPPED
+    private final AtomicIntegerArray completed;
+    // Set for each outgoing edge slot of a step that ran whose condition did not hold
+    private final AtomicIntegerArray untakenEdges;
+    // Steps dispatched or waiting on a delay; the run can only be parked once this drops to zero
+    private final AtomicInteger inFlightSteps = new AtomicInteger();
+    private volatile TimerWheel.Timeout watchdog;
+    private final AtomicBoolean finished = new AtomicBoolean();
+    // Set on an inline sub-workflow run, which borrows the scheduler slot of the parent step waiting for it
+    private ExecutionRun parent;
+    private int parentStep = -1;
+    private final Set<ExecutionRun> children = ConcurrentHashMap.newKeySet();
+
+    ExecutionRun(WorkflowExecutionModel execution, ExecutionPlan plan) {
+        this.execution = execution;
+        this.plan = plan;
+        this.owner = execution.getOwner();
+        this.priority = priorityOf(execution.getPriority());
+        this.pendingArrivals = new AtomicIntegerArray(plan.newJoinCounters());
+        this.takenArrivals = new AtomicIntegerArray(plan.getStepCount());
+        this.remainingSteps = new AtomicInteger(plan.getReachableCount());
+        this.completed = new AtomicIntegerArray(plan.getStepCount());
+        this.untakenEdges = new AtomicIntegerArray(plan.getEdgeSlotCount());
+    }
+
+    /**
+     * Rebuild a run from the step outcomes a checkpoint recorded. Their successors' join
+     * barriers are replayed from the recorded outcomes, so {@link #getReadySteps()} returns the
+     * frontier to resume from and no condition is tested again.
+     *
+     * @param completedStepIds IDs of completed steps, skipped ones included; IDs unknown to the plan are ignored
+     * @param skippedStepIds IDs of the completed steps that were skipped rather than run
+     * @param untakenEdgeIds IDs of the edges a step that ran did not follow
+     */
+    static ExecutionRun restore(WorkflowExecutionModel execution, ExecutionPlan plan, Collection<String> completedStepIds,
+                                Collection<String> skippedStepIds, Collection<String> untakenEdgeIds) {
+        BitSet completedSteps = new BitSet(plan.getStepCount());
+        BitSet skippedSteps = new BitSet(plan.getStepCount());
+        for (String stepId : completedStepIds) {
+            int index = plan.indexOf(stepId);
+            if (index >= 0) {
+                completedSteps.set(index);
+            }
+        }
+        for (String stepId : skippedStepIds) {
+            int index = plan.indexOf(stepId);
+            if (index >= 0) {
+                skippedSteps.set(index);
+            }
+        }
+        BitSet untakenSlots = new BitSet(plan.getEdgeSlotCount());
+        if (!untakenEdgeIds.isEmpty()) {
+            Set<String> edgeIds = new HashSet<>(untakenEdgeIds);
+            for (int i = completedSteps.nextSetBit(0); i >= 0; i = completedSteps.nextSetBit(i + 1)) {
+                for (int k = 0; k < plan.getOutDegree(i); k++) {
+                    if (edgeIds.contains(plan.getEdgeId(i, k))) {
+                        untakenSlots.set(plan.getEdgeSlot(i, k));
+                    }
+                }
+            }
+        }
+        return restore(execution, plan, completedSteps, skippedSteps, untakenSlots);
+    }
+
+    /**
+     * Rebuild a run from a parked execution's cursor.
+     */
+    static ExecutionRun restore(ExecutionCursor cursor) {
+        return restore(cursor.getExecution(), cursor.getPlan(), cursor.getCompletedSteps(), cursor.getSkippedSteps(),
+            cursor.getUntakenEdges());
+    }
+
+    private static ExecutionRun restore(WorkflowExecutionModel execution, ExecutionPlan plan, BitSet completedSteps,
+                                        BitSet skippedSteps, BitSet untakenSlots) {
+        ExecutionRun run = new ExecutionRun(execution, plan);
+        for (int i = completedSteps.nextSetBit(0); i >= 0; i = completedSteps.nextSetBit(i + 1)) {
+            run.restoreCompleted(i, skippedSteps.get(i), untakenSlots);
+        }
+        return run;
+    }
+
+    private void restoreCompleted(int index, boolean skipped, BitSet untakenSlots) {
+        if (!plan.isReachable(index) || !completed.compareAndSet(index, 0, skipped ? SKIPPED : RAN)) {
+            return;
+        }
+        remainingSteps.decrementAndGet();
+        for (int k = 0; k < plan.getOutDegree(index); k++) {
+            if (plan.isBackEdge(index, k)) {
+                continue;
+            }
+            int slot = plan.getEdgeSlot(index, k);
+            boolean untaken = skipped || untakenSlots.get(slot);
+            if (untaken && !skipped) {
+                untakenEdges.set(slot, 1);
+            }
+            arrive(plan.getSuccessor(index, k), !untaken);
+        }
+    }
+
+    /**
+     * Capture the run as a cursor. Only valid once no steps are in flight.
+     */
+    ExecutionCursor toCursor() {
+        BitSet completedSteps = new BitSet(completed.length());
+        BitSet skippedSteps = new BitSet(completed.length());
+        for (int i = 0; i < completed.length(); i++) {
+            int outcome = completed.get(i);
+            if (outcome != 0) {
+                completedSteps.set(i);
+            }
+            if (outcome == SKIPPED) {
+                skippedSteps.set(i);
+            }
+        }
+        BitSet untakenSlots = new BitSet(untakenEdges.length());
+        for (int slot = 0; slot < untakenEdges.length(); slot++) {
+            if (untakenEdges.get(slot) == 1) {
+                untakenSlots.set(slot);
+            }
+        }
+        return new ExecutionCursor(execution, plan, completedSteps, skippedSteps, untakenSlots);
+    }
+
+    WorkflowExecutionModel getExecution() {
+        return execution;
+    }
+
+    ExecutionPlan getPlan() {
+        return plan;
+    }
+
+    /**
+     * @return the user who started the execution; its scheduler slot is accounted to them
+     */
+    String getOwner() {
+        return owner;
+    }
+
+    Priority getPriority() {
+        return priority;
+    }
+
+    private static Priority priorityOf(String value) {
+        try {
+            return Priority.fromValue(value);
+        } catch (IllegalArgumentException e) {
+            return Priority.NORMAL;
+        }
+    }
+
+    /**
+     * Record that one incoming branch of the step has finished.
+     *
+     * @param taken true if the branch's condition held
+     * @return true if this was the last branch the step was waiting for
+     */
+    private boolean arrive(int stepIndex, boolean taken) {
+        if (taken) {
+            // Counted before the barrier, so whoever passes it last sees every taken arrival
+            takenArrivals.incrementAndGet(stepIndex);
+        }
+        return pendingArrivals.decrementAndGet(stepIndex) == 0;
+    }
+
+    /**
+     * Record that a step has finished and release its successors. Skipped successors are
+     * completed here, and their successors in turn, without being handed to {@code ready}.
+     *
+     * @param variables the variables edge conditions are tested against
+     * @param ready receives each successor that can now run
+     * @return true if the last step of the execution was completed
+     */
+    boolean completeStep(int stepIndex, Map<String, Object> variables, IntConsumer ready) {
+        // Edge outcomes are recorded before the step counts as completed, so a checkpoint sees both
+        for (int k = 0; k < plan.getOutDegree(stepIndex); k++) {
+            if (!plan.isBackEdge(stepIndex, k) && !plan.isTaken(stepIndex, k, variables)) {
+                untakenEdges.set(plan.getEdgeSlot(stepIndex, k), 1);
+            }
+        }
+        boolean last = markCompleted(stepIndex, RAN);
+        int[] skipped = null;
+        int skippedCount = 0;
+        int step = stepIndex;
+        boolean taken = true;
+        while (true) {
+            for (int k = 0; k < plan.getOutDegree(step); k++) {
+                if (plan.isBackEdge(step, k)) {
+                    continue;
+                }
+                int successor = plan.getSuccessor(step, k);
+                if (!arrive(successor, taken && untakenEdges.get(plan.getEdgeSlot(step, k)) == 0)) {
+                    continue;
+                }
+                if (takenArrivals.get(successor) > 0) {
+                    ready.accept(successor);
+                } else {
+                    if (skipped == null) {
+                        skipped = new int[plan.getStepCount()];
+                    }
+                    skipped[skippedCount++] = successor;
+                    last |= markCompleted(successor, SKIPPED);
+                }
+            }
+            if (skippedCount == 0) {
+                return last;
+            }
+            step = skipped[--skippedCount];
+            taken = false;
+        }
+    }
+
+    private boolean markCompleted(int stepIndex, int outcome) {
+        completed.set(stepIndex, outcome);
+        return remainingSteps.decrementAndGet() == 0;
+    }
+
+    /**
+     * Record that a step was dispatched.
+     */
+    void enterStep() {
+        inFlightSteps.incrementAndGet();
+    }
+
+    /**
+     * Record that a dispatched step has finished or was held back by a pause.
+     *
+     * @return true if no other step is in flight
+     */
+    boolean leaveStep() {
+        return inFlightSteps.decrementAndGet() == 0;
+    }
+
+    boolean isQuiescent() {
+        return inFlightSteps.get() == 0;
+    }
+
+    boolean isCompleted(int stepIndex) {
+        return completed.get(stepIndex) != 0;
+    }
+
+    /**
+     * @return IDs of the steps completed so far, skipped ones included, in plan order
+     */
+    List<String> getCompletedStepIds() {
+        List<String> stepIds = new ArrayList<>();
+        for (int i = 0; i < completed.length(); i++) {
+            if (completed.get(i) != 0) {
+                stepIds.add(plan.getStepId(i));
+            }
+        }
+        return stepIds;
+    }
+
+    /**
+     * @return IDs of the completed steps that were skipped rather than run, in plan order
+     */
+    List<String> getSkippedStepIds() {
+        List<String> stepIds = new ArrayList<>();
+        for (int i = 0; i < completed.length(); i++) {
+            if (completed.get(i) == SKIPPED) {
+                stepIds.add(plan.getStepId(i));
+            }
+        }
+        return stepIds;
+    }
+
+    /**
+     * @return IDs of the edges that steps which ran did not follow
+     */
+    List<String> getUntakenEdgeIds() {
+        List<String> edgeIds = new ArrayList<>();
+        for (int i = 0; i < completed.length(); i++) {
+            if (completed.get(i) != RAN) {
+                continue;
+            }
+            for (int k = 0; k < plan.getOutDegree(i); k++) {
+                if (untakenEdges.get(plan.getEdgeSlot(i, k)) == 1) {
+                    edgeIds.add(plan.getEdgeId(i, k));
+                }
+            }
+        }
+        return edgeIds;
+    }
+
+    /**
+     * @return reachable steps that have not completed and are no longer waiting on a join barrier
+     */
+    int[] getReadySteps() {
+        int[] ready = new int[plan.getStepCount()];
+        int count = 0;
+        for (int i = 0; i < ready.length; i++) {
+            if (plan.isReachable(i) && completed.get(i) == 0 && pendingArrivals.get(i) <= 0) {
+                ready[count++] = i;
+            }
+        }
+        return Arrays.copyOf(ready, count);
+    }
+
+    boolean hasRemainingSteps() {
+        return remainingSteps.get() > 0;
+    }
+
+    /**
+     * @return true for exactly one caller; used to release the execution's slot once
+     */
+    boolean markFinished() {
+        return finished.compareAndSet(false, true);
+    }
+
+    boolean isFinished() {
+        return finished.get();
+    }
+
+    /**
+     * Make this run the inline child of a step of another run. Must be called before the run starts.
+     */
+    void attachTo(ExecutionRun parent, int parentStep) {
+        this.parent = parent;
+        this.parentStep = parentStep;
+        parent.children.add(this);
+    }
+
+    /**
+     * Detach a finished inline child from its parent.
+     */
+    void detachFromParent() {
+        if (parent != null) {
+            parent.children.remove(this);
+        }
+    }
+
+    /**
+     * @return the run whose step waits for this one, or null if the run holds a scheduler slot of its own
+     */
+    ExecutionRun getParent() {
+        return parent;
+    }
+
+    int getParentStep() {
+        return parentStep;
+    }
+
+    /**
+     * @return the inline children currently running for steps of this run
+     */
+    Collection<ExecutionRun> getChildren() {
+        return children;
+    }
+
+    /**
+     * Attach the timeout that bounds this run; it is cancelled when the run finishes or parks.
+     */
+    void setWatchdog(TimerWheel.Timeout watchdog) {
+        this.watchdog = watchdog;
+        if (isFinished()) {
+            watchdog.cancel();
+        }
+    }
+
+    void cancelWatchdog() {
+        TimerWheel.Timeout timeout = this.watchdog;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+}
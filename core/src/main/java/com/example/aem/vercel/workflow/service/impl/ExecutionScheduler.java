@@ -0,0 +1,555 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.Priority;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.QueueStatistics;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.SchedulerStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, prioritised, fair-share scheduler for workflow executions.
+ * An execution is admitted atomically if fewer than {@code maxActive + queueDepth} executions
+ * are in flight. Admitted executions wait in a lane per {@link Priority} and, within the lane,
+ * in a FIFO queue per tenant (the user who started them) until a running execution releases
+ * its slot. A free slot goes to the lane with the highest effective priority: its priority
+ * plus one level for every aging interval its oldest eligible execution has waited, so low
+ * priorities cannot starve. Within a lane, slots go to tenant queues by weighted fair
+ * queuing: each dispatch advances the queue's virtual time by
+ * {@code 1 / (userWeight * workflowWeight)} and the eligible queue with the lowest virtual
+ * time goes next, so a tenant flooding the scheduler cannot starve others. Tenant queues with
+ * queued executions are kept ordered by virtual time and by the age of their oldest execution,
+ * so finding the next one never visits idle tenants, and a queue is dropped once it has nothing
+ * queued or running. Optional caps bound the running executions per user and per workflow.
+ * All work runs on a fixed-size work-stealing pool, so branches forked by one execution are
+ * spread across idle workers.
+ * The rate at which executions finish is tracked as an exponentially decaying average, so
+ * rejected callers can be told how long the current backlog takes to drain.
+ */
+final class ExecutionScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionScheduler.class);
+
+    // Time constant of the drain rate average and the bounds of the retry delay derived from it
+    private static final double DRAIN_RATE_WINDOW_SECONDS = 10.0;
+    private static final long MIN_RETRY_AFTER_MILLIS = 1000;
+    private static final long MAX_RETRY_AFTER_MILLIS = 300_000;
+
+    private final int workerThreads;
+    private final int maxActive;
+    private final int queueDepth;
+    private final int maxPerUser;
+    private final int maxPerWorkflow;
+    private final Map<String, Double> userWeights;
+    private final Map<String, Double> workflowWeights;
+    private final long agingNanos;
+    private final ForkJoinPool workers;
+
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicLong totalAdmitted = new AtomicLong();
+    private final AtomicLong totalRejected = new AtomicLong();
+    private final AtomicLong totalCompleted = new AtomicLong();
+
+    // Callers blocked in submit until an admission slot frees up
+    private final Object admissionMonitor = new Object();
+    private final AtomicInteger admissionWaiters = new AtomicInteger();
+
+    // Guarded by this; admission decisions are per execution, not per step
+    private final Lane[] lanes;
+    private final Map<String, Integer> runningPerUser = new HashMap<>();
+    private final Map<String, Integer> runningPerWorkflow = new HashMap<>();
+    private double drainRate;
+    private long lastDrainNanos = System.nanoTime();
+
+    /**
+     * @param maxPerUser maximum running executions per user, 0 for no limit
+     * @param maxPerWorkflow maximum running executions per workflow, 0 for no limit
+     * @param userWeights fair-share weight per user; users not listed have weight 1
+     * @param workflowWeights fair-share weight per workflow; workflows not listed have weight 1
+     * @param agingMillis waiting time that raises an execution's priority by one level, 0 for no aging
+     */
+    ExecutionScheduler(int workerThreads, int maxActive, int queueDepth, int maxPerUser, int maxPerWorkflow,
+                       Map<String, Double> userWeights, Map<String, Double> workflowWeights, long agingMillis) {
+        this.workerThreads = Math.max(1, workerThreads);
+        this.maxActive = Math.max(1, maxActive);
+        this.queueDepth = Math.max(0, queueDepth);
+        this.maxPerUser = Math.max(0, maxPerUser);
+        this.maxPerWorkflow = Math.max(0, maxPerWorkflow);
+        this.userWeights = new HashMap<>(userWeights);
+        this.workflowWeights = new HashMap<>(workflowWeights);
+        this.agingNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, agingMillis));
+        this.lanes = new Lane[Priority.values().length];
+        for (Priority priority : Priority.values()) {
+            lanes[priority.ordinal()] = new Lane(priority);
+        }
+        // Async mode gives FIFO order for event-style tasks; task queues are bounded by admission control
+        this.workers = new ForkJoinPool(this.workerThreads, new WorkerThreadFactory(),
+            (thread, e) -> LOG.error("Uncaught exception in {}", thread.getName(), e), true);
+    }
+
+    /**
+     * Parse weights configured as {@code name=weight} entries.
+     */
+    static Map<String, Double> parseWeights(String[] entries) {
+        Map<String, Double> weights = new HashMap<>();
+        if (entries == null) {
+            return weights;
+        }
+        for (String entry : entries) {
+            int separator = entry != null ? entry.lastIndexOf('=') : -1;
+            if (separator <= 0) {
+                LOG.warn("Ignoring invalid scheduler weight: {}", entry);
+                continue;
+            }
+            try {
+                double weight = Double.parseDouble(entry.substring(separator + 1).trim());
+                if (weight > 0) {
+                    weights.put(entry.substring(0, separator).trim(), weight);
+                } else {
+                    LOG.warn("Ignoring non-positive scheduler weight: {}", entry);
+                }
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring invalid scheduler weight: {}", entry);
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Admit a new execution. The given task runs once a slot is free and the tenant's fair
+     * share allows it; the execution keeps its slot until {@link #release} is called.
+     *
+     * @param workflowId the workflow of the execution
+     * @param userId the tenant the execution is queued and accounted under
+     * @param priority the lane the execution waits in
+     * @param start the first task of the execution
+     * @return false if both the running slots and the admission queue are full
+     */
+    boolean submit(String workflowId, String userId, Priority priority, Runnable start) {
+        return submit(workflowId, userId, priority, start, 0);
+    }
+
+    /**
+     * Admit a new execution, waiting up to the given time for an admission slot if the
+     * running slots and the admission queue are full.
+     *
+     * @param waitMillis maximum time to block for a slot, 0 to reject immediately
+     * @return false if no slot became free in time
+     */
+    boolean submit(String workflowId, String userId, Priority priority, Runnable start, long waitMillis) {
+        if (!tryAdmit() && (waitMillis <= 0 || !awaitAdmission(waitMillis))) {
+            totalRejected.incrementAndGet();
+            return false;
+        }
+        totalAdmitted.incrementAndGet();
+        enqueue(workflowId, userId, priority, start);
+        return true;
+    }
+
+    /**
+     * Reserve admission for a batch of executions in one step. Each reserved execution
+     * must then be passed to {@link #enqueue}; the rest of the batch counts as rejected.
+     *
+     * @param count the number of executions in the batch
+     * @return how many of them were admitted
+     */
+    int reserve(int count) {
+        int current;
+        int reserved;
+        do {
+            current = admitted.get();
+            reserved = Math.max(0, Math.min(count, maxActive + queueDepth - current));
+        } while (reserved > 0 && !admitted.compareAndSet(current, current + reserved));
+        totalAdmitted.addAndGet(reserved);
+        totalRejected.addAndGet(count - reserved);
+        return reserved;
+    }
+
+    /**
+     * Queue an execution admitted by {@link #reserve}.
+     */
+    void enqueue(String workflowId, String userId, Priority priority, Runnable start) {
+        List<Runnable> dispatched;
+        synchronized (this) {
+            Lane lane = lanes[priority.ordinal()];
+            TenantQueue queue = lane.tenants.computeIfAbsent(tenantOf(userId), tenant -> new TenantQueue(tenant, lane.nextId++));
+            PendingExecution pending = new PendingExecution(workflowId, start, System.nanoTime());
+            if (queue.pending.isEmpty()) {
+                // A queue that was idle does not bank credit for the time it had nothing queued
+                queue.virtualTime = Math.max(queue.virtualTime, lane.virtualTime);
+                queue.pending.add(pending);
+                lane.addReady(queue);
+            } else {
+                queue.pending.add(pending);
+            }
+            dispatched = dispatchEligible();
+        }
+        execute(dispatched);
+    }
+
+    private boolean tryAdmit() {
+        int current;
+        do {
+            current = admitted.get();
+            if (current >= maxActive + queueDepth) {
+                return false;
+            }
+        } while (!admitted.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private boolean awaitAdmission(long waitMillis) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        admissionWaiters.incrementAndGet();
+        try {
+            synchronized (admissionMonitor) {
+                while (!tryAdmit()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(admissionMonitor, remaining);
+                }
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            admissionWaiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Run follow-up work for an execution that already holds a slot. Tasks dispatched from
+     * a worker go to that worker's local queue and can be stolen by idle workers.
+     */
+    void dispatch(Runnable task) {
+        workers.execute(task);
+    }
+
+    /**
+     * Release the slot held by a finished execution and start the next queued one.
+     */
+    void release(String workflowId, String userId, Priority priority) {
+        List<Runnable> dispatched;
+        synchronized (this) {
+            String tenant = tenantOf(userId);
+            Lane lane = lanes[priority.ordinal()];
+            TenantQueue queue = lane.tenants.get(tenant);
+            if (queue != null && --queue.running <= 0 && queue.pending.isEmpty()) {
+                // Tenant IDs come from callers; a queue with nothing left to account for is not kept
+                lane.tenants.remove(tenant);
+            }
+            runningPerUser.computeIfPresent(tenant, (id, count) -> count > 1 ? count - 1 : null);
+            runningPerWorkflow.computeIfPresent(workflowId, (id, count) -> count > 1 ? count - 1 : null);
+            running.decrementAndGet();
+            admitted.decrementAndGet();
+            totalCompleted.incrementAndGet();
+            recordDrain(System.nanoTime());
+            dispatched = dispatchEligible();
+        }
+        if (admissionWaiters.get() > 0) {
+            synchronized (admissionMonitor) {
+                admissionMonitor.notifyAll();
+            }
+        }
+        execute(dispatched);
+    }
+
+    /**
+     * Count one finished execution into the decaying drain rate. Caller holds the lock.
+     */
+    private void recordDrain(long now) {
+        drainRate = decayedDrainRate(now) + 1.0 / DRAIN_RATE_WINDOW_SECONDS;
+        lastDrainNanos = now;
+    }
+
+    private double decayedDrainRate(long now) {
+        double elapsedSeconds = (now - lastDrainNanos) / 1e9;
+        return drainRate * Math.exp(-elapsedSeconds / DRAIN_RATE_WINDOW_SECONDS);
+    }
+
+    /**
+     * Estimate how long the queued executions take to drain at the current finish rate.
+     *
+     * @param defaultMillis the delay to suggest until executions have been seen to finish
+     * @return the suggested retry delay for a rejected start, in milliseconds
+     */
+    synchronized long estimateRetryAfterMillis(long defaultMillis) {
+        double rate = decayedDrainRate(System.nanoTime());
+        if (rate <= 0) {
+            // Nothing to extrapolate from yet, e.g. right after startup; do not send callers away for minutes
+            return Math.max(MIN_RETRY_AFTER_MILLIS, Math.min(MAX_RETRY_AFTER_MILLIS, defaultMillis));
+        }
+        int backlog = Math.max(1, admitted.get() - running.get());
+        long millis = (long) Math.ceil(backlog / rate * 1000);
+        return Math.max(MIN_RETRY_AFTER_MILLIS, Math.min(MAX_RETRY_AFTER_MILLIS, millis));
+    }
+
+    /**
+     * Hand free slots to the lane with the highest effective priority, and within it to the
+     * eligible queue with the lowest virtual time, until the slots run out or every queued
+     * execution is held back by a cap. Caller holds the lock.
+     */
+    private List<Runnable> dispatchEligible() {
+        List<Runnable> dispatched = null;
+        while (running.get() < maxActive) {
+            long now = System.nanoTime();
+            Lane lane = null;
+            TenantQueue next = null;
+            long bestPriority = Long.MIN_VALUE;
+            // Highest lane first, so it wins ties with aged lower lanes
+            for (int level = lanes.length - 1; level >= 0; level--) {
+                TenantQueue candidate = firstEligible(lanes[level].byVirtualTime);
+                if (candidate == null) {
+                    continue;
+                }
+                long oldest = firstEligible(lanes[level].byWaitingSince).pending.peek().enqueuedAt;
+                long effective = level + (agingNanos > 0 ? (now - oldest) / agingNanos : 0);
+                if (effective > bestPriority) {
+                    bestPriority = effective;
+                    lane = lanes[level];
+                    next = candidate;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            lane.removeReady(next);
+            PendingExecution pending = next.pending.poll();
+            lane.virtualTime = Math.max(lane.virtualTime, next.virtualTime);
+            next.virtualTime += 1.0 / (userWeight(next.tenant) * workflowWeights.getOrDefault(pending.workflowId, 1.0));
+            if (!next.pending.isEmpty()) {
+                lane.addReady(next);
+            }
+            next.running++;
+            next.dispatched++;
+            next.recordWait(now - pending.enqueuedAt);
+            runningPerUser.merge(next.tenant, 1, Integer::sum);
+            runningPerWorkflow.merge(pending.workflowId, 1, Integer::sum);
+            running.incrementAndGet();
+            if (dispatched == null) {
+                dispatched = new ArrayList<>();
+            }
+            dispatched.add(new AdmittedExecution(pending.workflowId, next.tenant, lane.priority, pending.task));
+        }
+        return dispatched != null ? dispatched : Collections.emptyList();
+    }
+
+    /**
+     * @return the first queue in the order that no cap holds back, or null; only queues held
+     *         back by a cap are passed over, never idle ones
+     */
+    private TenantQueue firstEligible(NavigableSet<TenantQueue> ready) {
+        for (TenantQueue queue : ready) {
+            if (isEligible(queue)) {
+                return queue;
+            }
+        }
+        return null;
+    }
+
+    private boolean isEligible(TenantQueue queue) {
+        PendingExecution head = queue.pending.peek();
+        if (head == null) {
+            return false;
+        }
+        if (maxPerUser > 0 && runningPerUser.getOrDefault(queue.tenant, 0) >= maxPerUser) {
+            return false;
+        }
+        // Queues are FIFO per tenant: a head held back by its workflow cap blocks its own tenant only
+        return maxPerWorkflow <= 0 || runningPerWorkflow.getOrDefault(head.workflowId, 0) < maxPerWorkflow;
+    }
+
+    private void execute(List<Runnable> dispatched) {
+        for (Runnable task : dispatched) {
+            try {
+                workers.execute(task);
+            } catch (RuntimeException e) {
+                AdmittedExecution execution = (AdmittedExecution) task;
+                LOG.error("Failed to dispatch queued workflow execution", e);
+                release(execution.workflowId, execution.tenant, execution.priority);
+            }
+        }
+    }
+
+    private double userWeight(String tenant) {
+        return userWeights.getOrDefault(tenant, 1.0);
+    }
+
+    private static String tenantOf(String userId) {
+        return userId != null && !userId.isEmpty() ? userId : "anonymous";
+    }
+
+    SchedulerStatistics getStatistics() {
+        int runningNow = running.get();
+        return new SchedulerStatistics(
+            workerThreads,
+            workers.getActiveThreadCount(),
+            runningNow,
+            maxActive,
+            Math.max(0, admitted.get() - runningNow),
+            queueDepth,
+            totalAdmitted.get(),
+            totalRejected.get(),
+            totalCompleted.get()
+        );
+    }
+
+    synchronized List<QueueStatistics> getQueueStatistics() {
+        long now = System.nanoTime();
+        List<QueueStatistics> statistics = new ArrayList<>();
+        for (int level = lanes.length - 1; level >= 0; level--) {
+            for (TenantQueue queue : lanes[level].tenants.values()) {
+                statistics.add(queueStatistics(lanes[level], queue, now));
+            }
+        }
+        return statistics;
+    }
+
+    private QueueStatistics queueStatistics(Lane lane, TenantQueue queue, long now) {
+        PendingExecution head = queue.pending.peek();
+        return new QueueStatistics(
+                queue.tenant,
+                lane.priority,
+                userWeight(queue.tenant),
+                queue.pending.size(),
+                queue.running,
+                queue.dispatched,
+                head != null ? TimeUnit.NANOSECONDS.toMillis(now - head.enqueuedAt) : 0,
+                queue.dispatched > 0 ? TimeUnit.NANOSECONDS.toMillis(queue.totalWaitNanos / queue.dispatched) : 0,
+                TimeUnit.NANOSECONDS.toMillis(queue.maxWaitNanos)
+        );
+    }
+
+    void shutdown() {
+        workers.shutdownNow();
+        synchronized (this) {
+            for (Lane lane : lanes) {
+                lane.tenants.clear();
+                lane.byVirtualTime.clear();
+                lane.byWaitingSince.clear();
+            }
+            runningPerUser.clear();
+            runningPerWorkflow.clear();
+        }
+    }
+
+    /**
+     * Tenant queues of one priority; guarded by the scheduler lock. A queue is in the ready
+     * sets exactly while it has queued executions, and is taken out before its virtual time or
+     * its head changes.
+     */
+    private static final class Lane {
+        private final Priority priority;
+        private final Map<String, TenantQueue> tenants = new LinkedHashMap<>();
+        // Ties go to the queue created first
+        private final NavigableSet<TenantQueue> byVirtualTime = new TreeSet<>(
+            Comparator.comparingDouble((TenantQueue queue) -> queue.virtualTime).thenComparingLong(queue -> queue.id));
+        private final NavigableSet<TenantQueue> byWaitingSince = new TreeSet<>(
+            Comparator.comparingLong((TenantQueue queue) -> queue.pending.peek().enqueuedAt).thenComparingLong(queue -> queue.id));
+        private double virtualTime;
+        private long nextId;
+
+        Lane(Priority priority) {
+            this.priority = priority;
+        }
+
+        void addReady(TenantQueue queue) {
+            byVirtualTime.add(queue);
+            byWaitingSince.add(queue);
+        }
+
+        void removeReady(TenantQueue queue) {
+            byVirtualTime.remove(queue);
+            byWaitingSince.remove(queue);
+        }
+    }
+
+    /**
+     * FIFO queue and fair-share accounting of one tenant in one lane; guarded by the scheduler lock.
+     */
+    private static final class TenantQueue {
+        private final String tenant;
+        private final long id;
+        private final ArrayDeque<PendingExecution> pending = new ArrayDeque<>();
+        private double virtualTime;
+        private int running;
+        private long dispatched;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        TenantQueue(String tenant, long id) {
+            this.tenant = tenant;
+            this.id = id;
+        }
+
+        void recordWait(long waitNanos) {
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+        }
+    }
+
+    private static final class PendingExecution {
+        private final String workflowId;
+        private final Runnable task;
+        private final long enqueuedAt;
+
+        PendingExecution(String workflowId, Runnable task, long enqueuedAt) {
+            this.workflowId = workflowId;
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    /**
+     * Start task of an execution that was given a slot, carrying what is needed to give it back.
+     */
+    private static final class AdmittedExecution implements Runnable {
+        private final String workflowId;
+        private final String tenant;
+        private final Priority priority;
+        private final Runnable task;
+
+        AdmittedExecution(String workflowId, String tenant, Priority priority, Runnable task) {
+            this.workflowId = workflowId;
+            this.tenant = tenant;
+            this.priority = priority;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("workflow-executor-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded, time-expiring table of the idempotency keys of execution starts.
+ * A lookup is a single lock-free map read. A start claims its key with {@code putIfAbsent},
+ * so concurrent retries of one request all see the claim of the start that won and wait for
+ * its execution ID. Every claim expires a fixed time after it was made, so claim order is
+ * expiry order: a FIFO of claims is enough to expire and bound the table without locks.
+ * A claim leaves the FIFO and the count whenever it leaves the map, so claims that were
+ * abandoned or replaced never push live ones out.
+ */
+final class IdempotencyTable {
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Claim> claims = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Claim> claimOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    IdempotencyTable(long ttlMillis, int maxEntries) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ttlMillis));
+        this.maxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * Claim a key for a new start.
+     *
+     * @param key the idempotency key, scoped to its caller
+     * @param claim a new claim for the start the caller is about to make
+     * @return {@code claim} if the caller now owns the key and must {@link Claim#complete} or
+     *         {@link #abandon} it, otherwise the live claim of an earlier start with the same key
+     */
+    Claim claim(String key, Claim claim) {
+        long now = System.nanoTime();
+        Claim existing = claims.get(key);
+        if (existing != null && !existing.isExpired(now)) {
+            return existing;
+        }
+
+        claim.key = key;
+        claim.expiresAt = now + ttlNanos;
+        while (true) {
+            if (existing == null) {
+                existing = claims.putIfAbsent(key, claim);
+                if (existing == null) {
+                    break;
+                }
+            } else if (existing.isExpired(now)) {
+                if (claims.replace(key, existing, claim)) {
+                    unlink(existing);
+                    break;
+                }
+                existing = claims.get(key);
+            } else {
+                return existing;
+            }
+        }
+        claimOrder.add(claim);
+        size.incrementAndGet();
+        expire(now);
+        return claim;
+    }
+
+    /**
+     * Give up a claim whose start failed, so a retry can start the execution.
+     */
+    void abandon(Claim claim, Throwable cause) {
+        if (claims.remove(claim.key, claim)) {
+            // Failed starts pay for the scan, bounded by the table size; successful ones never do
+            unlink(claim);
+        }
+        claim.executionId.completeExceptionally(cause);
+    }
+
+    /**
+     * Drop expired claims, and the oldest claims while the table is over its bound.
+     */
+    private void expire(long now) {
+        Claim oldest;
+        while ((oldest = claimOrder.peek()) != null && (oldest.isExpired(now) || size.get() > maxEntries)) {
+            if (unlink(oldest)) {
+                claims.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    /**
+     * Take a claim out of the FIFO and the count; only the first caller for a claim succeeds.
+     */
+    private boolean unlink(Claim claim) {
+        if (!claimOrder.remove(claim)) {
+            return false;
+        }
+        size.decrementAndGet();
+        return true;
+    }
+
+    int size() {
+        return claims.size();
+    }
+
+    void clear() {
+        claims.clear();
+        claimOrder.clear();
+        size.set(0);
+    }
+
+    /**
+     * One start's hold on an idempotency key.
+     */
+    static final class Claim {
+        private final String workflowId;
+        private final CompletableFuture<String> executionId = new CompletableFuture<>();
+        // Written before the claim is published through the map
+        private String key;
+        private long expiresAt;
+        // Written before executionId completes
+        private volatile WorkflowExecutionModel execution;
+
+        Claim(String workflowId) {
+            this.workflowId = workflowId;
+        }
+
+        String getWorkflowId() {
+            return workflowId;
+        }
+
+        /**
+         * Record the execution the owning start created.
+         *
+         * @param keep true to hold on to the execution for replays, when it is not stored
+         *             anywhere it could be read back from once it finishes
+         */
+        void complete(WorkflowExecutionModel execution, boolean keep) {
+            if (keep) {
+                this.execution = execution;
+            }
+            executionId.complete(execution.getId());
+        }
+
+        /**
+         * @return the execution the owning start created, if it was kept
+         */
+        WorkflowExecutionModel getExecution() {
+            return execution;
+        }
+
+        /**
+         * Wait for the execution ID of the start that owns this claim.
+         *
+         * @throws IllegalStateException if the start failed or did not finish in time
+         */
+        String awaitExecutionId(long timeoutMillis) {
+            try {
+                return executionId.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException("Execution start with the same idempotency key failed", e.getCause());
+            } catch (TimeoutException e) {
+                throw new IllegalStateException("Execution start with the same idempotency key is still in progress");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for execution start with the same idempotency key");
+            }
+        }
+
+        /**
+         * @return true if the owning start has not finished yet
+         */
+        boolean isPending() {
+            return !executionId.isDone();
+        }
+
+        private boolean isExpired(long now) {
+            return now - expiresAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Identical step invocations in flight across executions. Invocations are keyed by step type
+ * and the inputs the executor reported; the first one runs and every identical invocation
+ * that arrives before it completes waits for the same result instead of running again.
+ * The key's hash is computed once and the inputs are compared with {@code equals}, so a hash
+ * collision never hands one invocation's result to another.
+ * <p>
+ * Only in-flight invocations are shared. The entry is removed before the result is published,
+ * so an invocation that arrives afterwards runs again; nothing is cached.
+ */
+final class StepCoalescer {
+
+    private final Map<Key, Call> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Join the identical invocation in flight, or become the one that runs.
+     *
+     * @param inputs the inputs the step's result depends on; compared with {@code equals}
+     * @param executionId the execution claiming the invocation
+     * @return the claim; if it {@link Claim#isLeader() leads}, the caller must {@link Claim#run} it
+     */
+    Claim claim(String stepType, Object inputs, String executionId) {
+        Key key = new Key(stepType, inputs);
+        Call call = new Call(key, executionId);
+        Call existing = inFlight.putIfAbsent(key, call);
+        return existing != null ? new Claim(existing, false) : new Claim(call, true);
+    }
+
+    /**
+     * @return the number of distinct invocations in flight
+     */
+    int size() {
+        return inFlight.size();
+    }
+
+    /**
+     * One execution's share of an invocation.
+     */
+    final class Claim {
+        private final Call call;
+        private final boolean leader;
+
+        private Claim(Call call, boolean leader) {
+            this.call = call;
+            this.leader = leader;
+        }
+
+        /**
+         * @return true if this execution runs the invocation, false if it waits for another's
+         */
+        boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * @return the execution that runs the invocation
+         */
+        String getLeaderExecutionId() {
+            return call.executionId;
+        }
+
+        /**
+         * Run the invocation and publish its result to everyone who claimed it.
+         */
+        void run(Supplier<CompletionStage<Map<String, Object>>> invocation) {
+            if (!leader) {
+                throw new IllegalStateException("Only the leading execution runs a coalesced step");
+            }
+            CompletionStage<Map<String, Object>> stage;
+            try {
+                stage = invocation.get();
+                if (stage == null) {
+                    throw new IllegalStateException("Step executor returned no stage");
+                }
+            } catch (RuntimeException e) {
+                publish(null, e);
+                throw e;
+            }
+            stage.whenComplete(this::publish);
+        }
+
+        private void publish(Map<String, Object> result, Throwable error) {
+            inFlight.remove(call.key, call);
+            if (error != null) {
+                call.result.completeExceptionally(error);
+            } else {
+                call.result.complete(result);
+            }
+        }
+
+        /**
+         * @return the shared result of the invocation
+         */
+        CompletionStage<Map<String, Object>> getResult() {
+            return call.result;
+        }
+    }
+
+    private static final class Call {
+        private final Key key;
+        private final String executionId;
+        private final CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+
+        Call(Key key, String executionId) {
+            this.key = key;
+            this.executionId = executionId;
+        }
+    }
+
+    private static final class Key {
+        private final String stepType;
+        private final Object inputs;
+        private final int hash;
+
+        Key(String stepType, Object inputs) {
+            this.stepType = stepType;
+            this.inputs = inputs;
+            this.hash = 31 * Objects.hashCode(stepType) + Objects.hashCode(inputs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Objects.equals(stepType, other.stepType) && Objects.equals(inputs, other.inputs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.service.StepExecutor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Step executors by step type. Each type has one {@link Slot} for the lifetime of the registry,
+ * and plans resolve their steps' slots when they are compiled, so finding the executor of a
+ * step is an array read and a volatile read. Executors come and go by updating the slot
+ * in place; cached plans pick up the change without being compiled again.
+ */
+final class StepExecutorRegistry {
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    /**
+     * @return the slot of a step type, created empty if no executor has claimed the type yet
+     */
+    Slot slotFor(String stepType) {
+        return slots.computeIfAbsent(stepType, type -> new Slot());
+    }
+
+    void register(StepExecutor executor, Map<String, Object> properties) {
+        int ranking = rankingOf(properties);
+        for (String stepType : stepTypesOf(properties)) {
+            slotFor(stepType).add(executor, ranking);
+        }
+    }
+
+    void unregister(StepExecutor executor, Map<String, Object> properties) {
+        for (String stepType : stepTypesOf(properties)) {
+            Slot slot = slots.get(stepType);
+            if (slot != null) {
+                slot.remove(executor);
+            }
+        }
+    }
+
+    private static List<String> stepTypesOf(Map<String, Object> properties) {
+        Object value = properties != null ? properties.get(StepExecutor.STEP_TYPE_PROPERTY) : null;
+        if (value instanceof String) {
+            return Collections.singletonList((String) value);
+        }
+        List<String> stepTypes = new ArrayList<>();
+        if (value instanceof String[]) {
+            Collections.addAll(stepTypes, (String[]) value);
+        } else if (value instanceof Iterable) {
+            for (Object stepType : (Iterable<?>) value) {
+                stepTypes.add(String.valueOf(stepType));
+            }
+        }
+        return stepTypes;
+    }
+
+    private static int rankingOf(Map<String, Object> properties) {
+        Object ranking = properties != null ? properties.get("service.ranking") : null;
+        return ranking instanceof Integer ? (Integer) ranking : 0;
+    }
+
+    /**
+     * The executor currently running one step type.
+     */
+    static final class Slot {
+        // Guarded by this; highest ranking first, earlier registrations first among equals
+        private final List<Registration> registrations = new ArrayList<>();
+        private volatile StepExecutor current;
+
+        /**
+         * @return the executor, or null if no executor runs the type
+         */
+        StepExecutor get() {
+            return current;
+        }
+
+        synchronized void add(StepExecutor executor, int ranking) {
+            int index = 0;
+            while (index < registrations.size() && registrations.get(index).ranking >= ranking) {
+                index++;
+            }
+            registrations.add(index, new Registration(executor, ranking));
+            current = registrations.get(0).executor;
+        }
+
+        synchronized void remove(StepExecutor executor) {
+            registrations.removeIf(registration -> registration.executor == executor);
+            current = registrations.isEmpty() ? null : registrations.get(0).executor;
+        }
+    }
+
+    private static final class Registration {
+        private final StepExecutor executor;
+        private final int ranking;
+
+        Registration(StepExecutor executor, int ranking) {
+            this.executor = executor;
+            this.ranking = ranking;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timer wheel driven by a single ticker thread.
+ * Level 0 has one slot per tick; each further level has slots as wide as a full turn of the
+ * level below. A timeout is placed on the lowest level that can hold its deadline and
+ * cascades down as its slot comes up, so long deadlines such as execution timeouts are
+ * touched at most once per level instead of once per turn. Scheduling and cancelling are
+ * O(1): cancelled timeouts are unlinked by the ticker, so they do not pile up until their
+ * deadline. Expired tasks run on the ticker thread, so they must only hand work off to an
+ * executor.
+ */
+final class TimerWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+    private static final int LEVELS = 4;
+
+    private final long tickNanos;
+    private final Bucket[][] levels;
+    private final int bits;
+    private final int mask;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final Thread ticker;
+    private final long startTime;
+
+    private volatile boolean running = true;
+    private long tick;
+
+    TimerWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        this.tickNanos = Math.max(unit.toNanos(tickDuration), TimeUnit.MILLISECONDS.toNanos(1));
+        int size = Integer.highestOneBit(Math.min(Math.max(2, wheelSize), 1 << 15) * 2 - 1);
+        this.bits = Integer.numberOfTrailingZeros(size);
+        this.mask = size - 1;
+        this.levels = new Bucket[LEVELS][size];
+        for (Bucket[] level : levels) {
+            for (int i = 0; i < size; i++) {
+                level[i] = new Bucket();
+            }
+        }
+        this.startTime = System.nanoTime();
+        this.ticker = new Thread(this::run, name);
+        this.ticker.setDaemon(true);
+        this.ticker.start();
+    }
+
+    /**
+     * Schedule a task to run once after the given delay.
+     *
+     * @return a handle that can cancel the task before it runs
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer wheel is stopped");
+        }
+        long deadline = System.nanoTime() - startTime + unit.toNanos(Math.max(0, delay));
+        Timeout timeout = new Timeout(this, task, deadline);
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    void stop() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(this, sleepNanos);
+                continue;
+            }
+            removeCancelledTimeouts();
+            transferPendingTimeouts();
+            // Cascade from the top, so a timeout moved down one level can move again this tick
+            for (int level = LEVELS - 1; level > 0; level--) {
+                int shift = bits * level;
+                if ((tick & ((1L << shift) - 1)) == 0) {
+                    Bucket bucket = levels[level][(int) ((tick >>> shift) & mask)];
+                    Timeout timeout;
+                    while ((timeout = bucket.poll()) != null) {
+                        place(timeout);
+                    }
+                }
+            }
+            levels[0][(int) (tick & mask)].expire();
+            tick++;
+        }
+        pendingTimeouts.clear();
+        cancelledTimeouts.clear();
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (!timeout.isCancelled()) {
+                place(timeout);
+            }
+        }
+    }
+
+    private void removeCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void place(Timeout timeout) {
+        // Never place a timeout in the past: already expired ones fire on the current tick
+        long target = Math.max(timeout.deadline / tickNanos, tick);
+        long delta = target - tick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (bits * (level + 1)))) {
+            level++;
+        }
+        if (delta >= (1L << (bits * (level + 1)))) {
+            // Beyond the top level: park in its furthest slot and re-place when it comes up
+            target = tick + (1L << (bits * (level + 1))) - 1;
+        }
+        levels[level][(int) ((target >>> (bits * level)) & mask)].add(timeout);
+    }
+
+    /**
+     * Handle for a scheduled task.
+     */
+    static final class Timeout {
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final TimerWheel timer;
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        // Only accessed by the ticker thread
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout prev;
+
+        private Timeout(TimerWheel timer, Runnable task, long deadline) {
+            this.timer = timer;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if the task had not run yet and will not run
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            timer.cancelledTimeouts.add(this);
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Timer task failed", e);
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts hashed to one slot; only touched by the ticker thread.
+     */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout poll() {
+            Timeout timeout = head;
+            if (timeout != null) {
+                remove(timeout);
+            }
+            return timeout;
+        }
+
+        void expire() {
+            Timeout timeout;
+            while ((timeout = poll()) != null) {
+                timeout.expire();
+            }
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.example.aem.vercel.workflow.model.WorkflowDefinitionModel;
 import com.example.aem.vercel.workflow.model.WorkflowStepModel;
 import com.example.aem.vercel.workflow.model.WorkflowEdgeModel;
 import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import com.example.aem.vercel.workflow.service.WorkflowDefinitionListener;
 import com.example.aem.vercel.workflow.service.WorkflowDefinitionService;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
@@ -13,6 +14,8 @@ import org.apache.sling.api.resource.ValueMap;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.metatype.annotations.Designate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +48,9 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
     @Reference
     private ResourceResolverFactory resourceResolverFactory;
 
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    private volatile List<WorkflowDefinitionListener> listeners = new ArrayList<>();
+
     private WorkflowConfig config;
 
     @Activate
@@ -145,6 +151,7 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
                 cache.put(id, workflow);
             }
 
+            notifyListeners(listener -> listener.workflowUpdated(id));
             LOG.info("Updated workflow: {}", id);
             return workflow;
             
@@ -237,6 +244,7 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
                     cache.remove(id);
                 }
                 
+                notifyListeners(listener -> listener.workflowDeleted(id));
                 LOG.info("Deleted workflow: {}", id);
                 return true;
             }
@@ -278,6 +286,10 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
 
             // Validate edges
             if (workflow.getEdges() != null) {
+                Map<String, WorkflowStepModel> stepsById = new HashMap<>();
+                for (var step : workflow.getSteps()) {
+                    stepsById.putIfAbsent(step.getId(), step);
+                }
                 for (var edge : workflow.getEdges()) {
                     if (edge.getSource() == null || edge.getSource().trim().isEmpty()) {
                         errors.add("Edge source is required");
@@ -290,6 +302,13 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
                     } else if (!stepIds.contains(edge.getTarget())) {
                         errors.add("Edge target not found: " + edge.getTarget());
                     }
+
+                    // Conditions are compiled with the execution plan; reject them before they get that far
+                    try {
+                        EdgeCondition.of(edge, stepsById.get(edge.getSource()));
+                    } catch (IllegalArgumentException e) {
+                        errors.add(e.getMessage());
+                    }
                 }
             }
 
@@ -366,6 +385,16 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
         return Collections.emptyList();
     }
 
+    private void notifyListeners(java.util.function.Consumer<WorkflowDefinitionListener> notification) {
+        for (WorkflowDefinitionListener listener : listeners) {
+            try {
+                notification.accept(listener);
+            } catch (Exception e) {
+                LOG.error("Workflow definition listener failed: {}", listener.getClass().getName(), e);
+            }
+        }
+    }
+
     private void saveWorkflowToNode(Node node, WorkflowDefinitionModel workflow) throws RepositoryException {
         node.setProperty("name", workflow.getName());
         node.setProperty("description", workflow.getDescription());
@@ -382,6 +411,7 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
             stepNode.setProperty("description", step.getDescription());
             stepNode.setProperty("positionX", step.getPositionX());
             stepNode.setProperty("positionY", step.getPositionY());
+            saveDataToNode(stepNode, step.getData());
         }
 
         // Save edges
@@ -393,6 +423,7 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
             edgeNode.setProperty("sourceHandle", edge.getSourceHandle());
             edgeNode.setProperty("targetHandle", edge.getTargetHandle());
             edgeNode.setProperty("type", edge.getType());
+            saveDataToNode(edgeNode, edge.getData());
         }
 
         // Save variables
@@ -404,6 +435,37 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
         }
     }
 
+    /**
+     * Store the scalar entries of a step's or edge's data, such as conditions, delays and
+     * sub-workflow calls, which the execution plan reads.
+     */
+    private void saveDataToNode(Node node, Map<String, Object> data) throws RepositoryException {
+        if (data == null || data.isEmpty()) {
+            return;
+        }
+        Node dataNode = node.hasNode("data") ? node.getNode("data") : node.addNode("data", NODE_TYPE);
+        for (Map.Entry<String, Object> entry : data.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+                dataNode.setProperty(entry.getKey(), value.toString());
+            }
+        }
+    }
+
+    private Map<String, Object> loadDataFromResource(Resource resource) {
+        Map<String, Object> data = new HashMap<>();
+        Resource dataResource = resource.getChild("data");
+        if (dataResource != null) {
+            ValueMap dataProps = dataResource.getValueMap();
+            for (String key : dataProps.keySet()) {
+                if (!key.startsWith("jcr:")) {
+                    data.put(key, dataProps.get(key));
+                }
+            }
+        }
+        return data;
+    }
+
     private WorkflowDefinitionModel loadWorkflowFromResource(Resource resource) {
         try {
             WorkflowDefinitionModel workflow = new WorkflowDefinitionModel();
@@ -428,6 +490,7 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
                     step.setDescription(stepProps.get("description", String.class));
                     step.setPositionX(stepProps.get("positionX", 0));
                     step.setPositionY(stepProps.get("positionY", 0));
+                    step.setData(loadDataFromResource(stepResource));
                     workflow.addStep(step);
                 }
             }
@@ -444,6 +507,7 @@ public class WorkflowDefinitionServiceImpl implements WorkflowDefinitionService
                     edge.setSourceHandle(edgeProps.get("sourceHandle", String.class));
                     edge.setTargetHandle(edgeProps.get("targetHandle", String.class));
                     edge.setType(edgeProps.get("type", String.class));
+                    edge.setData(loadDataFromResource(edgeResource));
                     workflow.addEdge(edge);
                 }
             }
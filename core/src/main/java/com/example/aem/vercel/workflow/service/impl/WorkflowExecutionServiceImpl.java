@@ -1,22 +1,50 @@
 package com.example.aem.vercel.workflow.service.impl;
 
+import com.example.aem.vercel.workflow.model.ExecutionLog;
 import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import com.example.aem.vercel.workflow.model.WorkflowLogEntryModel;
 import com.example.aem.vercel.workflow.model.WorkflowDefinitionModel;
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import com.example.aem.vercel.workflow.service.ExecutionRejectedException;
+import com.example.aem.vercel.workflow.service.StepExecutor;
+import com.example.aem.vercel.workflow.service.WorkflowDefinitionListener;
 import com.example.aem.vercel.workflow.service.WorkflowDefinitionService;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionListener;
 import com.example.aem.vercel.workflow.service.WorkflowExecutionService;
 import com.example.aem.vercel.workflow.config.WorkflowConfig;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.metatype.annotations.Designate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
+import javax.jcr.NodeIterator;
+import javax.jcr.Property;
+import javax.jcr.PropertyIterator;
 import javax.jcr.Session;
+import javax.jcr.Value;
+import javax.jcr.query.Query;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -24,77 +52,486 @@ import java.util.stream.Collectors;
  * Manages workflow execution runtime state and lifecycle.
  */
 @Component(
-    service = WorkflowExecutionService.class,
+    service = { WorkflowExecutionService.class, WorkflowDefinitionListener.class },
     immediate = true
 )
 @Designate(ocd = WorkflowConfig.class)
-public class WorkflowExecutionServiceImpl implements WorkflowExecutionService {
+public class WorkflowExecutionServiceImpl implements WorkflowExecutionService, WorkflowDefinitionListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(WorkflowExecutionServiceImpl.class);
     private static final String EXECUTIONS_PATH = "/var/workflows/executions";
     private static final String NODE_TYPE = "nt:unstructured";
     private static final String EXECUTION_NODE_TYPE = "vercel:execution";
+    private static final long TIMER_TICK_MILLIS = 10;
+    private static final int TIMER_WHEEL_SIZE = 512;
+    private static final long IDEMPOTENT_START_TIMEOUT_MILLIS = 30_000;
+    private static final long BATCH_COMMIT_TIMEOUT_MILLIS = 30_000;
+    private static final String PARENT_EXECUTION_VARIABLE = "parentExecutionId";
+    private static final String PARENT_STEP_VARIABLE = "parentStepId";
+    private static final String SUB_WORKFLOW_MODE_VARIABLE = "subWorkflowMode";
+    private static final String INLINE_MODE = "inline";
+    private static final String DETACHED_MODE = "detached";
+    // An executor that takes longer than this to return is doing its work on the worker
+    private static final long BLOCKING_EXECUTOR_WARN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
 
-    private final Map<String, WorkflowExecutionModel> activeExecutions = new ConcurrentHashMap<>();
+    private final Map<String, ExecutionRun> activeExecutions = new ConcurrentHashMap<>();
+    // Paused executions hold no thread or scheduler slot, only their cursor
+    private final Map<String, ExecutionCursor> parkedExecutions = new ConcurrentHashMap<>();
 
     @Reference
     private WorkflowDefinitionService workflowDefinitionService;
 
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    private volatile List<WorkflowExecutionListener> listeners = new ArrayList<>();
+
+    // Bound before activation, so it lives as long as the component
+    private final StepExecutorRegistry stepExecutors = new StepExecutorRegistry();
+    private final StepCoalescer stepCoalescer = new StepCoalescer();
+
     private WorkflowConfig config;
+    private ExecutionScheduler scheduler;
+    private TimerWheel timerWheel;
+    private ExecutionPlanCache planCache;
+    private ExecutionJournal journal;
+    private IdempotencyTable idempotencyKeys;
+    private ExecutionLogSpill logSpill;
 
     @Activate
     protected void activate(WorkflowConfig config) {
         this.config = config;
+        this.scheduler = new ExecutionScheduler(
+            config.executionWorkerThreads(), config.maxActiveExecutions(), config.executionQueueDepth(),
+            config.maxExecutionsPerUser(), config.maxExecutionsPerWorkflow(),
+            ExecutionScheduler.parseWeights(config.userWeights()),
+            ExecutionScheduler.parseWeights(config.workflowWeights()),
+            TimeUnit.SECONDS.toMillis(config.priorityAgingSeconds()));
+        this.planCache = new ExecutionPlanCache(config.planCacheSize(), stepExecutors);
+        this.idempotencyKeys = new IdempotencyTable(TimeUnit.MINUTES.toMillis(config.idempotencyKeyTtlMinutes()),
+            config.maxIdempotencyKeys());
+        this.timerWheel = new TimerWheel("workflow-timer", TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS, TIMER_WHEEL_SIZE);
         initializeExecutionsPath();
-        LOG.info("WorkflowExecutionService activated with max active executions: {}", config.maxActiveExecutions());
+        initializeJournal();
+        recoverExecutions();
+        LOG.info("WorkflowExecutionService activated with max active executions: {}, worker threads: {}, queue depth: {}",
+                config.maxActiveExecutions(), config.executionWorkerThreads(), config.executionQueueDepth());
+    }
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    protected void bindStepExecutor(StepExecutor executor, Map<String, Object> properties) {
+        stepExecutors.register(executor, properties);
+        LOG.info("Bound step executor {} for step types: {}", executor.getClass().getName(),
+                properties.get(StepExecutor.STEP_TYPE_PROPERTY));
+    }
+
+    protected void unbindStepExecutor(StepExecutor executor, Map<String, Object> properties) {
+        stepExecutors.unregister(executor, properties);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        if (timerWheel != null) {
+            timerWheel.stop();
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        if (journal != null) {
+            // Flushes checkpoints still queued by executions that were just stopped
+            journal.close();
+        }
+        if (logSpill != null) {
+            logSpill.close();
+        }
+        LOG.info("WorkflowExecutionService deactivated");
     }
 
     private void initializeExecutionsPath() {
-        // Implementation would initialize JCR path for storing executions
-        LOG.info("Workflow executions path initialized: {}", EXECUTIONS_PATH);
+        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            Session session = resolver.adaptTo(Session.class);
+            if (!session.nodeExists(EXECUTIONS_PATH)) {
+                session.getRootNode().addNode(EXECUTIONS_PATH.substring(1), NODE_TYPE);
+                session.save();
+                LOG.info("Created executions path: {}", EXECUTIONS_PATH);
+            }
+        } catch (LoginException e) {
+            LOG.error("Failed to obtain resource resolver: {}", e.getMessage(), e);
+        } catch (Exception e) {
+            LOG.error("Failed to initialize executions path", e);
+        }
+    }
+
+    /**
+     * Rebuild executions that were running or paused when the component was last stopped.
+     * Only in-flight executions are read: those still in the journal, plus a JCR query on
+     * status for those already compacted. Running executions resume on the scheduler from
+     * their last checkpoint; steps recorded as completed are not run again.
+     */
+    private void recoverExecutions() {
+        if (journal == null) {
+            return;
+        }
+        Map<String, ExecutionCheckpoint> checkpoints = new HashMap<>();
+        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            Session session = resolver.adaptTo(Session.class);
+            String statement = "SELECT * FROM [nt:base] AS e WHERE ISCHILDNODE(e, '" + EXECUTIONS_PATH
+                + "') AND (e.[status] = 'running' OR e.[status] = 'paused')";
+            Query query = session.getWorkspace().getQueryManager().createQuery(statement, Query.JCR_SQL2);
+            NodeIterator nodes = query.execute().getNodes();
+            while (nodes.hasNext()) {
+                ExecutionCheckpoint checkpoint = loadCheckpointFromNode(nodes.nextNode());
+                checkpoints.put(checkpoint.getExecutionId(), checkpoint);
+            }
+        } catch (LoginException e) {
+            LOG.error("Failed to obtain resource resolver to recover executions: {}", e.getMessage(), e);
+        } catch (Exception e) {
+            LOG.error("Failed to query in-flight executions", e);
+        }
+        // Journal checkpoints are newer than anything compacted into JCR
+        for (ExecutionCheckpoint checkpoint : journal.getUncompactedCheckpoints()) {
+            checkpoints.put(checkpoint.getExecutionId(), checkpoint);
+        }
+
+        List<ExecutionCheckpoint> inFlight = checkpoints.values().stream()
+            .filter(ExecutionCheckpoint::isInFlight)
+            .collect(Collectors.toList());
+        if (inFlight.isEmpty()) {
+            return;
+        }
+        long recovered = inFlight.parallelStream().filter(this::recoverExecution).count();
+        LOG.info("Recovered {} of {} in-flight workflow executions", recovered, inFlight.size());
+    }
+
+    private boolean recoverExecution(ExecutionCheckpoint checkpoint) {
+        WorkflowExecutionModel execution = checkpoint.toExecution();
+        execution.setStateListener(this::notifyStateChanged);
+        ExecutionPlan plan;
+        try {
+            plan = getExecutionPlan(checkpoint.getWorkflowId());
+        } catch (IllegalArgumentException e) {
+            execution.setExecutionLog(newExecutionLog(execution.getId(), null));
+            execution.fail("Workflow no longer exists: " + checkpoint.getWorkflowId());
+            journal.append(ExecutionCheckpoint.of(execution, checkpoint.getPlanVersion(), checkpoint));
+            LOG.warn("Could not recover execution: {} - workflow not found: {}", execution.getId(), checkpoint.getWorkflowId());
+            return false;
+        }
+        if (plan.getVersion() != checkpoint.getPlanVersion()) {
+            LOG.warn("Workflow {} changed since execution {} was checkpointed; resuming on the current definition",
+                    checkpoint.getWorkflowId(), execution.getId());
+        }
+        execution.setExecutionLog(newExecutionLog(execution.getId(), plan));
+        if (INLINE_MODE.equals(execution.getVariable(SUB_WORKFLOW_MODE_VARIABLE))) {
+            // The parent runs its sub-workflow step again, which starts a new child
+            execution.cancel("Restarted by parent execution: " + execution.getVariable(PARENT_EXECUTION_VARIABLE));
+            journal.append(ExecutionCheckpoint.of(execution, plan.getVersion(), checkpoint));
+            return false;
+        }
+
+        ExecutionRun run = ExecutionRun.restore(execution, plan, checkpoint.getCompletedSteps(),
+            checkpoint.getSkippedSteps(), checkpoint.getUntakenEdges());
+        if (execution.isPaused()) {
+            parkedExecutions.put(execution.getId(), run.toCursor());
+            return true;
+        }
+        activeExecutions.put(execution.getId(), run);
+        if (!scheduler.submit(run.getExecution().getWorkflowId(), run.getOwner(), run.getPriority(), () -> resumeWorkflow(run))) {
+            activeExecutions.remove(execution.getId());
+            execution.fail("Could not be resumed after restart: execution queue is full");
+            saveExecution(run);
+            LOG.warn("Could not recover execution: {} - execution queue is full", execution.getId());
+            return false;
+        }
+        return true;
+    }
+
+    private void initializeJournal() {
+        if (!config.enablePersistence()) {
+            LOG.info("Execution persistence disabled");
+            return;
+        }
+        Path directory = config.journalDirectory() == null || config.journalDirectory().isEmpty()
+            ? Paths.get(System.getProperty("sling.home", "."), "workflow-journal")
+            : Paths.get(config.journalDirectory());
+        try {
+            journal = new ExecutionJournal(directory, config.journalFlushIntervalMillis(),
+                TimeUnit.SECONDS.toMillis(config.journalCompactionIntervalSeconds()), this::storeCheckpoints);
+            LOG.info("Execution journal opened: {}", directory);
+        } catch (IOException e) {
+            LOG.error("Failed to open execution journal: {}", directory, e);
+        }
+        Path logDirectory = directory.resolve("logs");
+        try {
+            logSpill = new ExecutionLogSpill(logDirectory);
+        } catch (IOException e) {
+            LOG.error("Failed to open execution log spill directory: {}", logDirectory, e);
+        }
+    }
+
+    private ExecutionLog newExecutionLog(String executionId, ExecutionPlan plan) {
+        return new ExecutionLog(config.executionLogBufferSize(),
+            config.enableDebugLogging() ? ExecutionLog.DEBUG : ExecutionLog.INFO,
+            plan != null ? plan.getLogSteps() : ExecutionLog.StepIndex.NONE,
+            logSpill != null ? logSpill.forExecution(executionId) : null);
     }
 
     @Override
     public WorkflowExecutionModel startExecution(String workflowId, String userId, Map<String, Object> initialVariables) {
+        return startExecution(workflowId, userId, initialVariables, Priority.NORMAL);
+    }
+
+    @Override
+    public WorkflowExecutionModel startExecution(String workflowId, String userId, Map<String, Object> initialVariables,
+                                                 Priority priority) {
+        return startExecution(workflowId, userId, initialVariables, priority, 0);
+    }
+
+    @Override
+    public WorkflowExecutionModel startExecution(String workflowId, String userId, Map<String, Object> initialVariables,
+                                                 Priority priority, long admissionWaitMillis) {
         if (workflowId == null || workflowId.isEmpty()) {
             throw new IllegalArgumentException("Workflow ID is required");
         }
 
-        Optional<WorkflowDefinitionModel> workflowOpt = workflowDefinitionService.getWorkflow(workflowId);
-        if (workflowOpt.isEmpty()) {
-            throw new IllegalArgumentException("Workflow not found: " + workflowId);
+        ExecutionRun run = createRun(getExecutionPlan(workflowId), userId, initialVariables, priority);
+        WorkflowExecutionModel execution = run.getExecution();
+        activeExecutions.put(execution.getId(), run);
+
+        // Admission is atomic: either the execution gets a slot or a queue position, or it is rejected
+        long waitMillis = Math.max(0, Math.min(admissionWaitMillis, config.maxAdmissionWaitMillis()));
+        if (!scheduler.submit(run.getExecution().getWorkflowId(), run.getOwner(), run.getPriority(),
+                () -> executeWorkflow(run), waitMillis)) {
+            activeExecutions.remove(execution.getId());
+            SchedulerStatistics stats = scheduler.getStatistics();
+            long retryAfterMillis = scheduler.estimateRetryAfterMillis(config.maxAdmissionWaitMillis());
+            LOG.warn("Rejected execution of workflow: {} - {} running, {} queued, retry after {} ms",
+                    workflowId, stats.getRunningExecutions(), stats.getQueuedExecutions(), retryAfterMillis);
+            throw new ExecutionRejectedException("Execution queue is full: " + stats.getRunningExecutions()
+                    + " running, " + stats.getQueuedExecutions() + " queued", retryAfterMillis);
         }
+        saveExecution(run);
+
+        LOG.info("Started workflow execution: {} for workflow: {} by user: {}", 
+                execution.getId(), workflowId, userId);
+        
+        return execution;
+    }
 
-        if (activeExecutions.size() >= config.maxActiveExecutions()) {
-            throw new IllegalStateException("Maximum active executions reached: " + config.maxActiveExecutions());
+    @Override
+    public WorkflowExecutionModel startExecution(ExecutionRequest request, long admissionWaitMillis) {
+        String idempotencyKey = request.getIdempotencyKey();
+        if (idempotencyKey == null) {
+            return startExecution(request.getWorkflowId(), request.getUserId(), request.getVariables(),
+                    request.getPriority(), admissionWaitMillis);
+        }
+        if (request.getWorkflowId() == null || request.getWorkflowId().isEmpty()) {
+            throw new IllegalArgumentException("Workflow ID is required");
         }
 
-        WorkflowDefinitionModel workflow = workflowOpt.get();
-        WorkflowExecutionModel execution = new WorkflowExecutionModel();
-        execution.setId("exec-" + UUID.randomUUID().toString());
-        execution.setWorkflowId(workflowId);
+        IdempotencyTable.Claim claim = new IdempotencyTable.Claim(request.getWorkflowId());
+        IdempotencyTable.Claim held = idempotencyKeys.claim(idempotencyScope(request), claim);
+        if (held != claim) {
+            String executionId = awaitIdempotentStart(held, request);
+            LOG.debug("Returning execution: {} for repeated idempotency key: {}", executionId, idempotencyKey);
+            // Without persistence a finished execution is only held by the claim
+            WorkflowExecutionModel execution = getExecution(executionId).orElseGet(held::getExecution);
+            if (execution == null) {
+                throw new IllegalStateException("Execution could not be read back: " + executionId);
+            }
+            return execution;
+        }
+        try {
+            WorkflowExecutionModel execution = startExecution(request.getWorkflowId(), request.getUserId(),
+                    request.getVariables(), request.getPriority(), admissionWaitMillis);
+            claim.complete(execution, journal == null);
+            return execution;
+        } catch (RuntimeException e) {
+            // A failed start does not consume the key, so the client can retry it
+            idempotencyKeys.abandon(claim, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<StartResult> startExecutions(List<ExecutionRequest> requests) {
+        List<StartResult> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        List<ExecutionRun> runs = new ArrayList<>(requests.size());
+        List<Integer> runIndexes = new ArrayList<>(requests.size());
+        List<IdempotencyTable.Claim> runClaims = new ArrayList<>(requests.size());
+        // Requests repeating an idempotency key claimed earlier in the same batch, as request index -> run position
+        Map<Integer, Integer> repeatedInBatch = new HashMap<>();
+        Map<String, Integer> batchKeys = new HashMap<>();
+
+        // Resolve each distinct workflow once for the whole batch
+        Map<String, ExecutionPlan> plans = new HashMap<>();
+        Map<String, String> invalidWorkflows = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ExecutionRequest request = requests.get(i);
+            String workflowId = request.getWorkflowId();
+            if (workflowId == null || workflowId.isEmpty()) {
+                results.set(i, StartResult.invalid(workflowId, "Workflow ID is required"));
+                continue;
+            }
+
+            IdempotencyTable.Claim claim = null;
+            if (request.getIdempotencyKey() != null) {
+                String scope = idempotencyScope(request);
+                Integer position = batchKeys.get(scope);
+                if (position != null) {
+                    if (workflowId.equals(runs.get(position).getExecution().getWorkflowId())) {
+                        repeatedInBatch.put(i, position);
+                    } else {
+                        results.set(i, StartResult.invalid(workflowId, idempotencyKeyReused(request, runs.get(position)
+                            .getExecution().getWorkflowId())));
+                    }
+                    continue;
+                }
+                claim = new IdempotencyTable.Claim(workflowId);
+                IdempotencyTable.Claim held = idempotencyKeys.claim(scope, claim);
+                if (held != claim) {
+                    results.set(i, replayedStart(held, request));
+                    continue;
+                }
+            }
+
+            ExecutionPlan plan = plans.get(workflowId);
+            if (plan == null && !invalidWorkflows.containsKey(workflowId)) {
+                try {
+                    plan = getExecutionPlan(workflowId);
+                    plans.put(workflowId, plan);
+                } catch (IllegalArgumentException e) {
+                    invalidWorkflows.put(workflowId, e.getMessage());
+                }
+            }
+            if (plan == null) {
+                String error = invalidWorkflows.get(workflowId);
+                if (claim != null) {
+                    idempotencyKeys.abandon(claim, new IllegalArgumentException(error));
+                }
+                results.set(i, StartResult.invalid(workflowId, error));
+                continue;
+            }
+            if (claim != null) {
+                batchKeys.put(idempotencyScope(request), runs.size());
+            }
+            runs.add(createRun(plan, request.getUserId(), request.getVariables(), request.getPriority()));
+            runIndexes.add(i);
+            runClaims.add(claim);
+        }
+
+        // Admit as a batch; what does not fit is rejected in request order
+        int admitted = scheduler.reserve(runs.size());
+        if (admitted < runs.size()) {
+            SchedulerStatistics stats = scheduler.getStatistics();
+            long retryAfterMillis = scheduler.estimateRetryAfterMillis(config.maxAdmissionWaitMillis());
+            String message = "Execution queue is full: " + stats.getRunningExecutions()
+                    + " running, " + stats.getQueuedExecutions() + " queued";
+            for (int i = admitted; i < runs.size(); i++) {
+                results.set(runIndexes.get(i), StartResult.rejected(runs.get(i).getExecution().getWorkflowId(),
+                        message, retryAfterMillis));
+                if (runClaims.get(i) != null) {
+                    idempotencyKeys.abandon(runClaims.get(i), new ExecutionRejectedException(message, retryAfterMillis));
+                }
+            }
+            LOG.warn("Rejected {} of {} executions of a batch start - retry after {} ms",
+                    runs.size() - admitted, runs.size(), retryAfterMillis);
+        }
+
+        // Persist the initial state in one group commit, and wait for it, before any of the executions can run
+        List<ExecutionRun> started = runs.subList(0, admitted);
+        List<ExecutionCheckpoint> checkpoints = new ArrayList<>(started.size());
+        for (ExecutionRun run : started) {
+            activeExecutions.put(run.getExecution().getId(), run);
+            checkpoints.add(ExecutionCheckpoint.of(run));
+        }
+        if (journal != null && !checkpoints.isEmpty()) {
+            awaitBatchCommit(journal.appendAll(checkpoints), checkpoints.size());
+        }
+        for (int i = 0; i < started.size(); i++) {
+            ExecutionRun run = started.get(i);
+            scheduler.enqueue(run.getExecution().getWorkflowId(), run.getOwner(), run.getPriority(),
+                    () -> executeWorkflow(run));
+            results.set(runIndexes.get(i), StartResult.started(run.getExecution().getWorkflowId(),
+                    run.getExecution().getId()));
+            if (runClaims.get(i) != null) {
+                runClaims.get(i).complete(run.getExecution(), journal == null);
+            }
+        }
+        repeatedInBatch.forEach((index, position) -> results.set(index, results.get(runIndexes.get(position))));
+
+        LOG.info("Started {} of {} workflow executions of a batch", started.size(), requests.size());
+        return results;
+    }
+
+    /**
+     * Wait for the group commit of a batch's initial state. A failed commit does not fail the
+     * starts; as with a single start, the executions run and checkpoint again as they progress.
+     */
+    private void awaitBatchCommit(CompletableFuture<Void> commit, int executions) {
+        try {
+            commit.get(BATCH_COMMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.warn("Initial state of {} batch-started executions was not persisted", executions, e);
+        }
+    }
+
+    private StartResult replayedStart(IdempotencyTable.Claim held, ExecutionRequest request) {
+        try {
+            return StartResult.started(request.getWorkflowId(), awaitIdempotentStart(held, request));
+        } catch (ExecutionRejectedException e) {
+            return StartResult.rejected(request.getWorkflowId(), e.getMessage(), e.getRetryAfterMillis());
+        } catch (RuntimeException e) {
+            return StartResult.invalid(request.getWorkflowId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Wait for the start that holds an idempotency key and return its execution ID.
+     */
+    private String awaitIdempotentStart(IdempotencyTable.Claim held, ExecutionRequest request) {
+        if (!held.getWorkflowId().equals(request.getWorkflowId())) {
+            throw new IllegalArgumentException(idempotencyKeyReused(request, held.getWorkflowId()));
+        }
+        // The first start may itself be waiting for admission
+        return held.awaitExecutionId(config.maxAdmissionWaitMillis() + IDEMPOTENT_START_TIMEOUT_MILLIS);
+    }
+
+    private static String idempotencyKeyReused(ExecutionRequest request, String workflowId) {
+        return "Idempotency key " + request.getIdempotencyKey() + " was already used for workflow: " + workflowId;
+    }
+
+    /**
+     * Idempotency keys are scoped to the user, so users cannot see each other's executions by guessing keys.
+     */
+    private static String idempotencyScope(ExecutionRequest request) {
+        return (request.getUserId() != null ? request.getUserId() : "") + '\u0000' + request.getIdempotencyKey();
+    }
+
+    private ExecutionRun createRun(ExecutionPlan plan, String userId, Map<String, Object> initialVariables,
+                                   Priority priority) {
+        WorkflowExecutionModel execution = new WorkflowExecutionModel("exec-" + UUID.randomUUID().toString(),
+                plan.getWorkflowId());
+        execution.setStateListener(this::notifyStateChanged);
+        execution.setExecutionLog(newExecutionLog(execution.getId(), plan));
         execution.setCurrentStep("start");
-        
+        execution.setOwner(userId);
+        String priorityName = (priority != null ? priority : Priority.NORMAL).name();
+        execution.setPriority(priorityName);
+
         if (initialVariables != null) {
-            execution.getVariables().putAll(initialVariables);
+            execution.putVariables(toJsonValues(initialVariables));
         }
 
         // Set workflow-specific variables
-        execution.setVariable("workflowName", workflow.getName());
-        execution.setVariable("workflowDescription", workflow.getDescription());
+        execution.setVariable("workflowName", plan.getWorkflowName());
+        execution.setVariable("workflowDescription", plan.getWorkflowDescription());
         execution.setVariable("startedBy", userId);
         execution.setVariable("startTime", execution.getStartTime());
-
-        activeExecutions.put(execution.getId(), execution);
-        saveExecution(execution);
-
-        // Start execution in background thread
-        executeWorkflowAsync(execution, workflow, userId);
-
-        LOG.info("Started workflow execution: {} for workflow: {} by user: {}", 
-                execution.getId(), workflowId, userId);
-        
-        return execution;
+        execution.setVariable("priority", priorityName);
+        return new ExecutionRun(execution, plan);
     }
 
     @Override
@@ -104,9 +541,13 @@ public class WorkflowExecutionServiceImpl implements WorkflowExecutionService {
         }
 
         // Check active executions first
-        WorkflowExecutionModel active = activeExecutions.get(executionId);
+        ExecutionRun active = activeExecutions.get(executionId);
         if (active != null) {
-            return Optional.of(active);
+            return Optional.of(active.getExecution());
+        }
+        ExecutionCursor parked = parkedExecutions.get(executionId);
+        if (parked != null) {
+            return Optional.of(parked.getExecution());
         }
 
         // Load from persistent storage
@@ -123,11 +564,18 @@ public class WorkflowExecutionServiceImpl implements WorkflowExecutionService {
         
         // Add active executions
         executions.addAll(activeExecutions.values().stream()
+            .map(ExecutionRun::getExecution)
+            .filter(exec -> workflowId.equals(exec.getWorkflowId()))
+            .collect(Collectors.toList()));
+        executions.addAll(parkedExecutions.values().stream()
+            .map(ExecutionCursor::getExecution)
             .filter(exec -> workflowId.equals(exec.getWorkflowId()))
             .collect(Collectors.toList()));
 
-        // Load from persistent storage
-        executions.addAll(loadExecutionsByWorkflow(workflowId));
+        // Load from persistent storage, skipping executions that are still active
+        loadExecutionsByWorkflow(workflowId).stream()
+            .filter(exec -> !activeExecutions.containsKey(exec.getId()) && !parkedExecutions.containsKey(exec.getId()))
+            .forEach(executions::add);
 
         return executions;
     }
@@ -135,17 +583,18 @@ public class WorkflowExecutionServiceImpl implements WorkflowExecutionService {
     @Override
     public List<WorkflowExecutionModel> getRunningExecutions() {
         return activeExecutions.values().stream()
+            .map(ExecutionRun::getExecution)
             .filter(WorkflowExecutionModel::isRunning)
             .collect(Collectors.toList());
     }
 
     @Override
     public boolean pauseExecution(String executionId) {
-        WorkflowExecutionModel execution = activeExecutions.get(executionId);
-        if (execution != null && execution.isRunning()) {
-            execution.pause();
-            execution.addLog("INFO", "Execution paused by user");
-            saveExecution(execution);
+        ExecutionRun run = activeExecutions.get(executionId);
+        if (run != null && pauseRun(run)) {
+            // Steps in flight finish; the run is parked once the last of them has left
+            run.getExecution().addLog(ExecutionLog.INFO, ExecutionLog.NO_STEP, "Execution paused by user");
+            saveExecution(run);
             LOG.info("Paused execution: {}", executionId);
             return true;
         }
@@ -154,44 +603,65 @@ public class WorkflowExecutionServiceImpl implements WorkflowExecutionService {
 
     @Override
     public boolean resumeExecution(String executionId) {
-        WorkflowExecutionModel execution = activeExecutions.get(executionId);
-        if (execution != null && execution.isPaused()) {
-            execution.resume();
-            execution.addLog("INFO", "Execution resumed by user");
-            saveExecution(execution);
+        ExecutionRun run = activeExecutions.get(executionId);
+        if (run != null && resumeRun(run)) {
+            // Paused before it was parked: its steps are still in flight and simply continue
+            run.getExecution().addLog(ExecutionLog.INFO, ExecutionLog.NO_STEP, "Execution resumed by user");
+            saveExecution(run);
             LOG.info("Resumed execution: {}", executionId);
             return true;
         }
+
+        ExecutionCursor cursor = parkedExecutions.get(executionId);
+        if (cursor != null) {
+            return resumeParked(cursor);
+        }
         return false;
     }
 
     @Override
     public boolean cancelExecution(String executionId, String reason) {
-        WorkflowExecutionModel execution = activeExecutions.get(executionId);
-        if (execution != null && execution.isRunning()) {
-            execution.fail("Cancelled: " + reason);
+        ExecutionRun run = activeExecutions.get(executionId);
+        if (run != null && cancelRun(run, reason)) {
             activeExecutions.remove(executionId);
-            saveExecution(execution);
+            parkedExecutions.remove(executionId);
+            saveExecution(run);
             LOG.info("Cancelled execution: {} - {}", executionId, reason);
             return true;
         }
+
+        ExecutionCursor cursor = parkedExecutions.get(executionId);
+        if (cursor != null) {
+            if (!cursor.getExecution().cancel(reason)) {
+                return false;
+            }
+            // Stay visible as parked until the final state is readable from the journal
+            saveExecution(cursor).whenComplete((ignored, e) -> {
+                parkedExecutions.remove(executionId, cursor);
+                discardSpilledLog(executionId);
+            });
+            LOG.info("Cancelled paused execution: {} - {}", executionId, reason);
+            return true;
+        }
         return false;
     }
 
     @Override
-    public List<com.example.aem.vercel.workflow.model.WorkflowLogEntryModel> getExecutionLogs(String executionId, int limit) {
+    public List<WorkflowLogEntryModel> getExecutionLogs(String executionId, int limit) {
         Optional<WorkflowExecutionModel> executionOpt = getExecution(executionId);
         if (executionOpt.isEmpty()) {
             return Collections.emptyList();
         }
 
-        WorkflowExecutionModel execution = executionOpt.get();
-        List<com.example.aem.vercel.workflow.model.WorkflowLogEntryModel> logs = execution.getLogs();
-        
-        if (limit > 0 && logs.size() > limit) {
-            return logs.subList(logs.size() - limit, logs.size());
+        // A consistent window of the entries in memory, topped up from the spill if more are wanted
+        ExecutionLog.Window window = executionOpt.get().getExecutionLog().window(limit);
+        int wanted = limit > 0 ? limit - window.getEntries().size() : Integer.MAX_VALUE;
+        if (wanted <= 0 || window.getFirstSequence() == 0 || logSpill == null) {
+            return window.getEntries();
         }
-        
+        List<WorkflowLogEntryModel> logs = new ArrayList<>(
+            logSpill.read(executionId, window.getFirstSequence(), (int) Math.min(wanted, window.getFirstSequence())));
+        logs.addAll(window.getEntries());
         return logs;
     }
 
@@ -203,11 +673,20 @@ public class WorkflowExecutionServiceImpl implements WorkflowExecutionService {
 
     @Override
     public boolean updateExecutionVariable(String executionId, String key, Object value) {
-        WorkflowExecutionModel execution = activeExecutions.get(executionId);
-        if (execution != null) {
-            execution.setVariable(key, value);
-            execution.addLog("DEBUG", "Updated variable: " + key);
-            saveExecution(execution);
+        Object storedValue = ExecutionCheckpoint.toJsonValue(value);
+        ExecutionRun run = activeExecutions.get(executionId);
+        if (run != null) {
+            WorkflowExecutionModel execution = run.getExecution();
+            execution.setVariable(key, storedValue);
+            execution.addLog(ExecutionLog.DEBUG, ExecutionLog.NO_STEP, "Updated variable: {}", key);
+            saveExecution(run);
+            return true;
+        }
+        ExecutionCursor cursor = parkedExecutions.get(executionId);
+        if (cursor != null) {
+            cursor.getExecution().setVariable(key, storedValue);
+            cursor.getExecution().addLog(ExecutionLog.DEBUG, ExecutionLog.NO_STEP, "Updated variable: {}", key);
+            saveExecution(cursor);
             return true;
         }
         return false;
@@ -274,99 +753,709 @@ public class WorkflowExecutionServiceImpl implements WorkflowExecutionService {
         return new ExecutionStatistics(0, 0, 0, 0, 0.0);
     }
 
-    private void executeWorkflowAsync(WorkflowExecutionModel execution, WorkflowDefinitionModel workflow, String userId) {
-        Thread executionThread = new Thread(() -> {
+    @Override
+    public SchedulerStatistics getSchedulerStatistics() {
+        return scheduler.getStatistics();
+    }
+
+    @Override
+    public List<QueueStatistics> getQueueStatistics() {
+        return scheduler.getQueueStatistics();
+    }
+
+    @Override
+    public void workflowUpdated(String workflowId) {
+        planCache.invalidate(workflowId);
+        LOG.debug("Invalidated execution plans of updated workflow: {}", workflowId);
+    }
+
+    @Override
+    public void workflowDeleted(String workflowId) {
+        planCache.invalidate(workflowId);
+        LOG.debug("Invalidated execution plans of deleted workflow: {}", workflowId);
+    }
+
+    private void notifyStateChanged(WorkflowExecutionModel execution, WorkflowExecutionModel.State from,
+                                    WorkflowExecutionModel.State to) {
+        for (WorkflowExecutionListener listener : listeners) {
             try {
-                execution.addLog("INFO", "Starting workflow execution");
-                
-                // Simple linear execution - would be enhanced for complex workflows
-                List<String> executionPath = calculateExecutionPath(workflow);
-                
-                for (String stepId : executionPath) {
-                    if (!execution.isRunning()) {
-                        break; // Execution was paused or cancelled
-                    }
-                    
-                    execution.setCurrentStep(stepId);
-                    execution.addLog("INFO", "Executing step: " + stepId, stepId);
-                    
-                    // Simulate step execution
-                    executeStep(execution, workflow, stepId);
-                    
-                    // Small delay to simulate work
-                    Thread.sleep(1000);
+                listener.executionStateChanged(execution, from, to);
+            } catch (Exception e) {
+                LOG.error("Workflow execution listener failed: {}", listener.getClass().getName(), e);
+            }
+        }
+    }
+
+    private ExecutionPlan getExecutionPlan(String workflowId) {
+        // Plans are compiled once per definition version and shared by all executions
+        ExecutionPlan plan = planCache.getLatest(workflowId);
+        if (plan != null) {
+            return plan;
+        }
+
+        long generation = planCache.generation(workflowId);
+        Optional<WorkflowDefinitionModel> workflowOpt = workflowDefinitionService.getWorkflow(workflowId);
+        if (workflowOpt.isEmpty()) {
+            throw new IllegalArgumentException("Workflow not found: " + workflowId);
+        }
+        return planCache.get(workflowOpt.get(), generation);
+    }
+
+    private void executeWorkflow(ExecutionRun run) {
+        run.getExecution().addLog(ExecutionLog.INFO, ExecutionLog.NO_STEP, "Starting workflow execution");
+        armWatchdog(run);
+        int startIndex = run.getPlan().getStartIndex();
+        if (startIndex < 0) {
+            completeExecution(run);
+            return;
+        }
+        run.enterStep();
+        runStep(run, startIndex);
+    }
+
+    /**
+     * Continue a restored run from its ready frontier.
+     */
+    private void resumeWorkflow(ExecutionRun run) {
+        run.getExecution().addLog(ExecutionLog.INFO, ExecutionLog.NO_STEP, "Resuming workflow execution");
+        armWatchdog(run);
+        if (!run.hasRemainingSteps() || !dispatchReady(run)) {
+            completeExecution(run);
+        }
+    }
+
+    /**
+     * Bound the time the run holds a scheduler slot. All deadlines share the timer wheel,
+     * so a watchdog costs one wheel entry per execution and no thread.
+     */
+    private void armWatchdog(ExecutionRun run) {
+        long timeoutMinutes = config.executionTimeoutMinutes();
+        if (timeoutMinutes <= 0) {
+            return;
+        }
+        run.setWatchdog(timerWheel.schedule(() -> scheduler.dispatch(() -> timeoutExecution(run, timeoutMinutes)),
+                timeoutMinutes, TimeUnit.MINUTES));
+    }
+
+    private void timeoutExecution(ExecutionRun run, long timeoutMinutes) {
+        WorkflowExecutionModel execution = run.getExecution();
+        synchronized (run) {
+            if (run.isFinished() || !execution.transitionTo(WorkflowExecutionModel.State.TIMEOUT)) {
+                return;
+            }
+        }
+        execution.addLog(ExecutionLog.ERROR, ExecutionLog.NO_STEP, "Execution timed out after {} minutes", timeoutMinutes);
+        LOG.warn("Workflow execution timed out: {} after {} minutes", execution.getId(), timeoutMinutes);
+        // Release the slot now; steps still in flight see the terminal state and stop
+        finishExecution(run);
+    }
+
+    /**
+     * @return false if no step is ready
+     */
+    private boolean dispatchReady(ExecutionRun run) {
+        int[] ready = run.getReadySteps();
+        // Count every step before dispatching any, so an early pause cannot park the run half-dispatched
+        for (int i = 0; i < ready.length; i++) {
+            run.enterStep();
+        }
+        for (int stepIndex : ready) {
+            scheduler.dispatch(() -> runStep(run, stepIndex));
+        }
+        return ready.length > 0;
+    }
+
+    private boolean resumeParked(ExecutionCursor cursor) {
+        WorkflowExecutionModel execution = cursor.getExecution();
+        // The transition decides between racing resumes and a cancel; a cancelled execution
+        // stays parked until its final state is journaled
+        if (!execution.resume()) {
+            return false;
+        }
+        ExecutionRun run = ExecutionRun.restore(cursor);
+        // Active before it stops being parked, so readers always find it in memory
+        activeExecutions.put(execution.getId(), run);
+        parkedExecutions.remove(execution.getId(), cursor);
+        if (!scheduler.submit(run.getExecution().getWorkflowId(), run.getOwner(), run.getPriority(), () -> resumeWorkflow(run))) {
+            execution.pause();
+            parkedExecutions.put(execution.getId(), cursor);
+            activeExecutions.remove(execution.getId(), run);
+            LOG.warn("Could not resume execution: {} - execution queue is full", execution.getId());
+            return false;
+        }
+        execution.addLog(ExecutionLog.INFO, ExecutionLog.NO_STEP, "Execution resumed by user");
+        saveExecution(run);
+        LOG.info("Resumed execution: {}", execution.getId());
+        return true;
+    }
+
+    // State changes are compare-and-set on the execution. Only control operations that race
+    // with parking, and the hand-off of a run whose last in-flight step has left, take the
+    // run's monitor; the step path itself is lock-free.
+
+    private boolean pauseRun(ExecutionRun run) {
+        return !run.isFinished() && run.getExecution().pause();
+    }
+
+    private boolean resumeRun(ExecutionRun run) {
+        synchronized (run) {
+            if (run.isFinished() || !run.getExecution().resume()) {
+                return false;
+            }
+            settle(run);
+            return true;
+        }
+    }
+
+    private boolean cancelRun(ExecutionRun run, String reason) {
+        synchronized (run) {
+            if (run.isFinished() || !run.getExecution().cancel(reason)) {
+                return false;
+            }
+            cancelChildren(run);
+            settle(run);
+            return true;
+        }
+    }
+
+    /**
+     * Cancel the inline sub-workflows of a run that ended; their parent steps then leave.
+     * Locks are only ever taken from parent to child.
+     */
+    private void cancelChildren(ExecutionRun run) {
+        for (ExecutionRun child : run.getChildren()) {
+            cancelRun(child, "Parent execution ended: " + run.getExecution().getId());
+        }
+    }
+
+    /**
+     * Hold a step back if the execution is paused.
+     *
+     * @return true if the step must not run
+     */
+    private boolean holdIfPaused(ExecutionRun run) {
+        if (!run.getExecution().isPaused()) {
+            return false;
+        }
+        leaveStep(run);
+        return true;
+    }
+
+    private void leaveStep(ExecutionRun run) {
+        if (run.leaveStep()) {
+            settle(run);
+        }
+    }
+
+    /**
+     * Decide what happens to a run with no step in flight: park it if paused, release it if
+     * it was cancelled, or dispatch its ready steps if a resume raced with the last step leaving.
+     */
+    private void settle(ExecutionRun run) {
+        synchronized (run) {
+            if (run.isFinished() || !run.isQuiescent()) {
+                return;
+            }
+            WorkflowExecutionModel.State state = run.getExecution().getState();
+            if (state == WorkflowExecutionModel.State.PAUSED) {
+                // An inline child holds no slot to give back and stays active so its parent can find it
+                if (run.getParent() == null) {
+                    parkRun(run);
                 }
-                
-                if (execution.isRunning()) {
-                    execution.complete();
-                    execution.addLog("INFO", "Workflow execution completed successfully");
+            } else if (state == null || state.isTerminal()) {
+                finishExecution(run);
+            } else {
+                dispatchReady(run);
+            }
+        }
+    }
+
+    /**
+     * Replace a quiescent, paused run by its cursor and give its scheduler slot back.
+     */
+    private void parkRun(ExecutionRun run) {
+        if (!run.markFinished()) {
+            return;
+        }
+        run.cancelWatchdog();
+        WorkflowExecutionModel execution = run.getExecution();
+        parkedExecutions.put(execution.getId(), run.toCursor());
+        activeExecutions.remove(execution.getId());
+        saveExecution(run);
+        releaseSlot(run);
+        LOG.debug("Parked paused execution: {}", execution.getId());
+    }
+
+    /**
+     * Run one step and then release its successors as new events.
+     * Step delays are handed to the timer wheel, so a waiting execution holds no thread.
+     */
+    private void runStep(ExecutionRun run, int stepIndex) {
+        WorkflowExecutionModel execution = run.getExecution();
+        ExecutionPlan plan = run.getPlan();
+        try {
+            if (holdIfPaused(run)) {
+                return;
+            }
+            if (!execution.isRunning()) {
+                finishExecution(run); // Execution was cancelled or failed
+                return;
+            }
+
+            String stepId = plan.getStepId(stepIndex);
+            execution.setCurrentStep(stepId);
+            execution.addLog(ExecutionLog.INFO, stepIndex, "Executing step: {}", stepId);
+
+            StepExecutor executor = plan.getExecutor(stepIndex);
+            if (executor != null) {
+                executeStep(run, stepIndex, executor);
+                return; // The step continues when the executor's stage completes
+            }
+
+            ExecutionPlan.SubWorkflow subWorkflow = plan.getSubWorkflow(stepIndex);
+            if (subWorkflow != null && !startSubWorkflow(run, stepIndex, subWorkflow)) {
+                return; // The inline child continues the step when it finishes
+            }
+            continueStep(run, stepIndex);
+        } catch (Exception e) {
+            failExecution(run, e);
+        }
+    }
+
+    private void continueStep(ExecutionRun run, int stepIndex) {
+        long delay = run.getPlan().getDelayMillis(stepIndex);
+        if (delay > 0) {
+            timerWheel.schedule(() -> scheduler.dispatch(() -> completeStep(run, stepIndex)),
+                    delay, TimeUnit.MILLISECONDS);
+        } else {
+            completeStep(run, stepIndex);
+        }
+    }
+
+    /**
+     * Start the child execution of a sub-workflow step. The child's plan comes from the shared
+     * plan cache, so calling a workflow compiles nothing once its current version is cached.
+     * An inline child runs its first step on this worker and borrows the parent's scheduler slot;
+     * the parent step holds no thread while it waits and continues when the child finishes.
+     * A detached child is admitted like any other execution and the step continues at once.
+     *
+     * @return true if the step continues now, false if it waits for an inline child
+     */
+    private boolean startSubWorkflow(ExecutionRun run, int stepIndex, ExecutionPlan.SubWorkflow subWorkflow) {
+        WorkflowExecutionModel execution = run.getExecution();
+        String stepId = run.getPlan().getStepId(stepIndex);
+        if (subWorkflow.getWorkflowId().isEmpty()) {
+            throw new IllegalArgumentException("Sub-workflow step has no workflow ID: " + stepId);
+        }
+        int depth = execution.getSubWorkflowDepth() + 1;
+        if (depth > config.maxSubWorkflowDepth()) {
+            throw new IllegalStateException("Sub-workflows nested deeper than " + config.maxSubWorkflowDepth()
+                    + " levels at step: " + stepId);
+        }
+
+        // The child starts from the parent's variables; the persistent map makes that a free snapshot
+        ExecutionRun child = createRun(getExecutionPlan(subWorkflow.getWorkflowId()), run.getOwner(),
+                execution.getVariables(), run.getPriority());
+        WorkflowExecutionModel childExecution = child.getExecution();
+        childExecution.setVariable(PARENT_EXECUTION_VARIABLE, execution.getId());
+        childExecution.setVariable(PARENT_STEP_VARIABLE, stepId);
+        childExecution.setVariable(SUB_WORKFLOW_MODE_VARIABLE, subWorkflow.isDetached() ? DETACHED_MODE : INLINE_MODE);
+        childExecution.setSubWorkflowDepth(depth);
+        activeExecutions.put(childExecution.getId(), child);
+
+        if (subWorkflow.isDetached()) {
+            if (!scheduler.submit(childExecution.getWorkflowId(), child.getOwner(), child.getPriority(),
+                    () -> executeWorkflow(child))) {
+                activeExecutions.remove(childExecution.getId());
+                throw new IllegalStateException("Execution queue is full, could not start sub-workflow: "
+                        + subWorkflow.getWorkflowId());
+            }
+            saveExecution(child);
+            execution.addLog(ExecutionLog.INFO, stepIndex, "Started detached sub-workflow execution: {}",
+                    childExecution.getId());
+            return true;
+        }
+
+        child.attachTo(run, stepIndex);
+        saveExecution(child);
+        execution.addLog(ExecutionLog.INFO, stepIndex, "Started sub-workflow execution: {}", childExecution.getId());
+        executeWorkflow(child);
+        return false;
+    }
+
+    /**
+     * Continue the parent step of a finished inline child on the worker pool, so the child's
+     * monitor is never held while the parent's is taken.
+     */
+    private void returnToParent(ExecutionRun child) {
+        ExecutionRun parent = child.getParent();
+        int stepIndex = child.getParentStep();
+        child.detachFromParent();
+        scheduler.dispatch(() -> {
+            WorkflowExecutionModel childExecution = child.getExecution();
+            WorkflowExecutionModel execution = parent.getExecution();
+            try {
+                if (childExecution.isCompleted()) {
+                    String outputVariable = parent.getPlan().getSubWorkflow(stepIndex).getOutputVariable();
+                    if (outputVariable != null) {
+                        execution.setVariable(outputVariable, childExecution.getVariables());
+                    }
+                    execution.addLog(ExecutionLog.INFO, stepIndex, "Sub-workflow execution completed: {}",
+                            childExecution.getId());
+                    continueStep(parent, stepIndex);
+                } else if (execution.isRunning()) {
+                    failExecution(parent, new IllegalStateException("Sub-workflow execution "
+                            + childExecution.getId() + " ended with status: " + childExecution.getStatus()));
+                } else {
+                    // The parent was paused or ended while the child ran; the step runs again on resume
+                    leaveStep(parent);
                 }
-                
             } catch (Exception e) {
-                execution.fail("Execution error: " + e.getMessage());
-                LOG.error("Workflow execution failed: {}", execution.getId(), e);
-            } finally {
-                activeExecutions.remove(execution.getId());
-                saveExecution(execution);
+                failExecution(parent, e);
             }
         });
-        
-        executionThread.start();
     }
 
-    private List<String> calculateExecutionPath(WorkflowDefinitionModel workflow) {
-        // Simple implementation - find path from start to end
-        List<String> path = new ArrayList<>();
-        
-        // Find start step
-        String currentStep = workflow.getSteps().stream()
-            .filter(step -> "startEnd".equals(step.getType()) && "Start".equals(step.getData().get("label")))
-            .map(step -> step.getId())
-            .findFirst()
-            .orElse("start");
-        
-        path.add(currentStep);
-        
-        // Follow edges to end
-        while (true) {
-            final String currentStepForLambda = currentStep; // Capture for lambda
-            String nextStep = workflow.getEdges().stream()
-                .filter(edge -> currentStepForLambda.equals(edge.getSource()))
-                .map(edge -> edge.getTarget())
-                .findFirst()
-                .orElse(null);
-            
-            if (nextStep == null || nextStep.equals("end") || path.contains(nextStep)) {
-                break;
-            }
-            
-            path.add(nextStep);
-            currentStep = nextStep;
+    /**
+     * Fork every successor whose join barrier is now satisfied and that was reached over at
+     * least one edge whose condition held; independent branches run concurrently on the
+     * work-stealing pool.
+     */
+    private void completeStep(ExecutionRun run, int stepIndex) {
+        try {
+            // Conditions see the variables as the step left them
+            boolean last = run.completeStep(stepIndex, run.getExecution().getVariables(), successor -> {
+                run.enterStep();
+                scheduler.dispatch(() -> runStep(run, successor));
+            });
+            if (last) {
+                completeExecution(run);
+            } else {
+                // Checkpoint the completed step so recovery resumes after it
+                saveExecution(run);
+                leaveStep(run);
+            }
+        } catch (Exception e) {
+            failExecution(run, e);
         }
-        
-        return path;
     }
 
-    private void executeStep(WorkflowExecutionModel execution, WorkflowDefinitionModel workflow, String stepId) {
-        // Implementation would execute the actual step logic
-        // For now, just log the step execution
-        execution.addLog("DEBUG", "Step execution logic would run here", stepId);
+    private void completeExecution(ExecutionRun run) {
+        WorkflowExecutionModel execution = run.getExecution();
+        // Also completes a paused run: a pause arriving during the last step has nothing left to hold back
+        if (execution.complete()) {
+            execution.addLog(ExecutionLog.INFO, ExecutionLog.NO_STEP, "Workflow execution completed successfully");
+        }
+        finishExecution(run);
+    }
+
+    private void failExecution(ExecutionRun run, Exception e) {
+        WorkflowExecutionModel execution = run.getExecution();
+        execution.fail("Execution error: " + e.getMessage());
+        LOG.error("Workflow execution failed: {}", execution.getId(), e);
+        finishExecution(run);
+    }
+
+    private void finishExecution(ExecutionRun run) {
+        // Parallel branches may all observe the end of the execution; only one releases it
+        if (!run.markFinished()) {
+            return;
+        }
+        run.cancelWatchdog();
+        WorkflowExecutionModel execution = run.getExecution();
+        // Stay visible as active until the final state is readable from the journal
+        saveExecution(run).whenComplete((ignored, e) -> {
+            activeExecutions.remove(execution.getId(), run);
+            discardSpilledLog(execution.getId());
+        });
+        cancelChildren(run);
+        if (run.getParent() != null) {
+            returnToParent(run);
+        } else {
+            releaseSlot(run);
+        }
+    }
+
+    /**
+     * Spilled log entries only extend the in-memory log of an execution; once it leaves
+     * memory they go too.
+     */
+    private void discardSpilledLog(String executionId) {
+        if (logSpill != null) {
+            logSpill.discard(executionId);
+        }
+    }
+
+    private void releaseSlot(ExecutionRun run) {
+        scheduler.release(run.getExecution().getWorkflowId(), run.getOwner(), run.getPriority());
+    }
+
+    /**
+     * Hand a step to its executor. The worker returns as soon as the executor has started the
+     * step; whichever thread completes the executor's stage, the step continues on a worker.
+     * A step whose executor reports the same inputs as an identical step in flight in another
+     * execution waits for that step's result instead of running.
+     */
+    private void executeStep(ExecutionRun run, int stepIndex, StepExecutor executor) {
+        WorkflowExecutionModel execution = run.getExecution();
+        StepExecutor.StepContext context = new RunStepContext(run, stepIndex);
+        Object inputs = executor.getCoalescingKey(context);
+        CompletionStage<Map<String, Object>> stage;
+        if (inputs == null) {
+            stage = invokeExecutor(run, stepIndex, executor, context, null);
+        } else {
+            StepCoalescer.Claim claim = stepCoalescer.claim(run.getPlan().getStep(stepIndex).getType(), inputs,
+                    execution.getId());
+            if (claim.isLeader()) {
+                claim.run(() -> invokeExecutor(run, stepIndex, executor, context, inputs));
+            } else {
+                execution.addLog(ExecutionLog.INFO, stepIndex, "Sharing the result of the identical step in execution: {}",
+                        claim.getLeaderExecutionId());
+                executor.join(context, inputs, claim.getLeaderExecutionId());
+            }
+            stage = claim.getResult();
+        }
+        stage.whenComplete((variables, error) -> scheduler.dispatch(() -> afterExecuteStep(run, stepIndex, variables, error)));
+    }
+
+    private CompletionStage<Map<String, Object>> invokeExecutor(ExecutionRun run, int stepIndex, StepExecutor executor,
+                                                                StepExecutor.StepContext context, Object inputs) {
+        long started = System.nanoTime();
+        CompletionStage<Map<String, Object>> stage = inputs != null ? executor.execute(context, inputs) : executor.execute(context);
+        long elapsed = System.nanoTime() - started;
+        if (elapsed > BLOCKING_EXECUTOR_WARN_NANOS) {
+            LOG.warn("Step executor {} held a worker for {} ms on step: {}; it should return an incomplete stage",
+                    executor.getClass().getName(), TimeUnit.NANOSECONDS.toMillis(elapsed), run.getPlan().getStepId(stepIndex));
+        }
+        if (stage == null) {
+            throw new IllegalStateException("Step executor returned no stage for step: " + run.getPlan().getStepId(stepIndex));
+        }
+        return stage;
+    }
+
+    private void afterExecuteStep(ExecutionRun run, int stepIndex, Map<String, Object> variables, Throwable error) {
+        try {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                throw cause instanceof Exception ? (Exception) cause : new IllegalStateException(cause);
+            }
+            if (variables != null && !variables.isEmpty()) {
+                Map<String, Object> values;
+                try {
+                    values = toJsonValues(variables);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Step " + run.getPlan().getStepId(stepIndex)
+                            + " returned variables that cannot be stored: " + e.getMessage(), e);
+                }
+                run.getExecution().putVariables(values);
+            }
+            continueStep(run, stepIndex);
+        } catch (Exception e) {
+            failExecution(run, e);
+        }
+    }
+
+    /**
+     * Keep variables to values the journal can write, so a value it cannot fails the step or
+     * call that sets it rather than the group commit its checkpoint would share.
+     *
+     * @throws IllegalArgumentException if a value cannot be written as JSON
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> toJsonValues(Map<String, Object> variables) {
+        return (Map<String, Object>) ExecutionCheckpoint.toJsonValue(variables);
+    }
+
+    /**
+     * What a step executor sees of the run it works for.
+     */
+    private static final class RunStepContext implements StepExecutor.StepContext {
+        private final WorkflowExecutionModel execution;
+        private final WorkflowStepModel step;
+        private final int stepIndex;
+        private final Map<String, Object> variables;
+
+        RunStepContext(ExecutionRun run, int stepIndex) {
+            this.execution = run.getExecution();
+            this.step = run.getPlan().getStep(stepIndex);
+            this.stepIndex = stepIndex;
+            this.variables = execution.getVariables();
+        }
+
+        @Override
+        public String getExecutionId() {
+            return execution.getId();
+        }
+
+        @Override
+        public String getWorkflowId() {
+            return execution.getWorkflowId();
+        }
+
+        @Override
+        public WorkflowStepModel getStep() {
+            return step;
+        }
+
+        @Override
+        public Map<String, Object> getVariables() {
+            return variables;
+        }
+
+        @Override
+        public void log(String message) {
+            execution.addLog(ExecutionLog.INFO, stepIndex, "{}", message);
+        }
+    }
+
+    private CompletableFuture<Void> saveExecution(ExecutionRun run) {
+        // State changes are group-committed to the journal and compacted into JCR later
+        CompletableFuture<Void> saved = journal != null
+            ? journal.append(ExecutionCheckpoint.of(run))
+            : CompletableFuture.completedFuture(null);
+        LOG.debug("Saved execution: {}", run.getExecution().getId());
+        return saved;
+    }
+
+    private CompletableFuture<Void> saveExecution(ExecutionCursor cursor) {
+        CompletableFuture<Void> saved = journal != null
+            ? journal.append(ExecutionCheckpoint.of(cursor))
+            : CompletableFuture.completedFuture(null);
+        LOG.debug("Saved execution: {}", cursor.getExecution().getId());
+        return saved;
+    }
+
+    /**
+     * Write compacted checkpoints to JCR with a single session save.
+     */
+    private void storeCheckpoints(Collection<ExecutionCheckpoint> checkpoints) throws LoginException, RepositoryException {
+        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            Session session = resolver.adaptTo(Session.class);
+            Node executionsNode = session.getNode(EXECUTIONS_PATH);
+            for (ExecutionCheckpoint checkpoint : checkpoints) {
+                Node executionNode = executionsNode.hasNode(checkpoint.getExecutionId())
+                    ? executionsNode.getNode(checkpoint.getExecutionId())
+                    : executionsNode.addNode(checkpoint.getExecutionId(), EXECUTION_NODE_TYPE);
+                saveCheckpointToNode(executionNode, checkpoint);
+            }
+            session.save();
+        }
     }
 
-    private void saveExecution(WorkflowExecutionModel execution) {
-        // Implementation would save execution to JCR
-        LOG.debug("Saved execution: {}", execution.getId());
+    private void saveCheckpointToNode(Node node, ExecutionCheckpoint checkpoint) throws RepositoryException {
+        node.setProperty("workflowId", checkpoint.getWorkflowId());
+        node.setProperty("status", checkpoint.getStatus());
+        node.setProperty("currentStep", checkpoint.getCurrentStep());
+        node.setProperty("startTime", checkpoint.getStartTime());
+        node.setProperty("endTime", checkpoint.getEndTime());
+        node.setProperty("planVersion", checkpoint.getPlanVersion());
+        node.setProperty("subWorkflowDepth", checkpoint.getSubWorkflowDepth());
+        node.setProperty("owner", checkpoint.getOwner());
+        node.setProperty("priority", checkpoint.getPriority());
+        node.setProperty("completedSteps", checkpoint.getCompletedSteps().toArray(new String[0]));
+        node.setProperty("skippedSteps", checkpoint.getSkippedSteps().toArray(new String[0]));
+        node.setProperty("untakenEdges", checkpoint.getUntakenEdges().toArray(new String[0]));
+        node.setProperty("sequence", checkpoint.getSequence());
+        node.setProperty("lastModified", checkpoint.getTimestamp());
+
+        if (node.hasNode("variables")) {
+            node.getNode("variables").remove();
+        }
+        try {
+            node.setProperty("variables", checkpoint.variablesToJson());
+        } catch (JsonProcessingException e) {
+            throw new RepositoryException("Failed to serialize variables of execution: " + checkpoint.getExecutionId(), e);
+        }
     }
 
     private Optional<WorkflowExecutionModel> loadExecution(String executionId) {
-        // Implementation would load execution from JCR
+        if (journal != null) {
+            ExecutionCheckpoint checkpoint = journal.getUncompacted(executionId);
+            if (checkpoint != null) {
+                return Optional.of(checkpoint.toExecution());
+            }
+        }
+
+        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            Session session = resolver.adaptTo(Session.class);
+            String path = EXECUTIONS_PATH + "/" + executionId;
+            if (session.nodeExists(path)) {
+                return Optional.of(loadCheckpointFromNode(session.getNode(path)).toExecution());
+            }
+        } catch (LoginException e) {
+            LOG.error("Failed to obtain resource resolver to load execution: {}", executionId, e);
+        } catch (Exception e) {
+            LOG.error("Failed to load execution: {}", executionId, e);
+        }
         return Optional.empty();
     }
 
     private List<WorkflowExecutionModel> loadExecutionsByWorkflow(String workflowId) {
-        // Implementation would load executions by workflow from JCR
-        return Collections.emptyList();
+        List<WorkflowExecutionModel> executions = new ArrayList<>();
+        try (ResourceResolver resolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            Session session = resolver.adaptTo(Session.class);
+            String statement = "SELECT * FROM [nt:base] AS e WHERE ISCHILDNODE(e, '" + EXECUTIONS_PATH
+                + "') AND e.[workflowId] = '" + workflowId.replace("'", "''") + "'";
+            Query query = session.getWorkspace().getQueryManager().createQuery(statement, Query.JCR_SQL2);
+            NodeIterator nodes = query.execute().getNodes();
+            while (nodes.hasNext()) {
+                executions.add(loadCheckpointFromNode(nodes.nextNode()).toExecution());
+            }
+        } catch (LoginException e) {
+            LOG.error("Failed to obtain resource resolver to load executions of workflow: {}", workflowId, e);
+        } catch (Exception e) {
+            LOG.error("Failed to load executions of workflow: {}", workflowId, e);
+        }
+        return executions;
+    }
+
+    private ExecutionCheckpoint loadCheckpointFromNode(Node node) throws RepositoryException {
+        Map<String, Object> variables = new HashMap<>();
+        if (node.hasProperty("variables")) {
+            try {
+                variables = ExecutionCheckpoint.variablesFromJson(node.getProperty("variables").getString());
+            } catch (JsonProcessingException e) {
+                throw new RepositoryException("Failed to parse variables of execution: " + node.getName(), e);
+            }
+        } else if (node.hasNode("variables")) {
+            // Compacted before variables were stored as JSON; only their string forms were kept
+            PropertyIterator properties = node.getNode("variables").getProperties();
+            while (properties.hasNext()) {
+                Property property = properties.nextProperty();
+                if (!property.getName().startsWith("jcr:")) {
+                    variables.put(property.getName(), property.getString());
+                }
+            }
+        }
+        return new ExecutionCheckpoint(
+            node.getName(),
+            node.hasProperty("workflowId") ? node.getProperty("workflowId").getString() : null,
+            node.hasProperty("status") ? node.getProperty("status").getString() : null,
+            node.hasProperty("currentStep") ? node.getProperty("currentStep").getString() : null,
+            node.hasProperty("startTime") ? node.getProperty("startTime").getLong() : 0L,
+            node.hasProperty("endTime") ? node.getProperty("endTime").getLong() : 0L,
+            variables,
+            node.hasProperty("planVersion") ? node.getProperty("planVersion").getLong() : 0L,
+            node.hasProperty("subWorkflowDepth") ? (int) node.getProperty("subWorkflowDepth").getLong() : 0,
+            node.hasProperty("owner") ? node.getProperty("owner").getString() : null,
+            node.hasProperty("priority") ? node.getProperty("priority").getString() : null,
+            stringValues(node, "completedSteps"),
+            stringValues(node, "skippedSteps"),
+            stringValues(node, "untakenEdges"),
+            node.hasProperty("sequence") ? node.getProperty("sequence").getLong() : 0L,
+            node.hasProperty("lastModified") ? node.getProperty("lastModified").getLong() : 0L
+        );
     }
 
 
+
+    private static List<String> stringValues(Node node, String name) throws RepositoryException {
+        List<String> strings = new ArrayList<>();
+        if (node.hasProperty(name)) {
+            for (Value value : node.getProperty(name).getValues()) {
+                strings.add(value.getString());
+            }
+        }
+        return strings;
+    }
 }
\ No newline at end of file
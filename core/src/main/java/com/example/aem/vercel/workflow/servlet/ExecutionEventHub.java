@@ -0,0 +1,303 @@
+package com.example.aem.vercel.workflow.servlet;
+
+import com.example.aem.vercel.workflow.model.ExecutionSnapshot;
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server-Sent Events streams of execution progress.
+ * Subscribers hold an async request, not a container thread. One ticker thread checks the
+ * version of every watched execution and turns what changed since a subscriber's last
+ * version into events: {@code snapshot} first, then {@code status}, {@code step},
+ * {@code variables} and {@code log}, each with the version as its event ID, and {@code end}
+ * once the execution has finished. Events are written only while the output stream is ready;
+ * a subscriber that cannot keep up gets its next events once its backlog has drained,
+ * so changes coalesce instead of queueing up.
+ * <p>
+ * A subscriber {@link #reserve() reserves} its stream before the request goes async, so the
+ * limit on open streams holds however many requests race for the last one.
+ */
+final class ExecutionEventHub {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionEventHub.class);
+
+    private static final long TICK_MILLIS = 250;
+    // Comment lines keep idle streams open through proxies and reveal closed connections
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final byte[] HEARTBEAT = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    // An event's data must be a single line
+    private final ObjectWriter writer;
+    private final int maxSubscriptions;
+    private final AtomicInteger reserved = new AtomicInteger();
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "workflow-execution-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ExecutionEventHub(ObjectMapper objectMapper, int maxSubscriptions) {
+        this.writer = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+        this.maxSubscriptions = maxSubscriptions;
+        ticker.scheduleWithFixedDelay(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reserve a stream for a subscriber; it is given back when the subscription closes.
+     *
+     * @return false if every stream is taken
+     */
+    boolean reserve() {
+        int current;
+        do {
+            current = reserved.get();
+            if (current >= maxSubscriptions) {
+                return false;
+            }
+        } while (!reserved.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    /**
+     * Give back a reservation that will not be used to subscribe.
+     */
+    void release() {
+        reserved.decrementAndGet();
+    }
+
+    /**
+     * Stream the changes of an execution after a version to an async request whose response
+     * headers are set, using a {@link #reserve() reserved} stream.
+     */
+    void subscribe(AsyncContext asyncContext, WorkflowExecutionModel execution, long sinceVersion) throws IOException {
+        Subscription subscription;
+        try {
+            asyncContext.setTimeout(0);
+            subscription = new Subscription(asyncContext, execution, sinceVersion);
+        } catch (IOException | RuntimeException e) {
+            release();
+            throw e;
+        }
+        // From here on, closing the subscription gives the reservation back
+        subscriptions.add(subscription);
+        try {
+            asyncContext.addListener(subscription);
+            subscription.out.setWriteListener(subscription);
+        } catch (RuntimeException e) {
+            subscription.close();
+            throw e;
+        }
+        // The first events go out right away rather than on the next tick
+        ticker.execute(() -> subscription.poll(System.currentTimeMillis()));
+    }
+
+    void close() {
+        ticker.shutdownNow();
+        for (Subscription subscription : subscriptions) {
+            subscription.close();
+        }
+    }
+
+    private void tick() {
+        long now = System.currentTimeMillis();
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.poll(now);
+            } catch (RuntimeException e) {
+                LOG.warn("Failed to stream events of execution: {}", subscription.execution.getId(), e);
+                subscription.close();
+            }
+        }
+    }
+
+    private final class Subscription implements WriteListener, AsyncListener {
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream out;
+        private final WorkflowExecutionModel execution;
+        // Guarded by this
+        private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+        private long version;
+        private boolean started;
+        private boolean ending;
+        private boolean closed;
+        private long lastWrite;
+
+        Subscription(AsyncContext asyncContext, WorkflowExecutionModel execution, long sinceVersion) throws IOException {
+            this.asyncContext = asyncContext;
+            this.out = asyncContext.getResponse().getOutputStream();
+            this.execution = execution;
+            this.version = sinceVersion;
+            this.lastWrite = System.currentTimeMillis();
+        }
+
+        synchronized void poll(long now) {
+            if (closed || ending || !pending.isEmpty()) {
+                drain();
+                return;
+            }
+            WorkflowExecutionModel.State state = execution.getState();
+            if (started && execution.getVersion() == version) {
+                if (state != null && state.isTerminal()) {
+                    // The events sent so far already include the final state and the last log entries
+                    pending.add(event("end", Map.of("status", execution.getStatus())));
+                    ending = true;
+                } else if (now - lastWrite >= HEARTBEAT_MILLIS) {
+                    pending.add(HEARTBEAT);
+                }
+            } else {
+                enqueue(execution.getChangesSince(version));
+            }
+            drain();
+        }
+
+        private void enqueue(ExecutionSnapshot.Delta delta) {
+            Map<String, Object> changes = delta.getChanges();
+            if (!started) {
+                started = true;
+                if (version == 0) {
+                    // A new subscriber gets everything in one event
+                    Map<String, Object> snapshot = new LinkedHashMap<>();
+                    snapshot.put("id", delta.getId());
+                    snapshot.putAll(changes);
+                    snapshot.put("logs", delta.getLogs());
+                    snapshot.put("logsTruncated", delta.isLogsTruncated());
+                    version = delta.getVersion();
+                    pending.add(event("snapshot", snapshot));
+                    return;
+                }
+            }
+            version = delta.getVersion();
+            if (changes.containsKey("status")) {
+                Map<String, Object> status = new LinkedHashMap<>();
+                for (String key : new String[] { "status", "running", "completed", "failed", "paused", "cancelled",
+                                                 "startTime", "endTime", "duration" }) {
+                    status.put(key, changes.get(key));
+                }
+                pending.add(event("status", status));
+            }
+            if (changes.containsKey("currentStep")) {
+                Map<String, Object> step = new LinkedHashMap<>();
+                step.put("currentStep", changes.get("currentStep"));
+                pending.add(event("step", step));
+            }
+            if (changes.containsKey("variables")) {
+                pending.add(event("variables", Map.of("variables", changes.get("variables"))));
+            }
+            if (!delta.getLogs().isEmpty() || delta.isLogsTruncated()) {
+                pending.add(event("log", Map.of("logs", delta.getLogs(), "logsTruncated", delta.isLogsTruncated())));
+            }
+        }
+
+        private byte[] event(String name, Map<String, Object> data) {
+            try {
+                StringBuilder event = new StringBuilder(64)
+                    .append("id: ").append(version).append('\n')
+                    .append("event: ").append(name).append('\n')
+                    .append("data: ").append(writer.writeValueAsString(data)).append("\n\n");
+                return event.toString().getBytes(StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to serialise execution event", e);
+            }
+        }
+
+        /**
+         * Write pending events for as long as the stream accepts them without blocking.
+         */
+        private synchronized void drain() {
+            if (closed) {
+                return;
+            }
+            try {
+                boolean wrote = false;
+                while (!pending.isEmpty()) {
+                    if (!out.isReady()) {
+                        // onWritePossible continues once the client has caught up
+                        return;
+                    }
+                    out.write(pending.poll());
+                    wrote = true;
+                }
+                if (wrote) {
+                    lastWrite = System.currentTimeMillis();
+                    if (out.isReady()) {
+                        out.flush();
+                    }
+                }
+                if (ending && pending.isEmpty()) {
+                    close();
+                }
+            } catch (IOException e) {
+                LOG.debug("Execution event stream closed by client: {}", execution.getId());
+                close();
+            }
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.clear();
+            if (subscriptions.remove(this)) {
+                release();
+            }
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                // Already completed by the container
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            close();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Not restarted
+        }
+    }
+}
@@ -1,23 +1,35 @@
 package com.example.aem.vercel.workflow.servlet;
 
+import com.example.aem.vercel.workflow.config.WorkflowConfig;
+import com.example.aem.vercel.workflow.model.ExecutionSnapshot;
 import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import com.example.aem.vercel.workflow.service.ExecutionRejectedException;
 import com.example.aem.vercel.workflow.service.WorkflowExecutionService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import org.apache.sling.api.SlingHttpServletRequest;
 import org.apache.sling.api.SlingHttpServletResponse;
 import org.apache.sling.api.servlets.SlingAllMethodsServlet;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.Designate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.Servlet;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 /**
  * REST API servlet for workflow execution operations.
@@ -31,31 +43,64 @@ import java.util.Optional;
         "sling.servlet.extensions=json"
     }
 )
+@Designate(ocd = WorkflowConfig.class)
 public class WorkflowExecutionApiServlet extends SlingAllMethodsServlet {
 
     private static final Logger LOG = LoggerFactory.getLogger(WorkflowExecutionApiServlet.class);
+
+    private static final int SC_TOO_MANY_REQUESTS = 429;
+    private static final int SC_NOT_IMPLEMENTED = 501;
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    private static final String EVENTS_SUFFIX = "/events";
+
+    // Bulk starts are read, admitted and answered in chunks of this many executions
+    private static final int BULK_CHUNK_SIZE = 500;
     
     private final ObjectMapper objectMapper;
 
     @Reference
     private WorkflowExecutionService workflowExecutionService;
 
+    private ExecutionEventHub eventHub;
+
     public WorkflowExecutionApiServlet() {
         this.objectMapper = new ObjectMapper();
         this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
     }
 
+    @Activate
+    protected void activate(WorkflowConfig config) {
+        eventHub = new ExecutionEventHub(objectMapper, config.maxEventStreams());
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        eventHub.close();
+    }
+
     @Override
     protected void doGet(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
         try {
             String pathInfo = request.getPathInfo();
+            if (pathInfo != null && pathInfo.endsWith(EVENTS_SUFFIX)) {
+                doEventsGet(request, response, extractExecutionId(pathInfo.substring(0, pathInfo.length() - EVENTS_SUFFIX.length())));
+                return;
+            }
             String executionId = extractExecutionId(pathInfo);
 
             if (executionId != null) {
-                // Get specific execution
+                // Get specific execution, or only what changed after the version a poller has seen
+                long since;
+                try {
+                    since = parseSinceVersion(request.getParameter("since"));
+                } catch (IllegalArgumentException e) {
+                    writeErrorResponse(response, e.getMessage(), HttpServletResponse.SC_BAD_REQUEST);
+                    return;
+                }
                 Optional<WorkflowExecutionModel> execution = workflowExecutionService.getExecution(executionId);
                 if (execution.isPresent()) {
-                    writeJsonResponse(response, execution.get(), HttpServletResponse.SC_OK);
+                    writeJsonResponse(response, execution.get().getChangesSince(since), HttpServletResponse.SC_OK);
                 } else {
                     writeErrorResponse(response, "Execution not found: " + executionId, HttpServletResponse.SC_NOT_FOUND);
                 }
@@ -75,9 +120,13 @@ public class WorkflowExecutionApiServlet extends SlingAllMethodsServlet {
                     executions = workflowExecutionService.getRecentExecutions(50);
                 }
                 
+                List<ExecutionSnapshot> snapshots = new ArrayList<>(executions.size());
+                for (WorkflowExecutionModel execution : executions) {
+                    snapshots.add(execution.getSnapshot());
+                }
                 Map<String, Object> result = Map.of(
-                    "executions", executions,
-                    "count", executions.size()
+                    "executions", snapshots,
+                    "count", snapshots.size()
                 );
                 writeJsonResponse(response, result, HttpServletResponse.SC_OK);
             }
@@ -87,8 +136,58 @@ public class WorkflowExecutionApiServlet extends SlingAllMethodsServlet {
         }
     }
 
+    /**
+     * Stream the progress of an execution as Server-Sent Events, starting after the version in
+     * {@code since} or in the {@code Last-Event-ID} of a reconnecting client.
+     */
+    private void doEventsGet(SlingHttpServletRequest request, SlingHttpServletResponse response, String executionId)
+            throws IOException {
+        String since = request.getParameter("since");
+        long sinceVersion;
+        try {
+            sinceVersion = parseSinceVersion(since != null ? since : request.getHeader(LAST_EVENT_ID_HEADER));
+        } catch (IllegalArgumentException e) {
+            writeErrorResponse(response, e.getMessage(), HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        Optional<WorkflowExecutionModel> execution = executionId != null
+            ? workflowExecutionService.getExecution(executionId) : Optional.empty();
+        if (execution.isEmpty()) {
+            writeErrorResponse(response, "Execution not found: " + executionId, HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!request.isAsyncSupported()) {
+            writeErrorResponse(response, "Event streams are not supported by this container", SC_NOT_IMPLEMENTED);
+            return;
+        }
+        if (!eventHub.reserve()) {
+            response.setHeader("Retry-After", "30");
+            writeErrorResponse(response, "Too many event streams", HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        AsyncContext asyncContext;
+        try {
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("text/event-stream");
+            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Cache-Control", "no-cache");
+            // Keep reverse proxies from buffering the stream
+            response.setHeader("X-Accel-Buffering", "no");
+            asyncContext = request.startAsync();
+        } catch (RuntimeException e) {
+            eventHub.release();
+            throw e;
+        }
+        eventHub.subscribe(asyncContext, execution.get(), sinceVersion);
+    }
+
     @Override
     protected void doPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        if ("bulk".equals(extractExecutionId(request.getPathInfo()))) {
+            doBulkPost(request, response);
+            return;
+        }
         try {
             @SuppressWarnings("unchecked")
             Map<String, Object> requestData = objectMapper.readValue(request.getReader(), Map.class);
@@ -97,15 +196,26 @@ public class WorkflowExecutionApiServlet extends SlingAllMethodsServlet {
             String userId = (String) requestData.get("userId");
             @SuppressWarnings("unchecked")
             Map<String, Object> variables = (Map<String, Object>) requestData.get("variables");
+            Object priority = requestData.get("priority");
+            long waitMillis = parseWaitMillis(request.getParameter("wait"));
             
             if (workflowId == null || workflowId.trim().isEmpty()) {
                 writeErrorResponse(response, "workflowId is required", HttpServletResponse.SC_BAD_REQUEST);
                 return;
             }
             
-            WorkflowExecutionModel execution = workflowExecutionService.startExecution(workflowId, userId, variables);
-            writeJsonResponse(response, execution, HttpServletResponse.SC_CREATED);
+            WorkflowExecutionModel execution = workflowExecutionService.startExecution(
+                new WorkflowExecutionService.ExecutionRequest(workflowId, userId, variables,
+                    WorkflowExecutionService.Priority.fromValue(priority != null ? priority.toString() : null),
+                    request.getHeader(IDEMPOTENCY_KEY_HEADER)),
+                waitMillis);
+            writeJsonResponse(response, execution.getSnapshot(), HttpServletResponse.SC_CREATED);
             
+        } catch (ExecutionRejectedException e) {
+            // Shed load: tell callers when to come back instead of letting them retry immediately
+            LOG.debug("Execution start rejected: {}", e.getMessage());
+            response.setHeader("Retry-After", String.valueOf(TimeUnit.MILLISECONDS.toSeconds(e.getRetryAfterMillis() + 999)));
+            writeErrorResponse(response, e.getMessage(), SC_TOO_MANY_REQUESTS);
         } catch (IllegalArgumentException e) {
             LOG.warn("Invalid execution request", e);
             writeErrorResponse(response, e.getMessage(), HttpServletResponse.SC_BAD_REQUEST);
@@ -115,6 +225,124 @@ public class WorkflowExecutionApiServlet extends SlingAllMethodsServlet {
         }
     }
 
+    /**
+     * Start many executions from a JSON array of
+     * {@code {workflowId, userId, variables, priority, idempotencyKey}}.
+     * The array is read and started in chunks, and the result of each chunk is streamed back
+     * before the next one is read, so large batches are never held in memory as a whole.
+     */
+    private void doBulkPost(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
+        try (JsonParser parser = objectMapper.getFactory().createParser(request.getReader())) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                writeErrorResponse(response, "Request body must be an array of executions", HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+
+            response.setContentType("application/json");
+            response.setCharacterEncoding("UTF-8");
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setHeader("Access-Control-Allow-Origin", "*");
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getWriter())) {
+                BulkCounts counts = new BulkCounts();
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("executions");
+
+                List<WorkflowExecutionService.ExecutionRequest> chunk = new ArrayList<>(BULK_CHUNK_SIZE);
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> item = objectMapper.readValue(parser, Map.class);
+                    WorkflowExecutionService.ExecutionRequest executionRequest;
+                    try {
+                        executionRequest = toExecutionRequest(item);
+                    } catch (IllegalArgumentException e) {
+                        // Keep results in request order: start what came before the invalid item first
+                        startChunk(chunk, generator, counts);
+                        Object workflowId = item.get("workflowId");
+                        writeStartResult(generator, WorkflowExecutionService.StartResult.invalid(
+                            workflowId instanceof String ? (String) workflowId : null, e.getMessage()), counts);
+                        continue;
+                    }
+                    chunk.add(executionRequest);
+                    if (chunk.size() >= BULK_CHUNK_SIZE) {
+                        startChunk(chunk, generator, counts);
+                    }
+                }
+                startChunk(chunk, generator, counts);
+
+                generator.writeEndArray();
+                generator.writeNumberField("count", counts.started + counts.rejected + counts.invalid);
+                generator.writeNumberField("started", counts.started);
+                generator.writeNumberField("rejected", counts.rejected);
+                generator.writeNumberField("invalid", counts.invalid);
+                generator.writeEndObject();
+            }
+        } catch (Exception e) {
+            LOG.error("Error handling bulk POST request", e);
+            if (!response.isCommitted()) {
+                response.reset();
+                writeErrorResponse(response, "Internal server error", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    private void startChunk(List<WorkflowExecutionService.ExecutionRequest> chunk, JsonGenerator generator,
+                            BulkCounts counts) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        for (WorkflowExecutionService.StartResult result : workflowExecutionService.startExecutions(chunk)) {
+            writeStartResult(generator, result, counts);
+        }
+        chunk.clear();
+        generator.flush();
+    }
+
+    private void writeStartResult(JsonGenerator generator, WorkflowExecutionService.StartResult result,
+                                  BulkCounts counts) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("workflowId", result.getWorkflowId());
+        if (result.isStarted()) {
+            counts.started++;
+            generator.writeStringField("executionId", result.getExecutionId());
+        } else {
+            generator.writeStringField("error", result.getError());
+            if (result.isRejected()) {
+                counts.rejected++;
+                generator.writeNumberField("status", SC_TOO_MANY_REQUESTS);
+                generator.writeNumberField("retryAfter", TimeUnit.MILLISECONDS.toSeconds(result.getRetryAfterMillis() + 999));
+            } else {
+                counts.invalid++;
+                generator.writeNumberField("status", HttpServletResponse.SC_BAD_REQUEST);
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    private WorkflowExecutionService.ExecutionRequest toExecutionRequest(Map<String, Object> item) {
+        Object variables = item.get("variables");
+        if (variables != null && !(variables instanceof Map)) {
+            throw new IllegalArgumentException("variables must be an object");
+        }
+        Object priority = item.get("priority");
+        Object idempotencyKey = item.get("idempotencyKey");
+        @SuppressWarnings("unchecked")
+        Map<String, Object> variableMap = (Map<String, Object>) variables;
+        return new WorkflowExecutionService.ExecutionRequest(
+            stringField(item, "workflowId"),
+            stringField(item, "userId"),
+            variableMap,
+            WorkflowExecutionService.Priority.fromValue(priority != null ? priority.toString() : null),
+            idempotencyKey != null ? idempotencyKey.toString() : null);
+    }
+
+    private static String stringField(Map<String, Object> item, String name) {
+        Object value = item.get(name);
+        if (value != null && !(value instanceof String)) {
+            throw new IllegalArgumentException(name + " must be a string");
+        }
+        return (String) value;
+    }
+
     @Override
     protected void doPut(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
         try {
@@ -199,10 +427,34 @@ public class WorkflowExecutionApiServlet extends SlingAllMethodsServlet {
     protected void doOptions(SlingHttpServletRequest request, SlingHttpServletResponse response) throws IOException {
         response.setHeader("Access-Control-Allow-Origin", "*");
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
-        response.setHeader("Access-Control-Allow-Headers", "Content-Type, Authorization");
+        response.setHeader("Access-Control-Allow-Headers",
+            "Content-Type, Authorization, " + IDEMPOTENCY_KEY_HEADER + ", " + LAST_EVENT_ID_HEADER);
+        response.setHeader("Access-Control-Expose-Headers", "Retry-After");
         response.setStatus(HttpServletResponse.SC_OK);
     }
 
+    private long parseWaitMillis(String wait) {
+        if (wait == null || wait.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(wait.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid wait: " + wait);
+        }
+    }
+
+    private long parseSinceVersion(String since) {
+        if (since == null || since.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(0, Long.parseLong(since.trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid since: " + since);
+        }
+    }
+
     private String extractExecutionId(String pathInfo) {
         if (pathInfo == null || pathInfo.equals("/api/workflows/executions")) {
             return null;
@@ -210,11 +462,19 @@ public class WorkflowExecutionApiServlet extends SlingAllMethodsServlet {
         return pathInfo.substring(pathInfo.lastIndexOf('/') + 1);
     }
 
+    private static final class BulkCounts {
+        private int started;
+        private int rejected;
+        private int invalid;
+    }
+
     private void writeJsonResponse(SlingHttpServletResponse response, Object data, int statusCode) throws IOException {
         response.setContentType("application/json");
         response.setCharacterEncoding("UTF-8");
         response.setStatus(statusCode);
         response.setHeader("Access-Control-Allow-Origin", "*");
+        // Let browser clients see when a shed or refused request may be retried
+        response.setHeader("Access-Control-Expose-Headers", "Retry-After");
         objectMapper.writeValue(response.getWriter(), data);
     }
 
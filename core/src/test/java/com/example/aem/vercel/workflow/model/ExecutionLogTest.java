@@ -0,0 +1,150 @@
+package com.example.aem.vercel.workflow.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionLogTest {
+
+    @Test
+    public void formatsRecordsWhenRead() {
+        ExecutionLog log = new ExecutionLog();
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "Started");
+        log.append(ExecutionLog.WARN, log.stepIndexOf("s1"), "Step {} took {} ms", "s1", 12);
+
+        List<WorkflowLogEntryModel> entries = log.window(0).getEntries();
+        assertEquals(2, entries.size());
+        assertEquals("Started", entries.get(0).getMessage());
+        assertNull(entries.get(0).getStepId());
+        assertEquals("Step s1 took 12 ms", entries.get(1).getMessage());
+        assertEquals("WARN", entries.get(1).getLevel());
+        assertEquals("s1", entries.get(1).getStepId());
+    }
+
+    @Test
+    public void dropsRecordsBelowTheMinimumLevel() {
+        ExecutionLog log = new ExecutionLog(8, ExecutionLog.INFO, null, null);
+        log.append(ExecutionLog.DEBUG, ExecutionLog.NO_STEP, "hidden");
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "shown");
+
+        assertFalse(log.isEnabled(ExecutionLog.DEBUG));
+        assertEquals(1, log.size());
+        assertEquals("shown", log.window(0).getEntries().get(0).getMessage());
+    }
+
+    @Test
+    public void oldestRecordsOverflowInOrder() {
+        List<Long> sequences = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        ExecutionLog log = new ExecutionLog(4, ExecutionLog.DEBUG, null,
+            (sequence, timestamp, level, stepId, template, arg1, arg2) -> {
+                sequences.add(sequence);
+                messages.add(ExecutionLog.entryOf(timestamp, level, stepId, template, arg1, arg2).getMessage());
+            });
+        for (int i = 0; i < 10; i++) {
+            log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "entry {}", i);
+        }
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L, 5L), sequences);
+        assertEquals("entry 5", messages.get(5));
+        ExecutionLog.Window window = log.window(0);
+        assertEquals(6, window.getFirstSequence());
+        assertEquals(10, window.getTotalEntries());
+        assertEquals("entry 6", window.getEntries().get(0).getMessage());
+    }
+
+    @Test
+    public void windowAfterVersionReturnsOnlyNewerRecords() {
+        ExecutionLog log = new ExecutionLog(4, ExecutionLog.DEBUG, null, null);
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "first");
+        long seen = log.getVersion();
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "second");
+
+        ExecutionLog.Window window = log.window(0, seen);
+        assertEquals(1, window.getEntries().size());
+        assertEquals("second", window.getEntries().get(0).getMessage());
+        assertEquals(log.getVersion(), window.getLastVersion());
+        assertTrue(window.isComplete());
+
+        for (int i = 0; i < 8; i++) {
+            log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "more");
+        }
+        assertFalse(log.window(0, seen).isComplete());
+    }
+
+    @Test
+    public void versionsNeverGoBack() {
+        ExecutionLog log = new ExecutionLog();
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "record");
+        long change = log.nextVersion(version -> version);
+
+        assertEquals(2, change);
+        log.advanceTo(100);
+        assertEquals(100, log.getVersion());
+        log.advanceTo(50);
+        assertEquals(101, (long) log.nextVersion(version -> version));
+    }
+
+    @Test
+    public void readersSeeConsecutiveRecordsWhileWritersWrap() throws InterruptedException {
+        int writers = 4;
+        int perWriter = 20_000;
+        ExecutionLog log = new ExecutionLog(64, ExecutionLog.DEBUG, null, null);
+        CountDownLatch done = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            String name = "w" + w;
+            Thread writer = new Thread(() -> {
+                for (int i = 0; i < perWriter; i++) {
+                    log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "{} {}", name, i);
+                }
+                done.countDown();
+            });
+            writer.start();
+        }
+
+        AtomicReference<String> failure = new AtomicReference<>();
+        AtomicBoolean finished = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!finished.get() && failure.get() == null) {
+                ExecutionLog.Window window = log.window(0);
+                List<WorkflowLogEntryModel> entries = window.getEntries();
+                if (window.getFirstSequence() + entries.size() != window.getTotalEntries()) {
+                    failure.set("Window is not consecutive up to the head");
+                }
+                int[] last = new int[writers];
+                Arrays.fill(last, -1);
+                for (WorkflowLogEntryModel entry : entries) {
+                    // A record torn by a concurrent append would not parse or would go back
+                    String[] parts = entry.getMessage().split(" ");
+                    try {
+                        int writer = Integer.parseInt(parts[0].substring(1));
+                        int count = Integer.parseInt(parts[1]);
+                        if (count <= last[writer]) {
+                            failure.set("Records of " + parts[0] + " out of order: " + entry.getMessage());
+                        }
+                        last[writer] = count;
+                    } catch (RuntimeException e) {
+                        failure.set("Torn record: " + entry.getMessage());
+                    }
+                }
+            }
+        });
+        reader.start();
+        done.await();
+        finished.set(true);
+        reader.join();
+
+        assertNull(failure.get(), failure.get());
+        assertEquals(writers * perWriter, log.size());
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.aem.vercel.workflow.model;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentHashMapTest {
+
+    @Test
+    public void updatesLeaveEarlierVersionsUnchanged() {
+        PersistentHashMap<String, Object> empty = PersistentHashMap.empty();
+        PersistentHashMap<String, Object> one = empty.plus("a", 1);
+        PersistentHashMap<String, Object> two = one.plus("b", 2);
+        PersistentHashMap<String, Object> replaced = two.plus("a", 3);
+        PersistentHashMap<String, Object> removed = replaced.minus("b");
+
+        assertTrue(empty.isEmpty());
+        assertEquals(Map.of("a", 1), one);
+        assertEquals(Map.of("a", 1, "b", 2), two);
+        assertEquals(Map.of("a", 3, "b", 2), replaced);
+        assertEquals(Map.of("a", 3), removed);
+        assertEquals(1, removed.size());
+    }
+
+    @Test
+    public void unchangedUpdatesReturnTheSameMap() {
+        Integer value = 1;
+        PersistentHashMap<String, Object> map = PersistentHashMap.<String, Object>empty().plus("a", value);
+
+        assertSame(map, map.plus("a", value));
+        assertSame(map, map.minus("missing"));
+        assertSame(map, PersistentHashMap.copyOf(map));
+    }
+
+    @Test
+    public void allowsNullKeysAndValues() {
+        PersistentHashMap<String, Object> map = PersistentHashMap.<String, Object>empty().plus(null, "x").plus("n", null);
+
+        assertEquals("x", map.get(null));
+        assertTrue(map.containsKey("n"));
+        assertNull(map.get("n"));
+        assertEquals(1, map.minus(null).size());
+    }
+
+    @Test
+    public void keepsKeysWithCollidingHashes() {
+        PersistentHashMap<Collider, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.plus(new Collider(i), i);
+        }
+
+        assertEquals(10, map.size());
+        assertEquals(Integer.valueOf(7), map.get(new Collider(7)));
+        PersistentHashMap<Collider, Integer> removed = map.minus(new Collider(7));
+        assertEquals(9, removed.size());
+        assertFalse(removed.containsKey(new Collider(7)));
+        assertEquals(Integer.valueOf(8), removed.get(new Collider(8)));
+    }
+
+    @Test
+    public void matchesHashMapUnderRandomUpdates() {
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 50_000; i++) {
+            Integer key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected, map);
+        assertEquals(expected, new HashMap<>(map));
+    }
+
+    @Test
+    public void rejectsInPlaceMutation() {
+        PersistentHashMap<String, Object> map = PersistentHashMap.<String, Object>empty().plus("a", 1);
+
+        assertThrows(UnsupportedOperationException.class, () -> map.put("b", 2));
+        assertThrows(UnsupportedOperationException.class, () -> map.remove("a"));
+    }
+
+    private static final class Collider {
+        private final int id;
+
+        Collider(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Collider && ((Collider) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 42;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.aem.vercel.workflow.model;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+public class WorkflowExecutionModelTest {
+
+    private final WorkflowExecutionModel execution = new WorkflowExecutionModel("e1", "wf");
+
+    @Test
+    public void pausesAndResumes() {
+        assertEquals(WorkflowExecutionModel.State.RUNNING, execution.getState());
+
+        assertTrue(execution.pause());
+        assertFalse(execution.pause());
+        assertTrue(execution.isPaused());
+        assertTrue(execution.resume());
+        assertTrue(execution.isRunning());
+        assertEquals(0, execution.getEndTime());
+    }
+
+    @Test
+    public void terminalStatesCannotBeLeft() {
+        execution.setCurrentStep("s1");
+
+        assertTrue(execution.complete());
+        assertNull(execution.getCurrentStep());
+        assertTrue(execution.getEndTime() > 0);
+        assertFalse(execution.resume());
+        assertFalse(execution.pause());
+        assertFalse(execution.cancel("too late"));
+        assertFalse(execution.fail("too late"));
+        assertTrue(execution.isCompleted());
+    }
+
+    @Test
+    public void failureIsLogged() {
+        assertTrue(execution.fail("Step s1 failed"));
+
+        assertTrue(execution.isFailed());
+        WorkflowLogEntryModel last = execution.getLogs().get(execution.getLogs().size() - 1);
+        assertEquals("ERROR", last.getLevel());
+        assertEquals("Step s1 failed", last.getMessage());
+    }
+
+    @Test
+    public void transitionsPublishANewVersion() {
+        long before = execution.getVersion();
+
+        execution.pause();
+
+        assertTrue(execution.getVersion() > before);
+        assertEquals("paused", execution.getSnapshot().getStatus());
+    }
+
+    @Test
+    public void completionIsPublishedAsOneSnapshot() {
+        execution.setCurrentStep("s1");
+        long before = execution.getVersion();
+        ExecutionSnapshot[] seen = new ExecutionSnapshot[1];
+        execution.setStateListener((changed, from, to) -> seen[0] = changed.getSnapshot());
+
+        execution.complete();
+
+        assertEquals(before + 1, execution.getVersion());
+        assertEquals("completed", seen[0].getStatus());
+        assertNull(seen[0].getCurrentStep());
+    }
+
+    @Test
+    public void listenerSeesEachTransitionOnce() {
+        WorkflowExecutionModel.StateListener listener = mock(WorkflowExecutionModel.StateListener.class);
+        execution.setStateListener(listener);
+
+        execution.pause();
+        execution.cancel("stopped");
+        execution.complete();
+
+        verify(listener).stateChanged(execution, WorkflowExecutionModel.State.RUNNING, WorkflowExecutionModel.State.PAUSED);
+        verify(listener).stateChanged(execution, WorkflowExecutionModel.State.PAUSED, WorkflowExecutionModel.State.CANCELLED);
+        verifyNoMoreInteractions(listener);
+    }
+
+    @Test
+    public void racingTransitionsHaveOneWinner() throws InterruptedException {
+        for (int round = 0; round < 200; round++) {
+            WorkflowExecutionModel raced = new WorkflowExecutionModel("e" + round, "wf");
+            AtomicInteger winners = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread completer = new Thread(() -> {
+                awaitQuietly(start);
+                if (raced.complete()) {
+                    winners.incrementAndGet();
+                }
+            });
+            Thread canceller = new Thread(() -> {
+                awaitQuietly(start);
+                if (raced.cancel("race")) {
+                    winners.incrementAndGet();
+                }
+            });
+            completer.start();
+            canceller.start();
+            start.countDown();
+            completer.join();
+            canceller.join();
+
+            assertEquals(1, winners.get());
+            assertTrue(raced.getState().isTerminal());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
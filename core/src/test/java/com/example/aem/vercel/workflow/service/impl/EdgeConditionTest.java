@@ -0,0 +1,115 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowEdgeModel;
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class EdgeConditionTest {
+
+    private final Map<String, Object> variables = new HashMap<>();
+
+    {
+        variables.put("score", 0.9);
+        variables.put("n", 3);
+        variables.put("s", "abc");
+        variables.put("flag", true);
+        variables.put("num", "42");
+        Map<String, Object> review = new HashMap<>();
+        review.put("score", 5);
+        review.put("tags", Collections.singletonList("x"));
+        variables.put("review", review);
+    }
+
+    @Test
+    public void comparesNumbersByValue() {
+        assertTrue(test("score > 0.8"));
+        assertTrue(test("n <= 3"));
+        assertTrue(test("n != 4"));
+        assertTrue(test("-1 < n"));
+        assertTrue(test("num == 42"));
+        assertTrue(test("num > 41.5"));
+        assertFalse(test("n < 3"));
+    }
+
+    @Test
+    public void comparesStrings() {
+        assertTrue(test("s == 'abc'"));
+        assertTrue(test("s < 'b'"));
+        assertTrue(test("\"a\\\"b\" == 'a\"b'"));
+        // No ordering between a string and a number
+        assertFalse(test("s > 1"));
+    }
+
+    @Test
+    public void combinesWithPrecedence() {
+        assertTrue(test("score >= 0.9 && n == 3"));
+        assertTrue(test("n < 3 || s == 'abc'"));
+        assertTrue(test("flag == true && (n > 5 || s != \"x\")"));
+        assertFalse(test("!(flag)"));
+        assertFalse(test("not flag or n != 3"));
+    }
+
+    @Test
+    public void readsNestedVariables() {
+        assertTrue(test("review.score >= 5 and review.tags"));
+        assertTrue(test("review.missing.deep == null"));
+        assertFalse(test("missing"));
+    }
+
+    @Test
+    public void rejectsInvalidExpressions() {
+        for (String expression : Arrays.asList("", "n >", "(n > 1", "n > 1 )", "'abc", "a.", "n = 1", "and")) {
+            assertThrows(expression, IllegalArgumentException.class, () -> EdgeCondition.compile(expression));
+        }
+    }
+
+    @Test
+    public void decisionHandlesFollowTheStepCondition() {
+        WorkflowStepModel decision = new WorkflowStepModel("check", "process", 0, 0);
+        decision.addData(EdgeCondition.CONDITION_PROPERTY, "n > 1");
+        WorkflowEdgeModel whenTrue = new WorkflowEdgeModel("yes", "check", "a");
+        whenTrue.setSourceHandle("true");
+        WorkflowEdgeModel whenFalse = new WorkflowEdgeModel("no", "check", "b");
+        whenFalse.setSourceHandle("false");
+
+        assertTrue(EdgeCondition.of(whenTrue, decision).test(variables));
+        assertFalse(EdgeCondition.of(whenFalse, decision).test(variables));
+    }
+
+    @Test
+    public void edgeWithoutConditionIsAlwaysFollowed() {
+        assertNull(EdgeCondition.of(new WorkflowEdgeModel("e", "a", "b"), null));
+    }
+
+    @Test
+    public void invalidEdgeConditionNamesTheEdge() {
+        WorkflowEdgeModel edge = new WorkflowEdgeModel("broken", "a", "b");
+        edge.addData(EdgeCondition.CONDITION_PROPERTY, "amount >");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> EdgeCondition.of(edge, null));
+        assertTrue(e.getMessage().startsWith("Invalid condition on edge broken"));
+    }
+
+    @Test
+    public void negationKeepsTheExpression() {
+        EdgeCondition condition = EdgeCondition.compile("n > 1").negate();
+
+        assertFalse(condition.test(variables));
+        assertEquals("!(n > 1)", condition.getExpression());
+    }
+
+    private boolean test(String expression) {
+        return EdgeCondition.compile(expression).test(variables);
+    }
+}
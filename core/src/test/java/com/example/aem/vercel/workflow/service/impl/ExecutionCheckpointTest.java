@@ -0,0 +1,88 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionCheckpointTest {
+
+    @Test
+    public void variablesKeepTheirTypesThroughJson() throws Exception {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("count", 3);
+        variables.put("total", 12_345_678_901L);
+        variables.put("ratio", 0.5);
+        variables.put("approved", true);
+        variables.put("order", Map.of("id", 7, "items", List.of("a", "b")));
+        ExecutionCheckpoint checkpoint = checkpoint("running", variables, 5);
+
+        Map<String, Object> parsed = ExecutionCheckpoint.variablesFromJson(checkpoint.variablesToJson());
+
+        assertEquals(variables, parsed);
+        assertEquals(Integer.valueOf(3), parsed.get("count"));
+        assertEquals(List.of("a", "b"), ((Map<?, ?>) parsed.get("order")).get("items"));
+    }
+
+    @Test
+    public void jsonValuesAreKeptAndOthersConverted() {
+        Map<String, Object> json = Map.of("order", Map.of("items", List.of("a", 1, 2.5, true)));
+
+        assertSame(json, ExecutionCheckpoint.toJsonValue(json));
+        assertEquals(List.of("bob"), ExecutionCheckpoint.toJsonValue(Set.of("bob")));
+        assertEquals(Map.of("1", "one"), ExecutionCheckpoint.toJsonValue(Map.of(1, "one")));
+        assertThrows(IllegalArgumentException.class, () -> ExecutionCheckpoint.toJsonValue(new Object()));
+    }
+
+    @Test
+    public void rebuildsTheExecution() {
+        ExecutionCheckpoint checkpoint = checkpoint("paused", Map.of("count", 3), 42);
+
+        WorkflowExecutionModel execution = checkpoint.toExecution();
+
+        assertTrue(execution.isPaused());
+        assertEquals("s2", execution.getCurrentStep());
+        assertEquals(3, execution.getVariable("count"));
+        assertEquals(1, execution.getSubWorkflowDepth());
+        assertEquals("alice", execution.getOwner());
+        assertEquals("HIGH", execution.getPriority());
+        assertEquals(42, execution.getVersion());
+        assertTrue(checkpoint.isInFlight());
+    }
+
+    @Test
+    public void rebuildsAFinishedExecutionWithItsEndTime() {
+        ExecutionCheckpoint checkpoint = new ExecutionCheckpoint("e1", "wf", "failed", "s2", 1000L, 2000L, Map.of(), 1L, 0,
+            "alice", "NORMAL", List.of("s1"), List.of(), List.of(), 9, System.currentTimeMillis());
+
+        WorkflowExecutionModel execution = checkpoint.toExecution();
+
+        assertTrue(execution.isFailed());
+        assertEquals(2000L, execution.getEndTime());
+        assertEquals(1000L, execution.getDuration());
+    }
+
+    @Test
+    public void newerCheckpointIsTheOneWithTheHigherSequence() {
+        ExecutionCheckpoint older = checkpoint("running", Map.of(), 7);
+        ExecutionCheckpoint newer = checkpoint("completed", Map.of(), 8);
+
+        assertEquals(newer, ExecutionCheckpoint.newer(newer, older));
+        assertEquals(newer, ExecutionCheckpoint.newer(older, newer));
+        assertFalse(newer.isInFlight());
+    }
+
+    private static ExecutionCheckpoint checkpoint(String status, Map<String, Object> variables, long sequence) {
+        return new ExecutionCheckpoint("e1", "wf", status, "s2", 1000L, 0L, variables, 1L, 1, "alice",
+            "HIGH", List.of("s1"), List.of(), List.of(), sequence, System.currentTimeMillis());
+    }
+}
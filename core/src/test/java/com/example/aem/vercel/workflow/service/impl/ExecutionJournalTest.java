@@ -0,0 +1,180 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionJournalTest {
+
+    private final List<ExecutionCheckpoint> stored = new CopyOnWriteArrayList<>();
+    private final List<ExecutionJournal> journals = new ArrayList<>();
+    private final AtomicInteger storeCalls = new AtomicInteger();
+    private Path directory;
+    private volatile boolean storeFails;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("workflow-journal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journals.forEach(ExecutionJournal::close);
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentAppendsBecomeDurable() throws Exception {
+        ExecutionJournal journal = open();
+        List<CompletableFuture<Void>> appends = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            String executionId = "e" + t;
+            Thread thread = new Thread(() -> {
+                for (int sequence = 1; sequence <= 500; sequence++) {
+                    appends.add(journal.append(checkpoint(executionId, sequence, "running")));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        journal.close();
+
+        ExecutionJournal reopened = reopen();
+        assertEquals(4, reopened.getUncompactedCheckpoints().size());
+        for (int t = 0; t < 4; t++) {
+            assertEquals(500, reopened.getUncompacted("e" + t).getSequence());
+        }
+    }
+
+    @Test
+    public void checkpointWithTheHighestSequenceWins() throws Exception {
+        ExecutionJournal journal = open();
+        journal.append(checkpoint("e1", 5, "completed")).get(10, TimeUnit.SECONDS);
+        // Taken earlier on another thread, appended later
+        journal.append(checkpoint("e1", 3, "running")).get(10, TimeUnit.SECONDS);
+
+        assertEquals("completed", journal.getUncompacted("e1").getStatus());
+        journal.close();
+        assertEquals("completed", reopen().getUncompacted("e1").getStatus());
+    }
+
+    @Test
+    public void unwritableCheckpointFailsOnlyItsOwnAppend() throws Exception {
+        ExecutionJournal journal = open();
+        ExecutionCheckpoint unwritable = new ExecutionCheckpoint("bad", "wf", "running", null, 0L, 0L,
+            Map.of("value", new Object()), 1L, 0, null, null, List.of(), List.of(), List.of(), 1L, 0L);
+
+        CompletableFuture<Void> failed = journal.append(unwritable);
+        CompletableFuture<Void> committed = journal.append(checkpoint("e1", 1, "running"));
+
+        committed.get(10, TimeUnit.SECONDS);
+        assertThrows(ExecutionException.class, () -> failed.get(10, TimeUnit.SECONDS));
+        assertEquals(1, journal.getUncompacted("e1").getSequence());
+        assertNull(journal.getUncompacted("bad"));
+    }
+
+    @Test
+    public void compactionStoresTheNewestCheckpointsAndDeletesSegments() throws Exception {
+        ExecutionJournal journal = open();
+        journal.append(checkpoint("e1", 1, "running"));
+        journal.append(checkpoint("e1", 2, "completed"));
+        journal.append(checkpoint("e2", 1, "running")).get(10, TimeUnit.SECONDS);
+
+        journal.requestCompaction();
+        awaitCondition(() -> stored.size() == 2 && journal.getUncompactedCheckpoints().isEmpty());
+
+        Map<String, String> statuses = stored.stream()
+            .collect(Collectors.toMap(ExecutionCheckpoint::getExecutionId, ExecutionCheckpoint::getStatus));
+        assertEquals(Map.of("e1", "completed", "e2", "running"), statuses);
+        awaitCondition(() -> segments().size() == 1);
+    }
+
+    @Test
+    public void failedCompactionKeepsTheCheckpoints() throws Exception {
+        storeFails = true;
+        ExecutionJournal journal = open();
+        journal.append(checkpoint("e1", 1, "running")).get(10, TimeUnit.SECONDS);
+
+        journal.requestCompaction();
+        awaitCondition(() -> storeCalls.get() == 1);
+        journal.close();
+
+        assertEquals(1, journal.getUncompacted("e1").getSequence());
+        assertEquals(2, segments().size());
+        assertEquals(1, reopen().getUncompacted("e1").getSequence());
+    }
+
+    private ExecutionJournal open() throws IOException {
+        ExecutionJournal journal = new ExecutionJournal(directory, 1, TimeUnit.MINUTES.toMillis(10), this::store);
+        journals.add(journal);
+        return journal;
+    }
+
+    /**
+     * Open the journal again with compaction failing, so replayed checkpoints stay uncompacted.
+     */
+    private ExecutionJournal reopen() throws IOException {
+        storeFails = true;
+        return open();
+    }
+
+    private void store(Collection<ExecutionCheckpoint> checkpoints) {
+        storeCalls.incrementAndGet();
+        if (storeFails) {
+            throw new IllegalStateException("Repository unavailable");
+        }
+        stored.addAll(checkpoints);
+    }
+
+    private List<Path> segments() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> ExecutionJournal.parseSegmentSequence(file) >= 0).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ExecutionCheckpoint checkpoint(String executionId, long sequence, String status) {
+        return new ExecutionCheckpoint(executionId, "wf", status, null, 0L, 0L, Map.of("sequence", sequence), 1L, 0,
+            "alice", "NORMAL", List.of(), List.of(), List.of(), sequence, System.currentTimeMillis());
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out waiting", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.ExecutionLog;
+import com.example.aem.vercel.workflow.model.WorkflowLogEntryModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionLogSpillTest {
+
+    private Path directory;
+    private ExecutionLogSpill spill;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("workflow-logs");
+        spill = new ExecutionLogSpill(directory);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        spill.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void onlyRecordsLeavingTheBufferAreSpilled() {
+        ExecutionLog log = new ExecutionLog(4, ExecutionLog.DEBUG, null, spill.forExecution("e1"));
+        for (int i = 0; i < 10; i++) {
+            log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "entry {}", i);
+        }
+
+        List<String> spilled = messages(spill.read("e1", Long.MAX_VALUE, 100));
+        assertEquals(List.of("entry 0", "entry 1", "entry 2", "entry 3", "entry 4", "entry 5"), spilled);
+        assertEquals(List.of("entry 3", "entry 4", "entry 5"), messages(spill.read("e1", 6, 3)));
+        assertTrue(spill.read("e2", Long.MAX_VALUE, 100).isEmpty());
+    }
+
+    @Test
+    public void spilledEntriesAreFormattedWithTheirStepAndLevel() {
+        ExecutionLog log = new ExecutionLog(1, ExecutionLog.DEBUG, null, spill.forExecution("e1"));
+        log.append(ExecutionLog.WARN, log.stepIndexOf("approve"), "Step {} took {} ms", "approve", 42);
+        log.append(new WorkflowLogEntryModel(1000L, "ERROR", "restored"));
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "latest");
+
+        List<WorkflowLogEntryModel> spilled = spill.read("e1", Long.MAX_VALUE, 100);
+        assertEquals(2, spilled.size());
+        assertEquals("Step approve took 42 ms", spilled.get(0).getMessage());
+        assertEquals("WARN", spilled.get(0).getLevel());
+        assertEquals("approve", spilled.get(0).getStepId());
+        assertEquals("restored", spilled.get(1).getMessage());
+        assertEquals(1000L, spilled.get(1).getTimestamp());
+    }
+
+    @Test
+    public void discardDeletesTheSegmentAfterQueuedEntries() {
+        ExecutionLog log = new ExecutionLog(1, ExecutionLog.DEBUG, null, spill.forExecution("e1"));
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "first");
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "second");
+
+        spill.discard("e1");
+
+        assertTrue(spill.read("e1", Long.MAX_VALUE, 100).isEmpty());
+        assertFalse(Files.exists(directory.resolve("e1.log")));
+    }
+
+    @Test
+    public void segmentsOfAPreviousRunAreDeletedOnOpen() throws IOException {
+        ExecutionLog log = new ExecutionLog(1, ExecutionLog.DEBUG, null, spill.forExecution("e1"));
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "first");
+        log.append(ExecutionLog.INFO, ExecutionLog.NO_STEP, "second");
+        assertEquals(1, spill.read("e1", Long.MAX_VALUE, 100).size());
+        spill.close();
+
+        spill = new ExecutionLogSpill(directory);
+
+        assertTrue(spill.read("e1", Long.MAX_VALUE, 100).isEmpty());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private static List<String> messages(List<WorkflowLogEntryModel> entries) {
+        return entries.stream().map(WorkflowLogEntryModel::getMessage).collect(Collectors.toList());
+    }
+}
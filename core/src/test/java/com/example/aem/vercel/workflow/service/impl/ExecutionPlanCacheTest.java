@@ -0,0 +1,72 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowDefinitionModel;
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ExecutionPlanCacheTest {
+
+    private final ExecutionPlanCache cache = new ExecutionPlanCache(2, new StepExecutorRegistry());
+
+    @Test
+    public void sameVersionIsCompiledOnce() {
+        WorkflowDefinitionModel workflow = workflow("wf", 1);
+
+        ExecutionPlan plan = cache.get(workflow, cache.generation("wf"));
+
+        assertSame(plan, cache.get(workflow, cache.generation("wf")));
+        assertSame(plan, cache.getLatest("wf"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void newerVersionBecomesTheLatest() {
+        ExecutionPlan first = cache.get(workflow("wf", 1), cache.generation("wf"));
+        ExecutionPlan second = cache.get(workflow("wf", 2), cache.generation("wf"));
+
+        assertNotSame(first, second);
+        assertSame(second, cache.getLatest("wf"));
+        // An older version requested later does not replace the latest
+        cache.get(workflow("wf", 1), cache.generation("wf"));
+        assertSame(second, cache.getLatest("wf"));
+    }
+
+    @Test
+    public void planLoadedBeforeAnInvalidationIsNotPublished() {
+        long generation = cache.generation("wf");
+        cache.get(workflow("wf", 1), generation);
+
+        cache.invalidate("wf");
+        assertNull(cache.getLatest("wf"));
+        assertEquals(0, cache.size());
+
+        // A start that read the definition before the update finishes compiling afterwards
+        cache.get(workflow("wf", 1), generation);
+        assertNull(cache.getLatest("wf"));
+    }
+
+    @Test
+    public void leastRecentlyUsedPlanIsEvicted() {
+        cache.get(workflow("a", 1), cache.generation("a"));
+        cache.get(workflow("b", 1), cache.generation("b"));
+        cache.get(workflow("a", 1), cache.generation("a"));
+        cache.get(workflow("c", 1), cache.generation("c"));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.getLatest("b"));
+        assertEquals("a", cache.getLatest("a").getWorkflowId());
+    }
+
+    private static WorkflowDefinitionModel workflow(String id, long version) {
+        WorkflowDefinitionModel workflow = new WorkflowDefinitionModel(id, id);
+        workflow.addStep(new WorkflowStepModel("start", "process", 0, 0));
+        workflow.setUpdatedAt(version);
+        return workflow;
+    }
+}
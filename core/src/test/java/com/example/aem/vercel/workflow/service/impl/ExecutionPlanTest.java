@@ -0,0 +1,97 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowDefinitionModel;
+import com.example.aem.vercel.workflow.model.WorkflowEdgeModel;
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionPlanTest {
+
+    private final WorkflowDefinitionModel workflow = new WorkflowDefinitionModel("test", "Test");
+
+    @Test
+    public void indexesStepsAndSuccessorsInDefinitionOrder() {
+        steps("start", "a", "b", "join");
+        edge("start", "a");
+        edge("start", "b");
+        edge("a", "join");
+        edge("b", "join");
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+
+        assertEquals(4, plan.getStepCount());
+        assertEquals(0, plan.getStartIndex());
+        assertEquals(2, plan.getOutDegree(0));
+        assertEquals("a", plan.getStepId(plan.getSuccessor(0, 0)));
+        assertEquals("b", plan.getStepId(plan.getSuccessor(0, 1)));
+        assertEquals("start-b", plan.getEdgeId(0, 1));
+        assertArrayEquals(new int[] { 0, 1, 1, 2 }, plan.newJoinCounters());
+    }
+
+    @Test
+    public void startIsTheFirstStepNothingLeadsTo() {
+        steps("b", "a");
+        edge("a", "b");
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+
+        assertEquals("a", plan.getStepId(plan.getStartIndex()));
+    }
+
+    @Test
+    public void backEdgesAreNotCountedAtJoins() {
+        steps("start", "work", "check", "end", "orphan");
+        edge("start", "work");
+        edge("work", "check");
+        edge("check", "work");
+        edge("check", "end");
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+        int check = plan.indexOf("check");
+
+        assertTrue(plan.isBackEdge(check, 0));
+        assertFalse(plan.isBackEdge(check, 1));
+        assertEquals(1, plan.newJoinCounters()[plan.indexOf("work")]);
+        assertEquals(4, plan.getReachableCount());
+        assertFalse(plan.isReachable(plan.indexOf("orphan")));
+    }
+
+    @Test
+    public void edgesToUnknownStepsAreIgnored() {
+        steps("start", "end");
+        edge("start", "missing");
+        edge("start", "end");
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+
+        assertEquals(1, plan.getOutDegree(0));
+        assertEquals("end", plan.getStepId(plan.getSuccessor(0, 0)));
+    }
+
+    @Test
+    public void delaysAreReadFromStepData() {
+        steps("start", "wait", "bad");
+        workflow.getStep("wait").addData("delayMs", "1500");
+        workflow.getStep("bad").addData("delayMs", "soon");
+
+        ExecutionPlan plan = ExecutionPlan.compile(workflow);
+
+        assertEquals(1500, plan.getDelayMillis(plan.indexOf("wait")));
+        assertEquals(0, plan.getDelayMillis(plan.indexOf("bad")));
+    }
+
+    private void steps(String... ids) {
+        for (String id : ids) {
+            workflow.addStep(new WorkflowStepModel(id, "process", 0, 0));
+        }
+    }
+
+    private void edge(String source, String target) {
+        workflow.addEdge(new WorkflowEdgeModel(source + "-" + target, source, target));
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowDefinitionModel;
+import com.example.aem.vercel.workflow.model.WorkflowEdgeModel;
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.Priority;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionRunTest {
+
+    private final WorkflowDefinitionModel workflow = new WorkflowDefinitionModel("test", "Test");
+
+    @Test
+    public void joinWaitsForEveryBranch() {
+        steps("start", "a", "b", "join");
+        edge("start", "a");
+        edge("start", "b");
+        edge("a", "join");
+        edge("b", "join");
+        ExecutionRun run = newRun();
+
+        assertEquals(Arrays.asList("a", "b"), complete(run, "start", Collections.emptyMap()));
+        assertEquals(Collections.emptyList(), complete(run, "a", Collections.emptyMap()));
+        assertEquals(Collections.singletonList("join"), complete(run, "b", Collections.emptyMap()));
+        assertTrue(run.hasRemainingSteps());
+        assertTrue(run.completeStep(index(run, "join"), Collections.emptyMap(), step -> { }));
+        assertFalse(run.hasRemainingSteps());
+    }
+
+    @Test
+    public void untakenBranchIsSkippedDownToTheJoin() {
+        steps("start", "a", "a2", "b", "join", "end");
+        edge("start", "a").addData("condition", "amount > 100");
+        edge("start", "b");
+        edge("a", "a2");
+        edge("a2", "join");
+        edge("b", "join");
+        edge("join", "end");
+        ExecutionRun run = newRun();
+        Map<String, Object> variables = Collections.singletonMap("amount", 50);
+
+        assertEquals(Collections.singletonList("b"), complete(run, "start", variables));
+        assertEquals(Arrays.asList("start", "a", "a2"), run.getCompletedStepIds());
+        assertEquals(Arrays.asList("a", "a2"), run.getSkippedStepIds());
+        assertEquals(Collections.singletonList("start-a"), run.getUntakenEdgeIds());
+
+        // One taken arrival is enough for the join to run
+        assertEquals(Collections.singletonList("join"), complete(run, "b", variables));
+        assertEquals(Collections.singletonList("end"), complete(run, "join", variables));
+        assertTrue(run.completeStep(index(run, "end"), variables, step -> { }));
+    }
+
+    @Test
+    public void skippingTheLastStepsCompletesTheRun() {
+        steps("start", "a", "end");
+        edge("start", "a").addData("condition", "false");
+        edge("a", "end");
+        ExecutionRun run = newRun();
+        List<String> ready = new ArrayList<>();
+
+        assertTrue(run.completeStep(index(run, "start"), Collections.emptyMap(), step -> ready.add(run.getPlan().getStepId(step))));
+        assertEquals(Collections.emptyList(), ready);
+        assertEquals(Arrays.asList("a", "end"), run.getSkippedStepIds());
+    }
+
+    @Test
+    public void backEdgesAreNotWaitedFor() {
+        steps("start", "a");
+        edge("start", "a");
+        edge("a", "start");
+        ExecutionRun run = newRun();
+
+        assertEquals(Collections.singletonList("a"), complete(run, "start", Collections.emptyMap()));
+        assertTrue(run.completeStep(index(run, "a"), Collections.emptyMap(), step -> { }));
+    }
+
+    @Test
+    public void restoreReplaysRecordedOutcomesWithoutTestingConditions() {
+        steps("start", "a", "b", "join");
+        edge("start", "a").addData("condition", "amount > 100");
+        edge("start", "b");
+        edge("a", "join");
+        edge("b", "join");
+        ExecutionRun run = newRun();
+        complete(run, "start", Collections.singletonMap("amount", 50));
+
+        // The variables changed after the checkpoint; the recorded outcome still decides
+        WorkflowExecutionModel execution = new WorkflowExecutionModel("e1", "test");
+        execution.setVariable("amount", 500);
+        ExecutionRun restored = ExecutionRun.restore(execution, run.getPlan(), run.getCompletedStepIds(),
+            run.getSkippedStepIds(), run.getUntakenEdgeIds());
+
+        assertArrayEquals(new int[] { index(run, "b") }, restored.getReadySteps());
+        assertEquals(Collections.singletonList("a"), restored.getSkippedStepIds());
+        assertEquals(Collections.singletonList("join"), complete(restored, "b", execution.getVariables()));
+    }
+
+    @Test
+    public void restoreFromCursorMatchesTheRun() {
+        steps("start", "a", "b", "join");
+        edge("start", "a");
+        edge("start", "b").addData("condition", "false");
+        edge("a", "join");
+        edge("b", "join");
+        ExecutionRun run = newRun();
+        complete(run, "start", Collections.emptyMap());
+
+        ExecutionRun restored = ExecutionRun.restore(run.toCursor());
+
+        assertArrayEquals(run.getReadySteps(), restored.getReadySteps());
+        assertEquals(run.getCompletedStepIds(), restored.getCompletedStepIds());
+        assertEquals(run.getSkippedStepIds(), restored.getSkippedStepIds());
+        assertEquals(run.getUntakenEdgeIds(), restored.getUntakenEdgeIds());
+    }
+
+    @Test
+    public void ownerIsTheEngineFieldNotTheStartedByVariable() {
+        steps("start");
+        WorkflowExecutionModel execution = new WorkflowExecutionModel("e1", "test");
+        execution.setOwner("alice");
+        execution.setVariable("startedBy", "mallory");
+
+        ExecutionRun run = new ExecutionRun(execution, ExecutionPlan.compile(workflow));
+
+        assertEquals("alice", run.getOwner());
+    }
+
+    @Test
+    public void priorityIsTheEngineFieldNotTheVariable() {
+        steps("start");
+        WorkflowExecutionModel execution = new WorkflowExecutionModel("e1", "test");
+        execution.setPriority("LOW");
+        ExecutionRun run = new ExecutionRun(execution, ExecutionPlan.compile(workflow));
+
+        // A parked run resumes with the priority it was started with
+        execution.setVariable("priority", "URGENT");
+        ExecutionRun resumed = ExecutionRun.restore(run.toCursor());
+
+        assertEquals(Priority.LOW, resumed.getPriority());
+    }
+
+    private void steps(String... ids) {
+        for (String id : ids) {
+            workflow.addStep(new WorkflowStepModel(id, "process", 0, 0));
+        }
+    }
+
+    private WorkflowEdgeModel edge(String source, String target) {
+        WorkflowEdgeModel edge = new WorkflowEdgeModel(source + "-" + target, source, target);
+        workflow.addEdge(edge);
+        return edge;
+    }
+
+    private ExecutionRun newRun() {
+        return new ExecutionRun(new WorkflowExecutionModel("e1", "test"), ExecutionPlan.compile(workflow));
+    }
+
+    private static int index(ExecutionRun run, String stepId) {
+        return run.getPlan().indexOf(stepId);
+    }
+
+    private static List<String> complete(ExecutionRun run, String stepId, Map<String, Object> variables) {
+        List<String> ready = new ArrayList<>();
+        run.completeStep(index(run, stepId), variables, step -> ready.add(run.getPlan().getStepId(step)));
+        return ready;
+    }
+}
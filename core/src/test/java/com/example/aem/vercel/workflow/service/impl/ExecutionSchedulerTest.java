@@ -0,0 +1,212 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.Priority;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.SchedulerStatistics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExecutionSchedulerTest {
+
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch blocked = new CountDownLatch(1);
+    private ExecutionScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        blocked.countDown();
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void admitsUpToTheRunningSlotsPlusTheQueue() {
+        scheduler = new ExecutionScheduler(2, 1, 2, 0, 0, Map.of(), Map.of(), 0);
+        holdTheSlot();
+        assertTrue(scheduler.submit("wf", "alice", Priority.NORMAL, () -> { }));
+        assertTrue(scheduler.submit("wf", "alice", Priority.NORMAL, () -> { }));
+
+        assertFalse(scheduler.submit("wf", "alice", Priority.NORMAL, () -> { }));
+        SchedulerStatistics statistics = scheduler.getStatistics();
+        assertEquals(1, statistics.getRunningExecutions());
+        assertEquals(2, statistics.getQueuedExecutions());
+        assertEquals(3, statistics.getAdmittedExecutions());
+        assertEquals(1, statistics.getRejectedExecutions());
+    }
+
+    @Test
+    public void batchIsAdmittedAsFarAsItFits() {
+        scheduler = new ExecutionScheduler(2, 1, 2, 0, 0, Map.of(), Map.of(), 0);
+        holdTheSlot();
+
+        assertEquals(2, scheduler.reserve(5));
+        assertEquals(0, scheduler.reserve(1));
+        assertEquals(4, scheduler.getStatistics().getRejectedExecutions());
+    }
+
+    @Test
+    public void waitingSubmitIsAdmittedWhenASlotFrees() throws InterruptedException {
+        scheduler = new ExecutionScheduler(2, 1, 0, 0, 0, Map.of(), Map.of(), 0);
+        holdTheSlot();
+        assertFalse(scheduler.submit("wf", "alice", Priority.NORMAL, () -> { }, 20));
+
+        Thread releaser = new Thread(() -> {
+            sleep(100);
+            blocked.countDown();
+        });
+        releaser.start();
+        submit("alice", Priority.NORMAL, 10_000);
+        releaser.join();
+
+        awaitStarted(1);
+        assertEquals(List.of("alice"), started);
+    }
+
+    @Test
+    public void tenantsShareSlotsInTurn() throws InterruptedException {
+        scheduler = new ExecutionScheduler(2, 1, 100, 0, 0, Map.of(), Map.of(), 0);
+        holdTheSlot();
+        for (int i = 0; i < 4; i++) {
+            submit("bob", Priority.NORMAL);
+        }
+        submit("alice", Priority.NORMAL);
+        submit("alice", Priority.NORMAL);
+
+        assertEquals(List.of("bob", "alice", "bob", "alice", "bob", "bob"), runQueued(6));
+    }
+
+    @Test
+    public void weightedTenantGetsMoreSlots() throws InterruptedException {
+        scheduler = new ExecutionScheduler(2, 1, 100, 0, 0, Map.of("alice", 2.0), Map.of(), 0);
+        holdTheSlot();
+        for (int i = 0; i < 3; i++) {
+            submit("bob", Priority.NORMAL);
+        }
+        for (int i = 0; i < 4; i++) {
+            submit("alice", Priority.NORMAL);
+        }
+
+        assertEquals(List.of("bob", "alice", "alice", "bob", "alice", "alice", "bob"), runQueued(7));
+    }
+
+    @Test
+    public void userCapHoldsBackOnlyThatUser() throws InterruptedException {
+        scheduler = new ExecutionScheduler(2, 2, 100, 1, 0, Map.of(), Map.of(), 0);
+        holdTheSlot();
+        submit("blocker", Priority.NORMAL);
+        submit("alice", Priority.NORMAL);
+
+        // The blocker's second execution waits for its first, so alice's runs beside it
+        awaitStarted(1);
+        assertEquals(List.of("alice"), started);
+        assertEquals(List.of("alice", "blocker"), runQueued(2));
+    }
+
+    @Test
+    public void higherPriorityRunsFirst() throws InterruptedException {
+        scheduler = new ExecutionScheduler(2, 1, 100, 0, 0, Map.of(), Map.of(), 0);
+        holdTheSlot();
+        submit("low", Priority.LOW);
+        submit("normal", Priority.NORMAL);
+        submit("urgent", Priority.URGENT);
+
+        assertEquals(List.of("urgent", "normal", "low"), runQueued(3));
+    }
+
+    @Test
+    public void waitingRaisesThePriority() throws InterruptedException {
+        scheduler = new ExecutionScheduler(2, 1, 100, 0, 0, Map.of(), Map.of(), 50);
+        holdTheSlot();
+        submit("low", Priority.LOW);
+        // Five aging intervals lift the low execution above a fresh urgent one
+        Thread.sleep(250);
+        submit("urgent", Priority.URGENT);
+
+        assertEquals(List.of("low", "urgent"), runQueued(2));
+    }
+
+    @Test
+    public void retryAfterFallsBackToTheDefaultUntilExecutionsFinish() throws InterruptedException {
+        scheduler = new ExecutionScheduler(2, 1, 0, 0, 0, Map.of(), Map.of(), 0);
+
+        assertEquals(5000, scheduler.estimateRetryAfterMillis(5000));
+        assertEquals(1000, scheduler.estimateRetryAfterMillis(0));
+
+        submit("alice", Priority.NORMAL);
+        awaitStarted(1);
+        awaitIdle();
+        holdTheSlot();
+        // One execution finished within the ten second window: about ten seconds per queued execution
+        long retryAfter = scheduler.estimateRetryAfterMillis(5000);
+        assertTrue("Retry after " + retryAfter, retryAfter >= 10_000 && retryAfter < 11_000);
+    }
+
+    /**
+     * Occupy one slot until the test releases it, so later submissions queue up.
+     */
+    private void holdTheSlot() {
+        assertTrue(scheduler.submit("wf", "blocker", Priority.NORMAL, () -> {
+            try {
+                blocked.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler.release("wf", "blocker", Priority.NORMAL);
+        }));
+    }
+
+    private void submit(String userId, Priority priority) {
+        submit(userId, priority, 0);
+    }
+
+    private void submit(String userId, Priority priority, long waitMillis) {
+        assertTrue(scheduler.submit("wf", userId, priority, () -> {
+            started.add(userId);
+            scheduler.release("wf", userId, priority);
+        }, waitMillis));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Free the held slot and wait for the queued executions to run one after another.
+     */
+    private List<String> runQueued(int count) throws InterruptedException {
+        blocked.countDown();
+        awaitStarted(count);
+        return new ArrayList<>(started);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (scheduler.getStatistics().getRunningExecutions() > 0) {
+            assertTrue("Timed out waiting for running executions", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitStarted(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (started.size() < count) {
+            assertTrue("Timed out waiting for queued executions", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class IdempotencyTableTest {
+
+    @Test
+    public void retryJoinsTheFirstClaim() {
+        IdempotencyTable table = new IdempotencyTable(TimeUnit.MINUTES.toMillis(1), 10);
+        IdempotencyTable.Claim first = new IdempotencyTable.Claim("wf");
+
+        assertSame(first, table.claim("key", first));
+        IdempotencyTable.Claim retry = table.claim("key", new IdempotencyTable.Claim("wf"));
+        assertSame(first, retry);
+        assertTrue(retry.isPending());
+
+        first.complete(new WorkflowExecutionModel("e1", "wf"), false);
+        assertEquals("e1", retry.awaitExecutionId(100));
+        assertNull(retry.getExecution());
+    }
+
+    @Test
+    public void completedClaimCanKeepTheExecution() {
+        IdempotencyTable table = new IdempotencyTable(TimeUnit.MINUTES.toMillis(1), 10);
+        IdempotencyTable.Claim claim = table.claim("key", new IdempotencyTable.Claim("wf"));
+        WorkflowExecutionModel execution = new WorkflowExecutionModel("e1", "wf");
+
+        claim.complete(execution, true);
+
+        assertSame(execution, table.claim("key", new IdempotencyTable.Claim("wf")).getExecution());
+    }
+
+    @Test
+    public void abandonedClaimLetsARetryStart() {
+        IdempotencyTable table = new IdempotencyTable(TimeUnit.MINUTES.toMillis(1), 10);
+        IdempotencyTable.Claim failed = table.claim("key", new IdempotencyTable.Claim("wf"));
+
+        table.abandon(failed, new IllegalArgumentException("Workflow not found: wf"));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> failed.awaitExecutionId(100));
+        assertEquals("Workflow not found: wf", e.getMessage());
+        IdempotencyTable.Claim retry = new IdempotencyTable.Claim("wf");
+        assertSame(retry, table.claim("key", retry));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void pendingStartTimesOut() {
+        IdempotencyTable table = new IdempotencyTable(TimeUnit.MINUTES.toMillis(1), 10);
+        IdempotencyTable.Claim claim = table.claim("key", new IdempotencyTable.Claim("wf"));
+
+        assertThrows(IllegalStateException.class, () -> claim.awaitExecutionId(1));
+    }
+
+    @Test
+    public void oldestClaimsAreEvictedOverTheBound() {
+        IdempotencyTable table = new IdempotencyTable(TimeUnit.MINUTES.toMillis(1), 3);
+        IdempotencyTable.Claim oldest = table.claim("k0", new IdempotencyTable.Claim("wf"));
+        for (int i = 1; i < 5; i++) {
+            table.claim("k" + i, new IdempotencyTable.Claim("wf"));
+        }
+
+        assertEquals(3, table.size());
+        assertNotSame(oldest, table.claim("k0", new IdempotencyTable.Claim("wf")));
+    }
+
+    @Test
+    public void abandonedClaimsDoNotCountTowardsTheBound() {
+        IdempotencyTable table = new IdempotencyTable(TimeUnit.MINUTES.toMillis(1), 2);
+        IdempotencyTable.Claim first = table.claim("a", new IdempotencyTable.Claim("wf"));
+        for (int i = 0; i < 10; i++) {
+            table.abandon(table.claim("failed" + i, new IdempotencyTable.Claim("wf")), new IllegalStateException());
+        }
+        IdempotencyTable.Claim second = table.claim("b", new IdempotencyTable.Claim("wf"));
+
+        assertSame(first, table.claim("a", new IdempotencyTable.Claim("wf")));
+        assertSame(second, table.claim("b", new IdempotencyTable.Claim("wf")));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void expiredClaimIsReplaced() throws InterruptedException {
+        IdempotencyTable table = new IdempotencyTable(1, 2);
+        table.claim("a", new IdempotencyTable.Claim("wf"));
+        Thread.sleep(5);
+
+        IdempotencyTable.Claim replacement = new IdempotencyTable.Claim("wf");
+        assertSame(replacement, table.claim("a", replacement));
+        assertEquals(1, table.size());
+    }
+}
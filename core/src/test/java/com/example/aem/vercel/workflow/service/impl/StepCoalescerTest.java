@@ -0,0 +1,90 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class StepCoalescerTest {
+
+    private final StepCoalescer coalescer = new StepCoalescer();
+
+    @Test
+    public void identicalInvocationsShareTheLeadersResult() throws Exception {
+        StepCoalescer.Claim leader = coalescer.claim("aiStep", "prompt", "e1");
+        StepCoalescer.Claim follower = coalescer.claim("aiStep", "prompt", "e2");
+        CompletableFuture<Map<String, Object>> invocation = new CompletableFuture<>();
+
+        assertTrue(leader.isLeader());
+        assertFalse(follower.isLeader());
+        assertEquals("e1", follower.getLeaderExecutionId());
+
+        leader.run(() -> invocation);
+        assertFalse(follower.getResult().toCompletableFuture().isDone());
+        Map<String, Object> result = Collections.singletonMap("out", "text");
+        invocation.complete(result);
+
+        assertSame(result, follower.getResult().toCompletableFuture().get());
+        assertSame(result, leader.getResult().toCompletableFuture().get());
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void differentInputsOrStepTypesRunSeparately() {
+        assertTrue(coalescer.claim("aiStep", "a", "e1").isLeader());
+        assertTrue(coalescer.claim("aiStep", "b", "e2").isLeader());
+        assertTrue(coalescer.claim("otherStep", "a", "e3").isLeader());
+        assertEquals(3, coalescer.size());
+    }
+
+    @Test
+    public void finishedInvocationIsNotCached() {
+        StepCoalescer.Claim first = coalescer.claim("aiStep", "prompt", "e1");
+        first.run(() -> CompletableFuture.completedFuture(Collections.emptyMap()));
+
+        assertTrue(coalescer.claim("aiStep", "prompt", "e2").isLeader());
+    }
+
+    @Test
+    public void failureReachesEveryClaim() {
+        StepCoalescer.Claim leader = coalescer.claim("aiStep", "prompt", "e1");
+        StepCoalescer.Claim follower = coalescer.claim("aiStep", "prompt", "e2");
+        CompletableFuture<Map<String, Object>> invocation = new CompletableFuture<>();
+        leader.run(() -> invocation);
+
+        invocation.completeExceptionally(new IllegalStateException("provider down"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> follower.getResult().toCompletableFuture().get());
+        assertEquals("provider down", e.getCause().getMessage());
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void invocationThatThrowsReleasesTheFollowers() {
+        StepCoalescer.Claim leader = coalescer.claim("aiStep", "prompt", "e1");
+        StepCoalescer.Claim follower = coalescer.claim("aiStep", "prompt", "e2");
+
+        assertThrows(IllegalStateException.class, () -> leader.run(() -> null));
+
+        assertTrue(follower.getResult().toCompletableFuture().isCompletedExceptionally());
+        assertEquals(0, coalescer.size());
+    }
+
+    @Test
+    public void onlyTheLeaderRuns() {
+        coalescer.claim("aiStep", "prompt", "e1");
+        StepCoalescer.Claim follower = coalescer.claim("aiStep", "prompt", "e2");
+        CompletionStage<Map<String, Object>> never = new CompletableFuture<>();
+
+        assertThrows(IllegalStateException.class, () -> follower.run(() -> never));
+    }
+}
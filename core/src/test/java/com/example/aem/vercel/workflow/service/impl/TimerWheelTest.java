@@ -0,0 +1,80 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    // A small wheel, so deadlines of a few hundred milliseconds already cascade from upper levels
+    private final TimerWheel timer = new TimerWheel("test-timer", 1, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void stopTimer() {
+        timer.stop();
+    }
+
+    @Test
+    public void runsTaskNoEarlierThanItsDelay() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        TimerWheel.Timeout timeout = timer.schedule(fired::countDown, 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void runsTasksBeyondTheFirstLevel() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(3);
+        long start = System.nanoTime();
+        timer.schedule(fired::countDown, 20, TimeUnit.MILLISECONDS);
+        timer.schedule(fired::countDown, 150, TimeUnit.MILLISECONDS);
+        timer.schedule(fired::countDown, 600, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(600));
+    }
+
+    @Test
+    public void cancelledTaskNeverRuns() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout cancelled = timer.schedule(runs::incrementAndGet, 30, TimeUnit.MILLISECONDS);
+        CountDownLatch later = new CountDownLatch(1);
+        timer.schedule(later::countDown, 100, TimeUnit.MILLISECONDS);
+
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        assertTrue(later.await(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+        assertTrue(cancelled.isCancelled());
+    }
+
+    @Test
+    public void failingTaskDoesNotStopTheTimer() throws InterruptedException {
+        CountDownLatch fired = new CountDownLatch(1);
+        timer.schedule(() -> {
+            throw new IllegalStateException("expected by the test");
+        }, 0, TimeUnit.MILLISECONDS);
+        timer.schedule(fired::countDown, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void stoppedTimerRejectsTasks() {
+        timer.stop();
+
+        assertThrows(IllegalStateException.class, () -> timer.schedule(() -> { }, 1, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,292 @@
+package com.example.aem.vercel.workflow.service.impl;
+
+import com.example.aem.vercel.workflow.config.WorkflowConfig;
+import com.example.aem.vercel.workflow.model.WorkflowDefinitionModel;
+import com.example.aem.vercel.workflow.model.WorkflowEdgeModel;
+import com.example.aem.vercel.workflow.model.WorkflowExecutionModel;
+import com.example.aem.vercel.workflow.model.WorkflowStepModel;
+import com.example.aem.vercel.workflow.service.StepExecutor;
+import com.example.aem.vercel.workflow.service.WorkflowDefinitionService;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.ExecutionRequest;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.Priority;
+import com.example.aem.vercel.workflow.service.WorkflowExecutionService.StartResult;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class WorkflowExecutionServiceImplTest {
+
+    private final Map<String, Object> settings = new HashMap<>();
+    private final WorkflowDefinitionService definitions = mock(WorkflowDefinitionService.class);
+    private final ResourceResolverFactory resolverFactory = mock(ResourceResolverFactory.class);
+    private final List<WorkflowExecutionServiceImpl> services = new ArrayList<>();
+    private Path journalDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        journalDirectory = Files.createTempDirectory("workflow-journal");
+        settings.put("journalDirectory", journalDirectory.toString());
+        // No repository: executions are recovered from the journal alone
+        when(resolverFactory.getServiceResourceResolver(null)).thenThrow(new LoginException("No repository"));
+
+        WorkflowDefinitionModel workflow = new WorkflowDefinitionModel("wf", "Approval");
+        workflow.addStep(new WorkflowStepModel("start", "task", 0, 0));
+        workflow.addStep(new WorkflowStepModel("approve", "task", 0, 0));
+        workflow.addStep(new WorkflowStepModel("end", "task", 0, 0));
+        workflow.addEdge(new WorkflowEdgeModel("e1", "start", "approve"));
+        workflow.addEdge(new WorkflowEdgeModel("e2", "approve", "end"));
+        when(definitions.getWorkflow("wf")).thenReturn(Optional.of(workflow));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        services.forEach(WorkflowExecutionServiceImpl::deactivate);
+        try (Stream<Path> files = Files.walk(journalDirectory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Test
+    public void recoversAnInFlightExecutionWithTypedVariables() throws Exception {
+        TaskExecutor before = new TaskExecutor();
+        before.results.put("approve", new CompletableFuture<>());
+        WorkflowExecutionServiceImpl service = activate(before);
+        Map<String, Object> variables = Map.of(
+            "count", 3,
+            "ratio", 0.5,
+            "order", Map.of("id", 7, "items", List.of("a", "b")));
+        String executionId = service.startExecution("wf", "alice", variables).getId();
+        before.await("approve");
+        deactivate(service);
+
+        TaskExecutor after = new TaskExecutor();
+        WorkflowExecutionModel execution = awaitFinished(activate(after), executionId);
+
+        assertTrue(execution.isCompleted());
+        // The start step runs again only if the deactivation overtook its checkpoint
+        assertEquals(List.of("approve", "end"), after.started.subList(after.started.size() - 2, after.started.size()));
+        assertEquals(3, execution.getVariable("count"));
+        assertEquals(0.5, execution.getVariable("ratio"));
+        assertEquals(Map.of("id", 7, "items", List.of("a", "b")), execution.getVariable("order"));
+    }
+
+    @Test
+    public void recoversAPausedExecutionParked() throws Exception {
+        TaskExecutor before = new TaskExecutor();
+        CompletableFuture<Map<String, Object>> approval = new CompletableFuture<>();
+        before.results.put("approve", approval);
+        WorkflowExecutionServiceImpl service = activate(before);
+        String executionId = service.startExecution("wf", "alice", Map.of()).getId();
+        before.await("approve");
+        assertTrue(service.pauseExecution(executionId));
+        approval.complete(Map.of("approved", true));
+        awaitIdle(service);
+        deactivate(service);
+
+        TaskExecutor after = new TaskExecutor();
+        WorkflowExecutionServiceImpl recovered = activate(after);
+        assertEquals("paused", recovered.getExecutionStatus(executionId));
+        assertTrue(after.started.isEmpty());
+
+        assertTrue(recovered.resumeExecution(executionId));
+        WorkflowExecutionModel execution = awaitFinished(recovered, executionId);
+        assertTrue(execution.isCompleted());
+        assertEquals(List.of("end"), after.started);
+        assertEquals(true, execution.getVariable("approved"));
+    }
+
+    @Test
+    public void pausedExecutionGivesItsSlotBackUntilResumed() throws Exception {
+        TaskExecutor executor = new TaskExecutor();
+        CompletableFuture<Map<String, Object>> approval = new CompletableFuture<>();
+        executor.results.put("approve", approval);
+        WorkflowExecutionServiceImpl service = activate(executor);
+        String executionId = service.startExecution("wf", "alice", Map.of()).getId();
+        executor.await("approve");
+
+        assertTrue(service.pauseExecution(executionId));
+        approval.complete(Map.of());
+        awaitIdle(service);
+        assertEquals("paused", service.getExecutionStatus(executionId));
+        assertEquals(List.of("start", "approve"), executor.started);
+
+        assertTrue(service.resumeExecution(executionId));
+        assertTrue(awaitFinished(service, executionId).isCompleted());
+        assertEquals(List.of("start", "approve", "end"), executor.started);
+    }
+
+    @Test
+    public void cancelledParkedExecutionDoesNotRunAgain() throws Exception {
+        TaskExecutor executor = new TaskExecutor();
+        CompletableFuture<Map<String, Object>> approval = new CompletableFuture<>();
+        executor.results.put("approve", approval);
+        WorkflowExecutionServiceImpl service = activate(executor);
+        String executionId = service.startExecution("wf", "alice", Map.of()).getId();
+        executor.await("approve");
+        assertTrue(service.pauseExecution(executionId));
+        approval.complete(Map.of());
+        awaitIdle(service);
+
+        assertTrue(service.cancelExecution(executionId, "No longer needed"));
+
+        assertEquals("cancelled", service.getExecutionStatus(executionId));
+        assertFalse(service.resumeExecution(executionId));
+        assertEquals(List.of("start", "approve"), executor.started);
+    }
+
+    @Test
+    public void stepResultThatCannotBeStoredFailsTheExecution() throws Exception {
+        TaskExecutor executor = new TaskExecutor();
+        executor.results.put("approve", CompletableFuture.completedFuture(Map.of("document", new Object())));
+        WorkflowExecutionServiceImpl service = activate(executor);
+        WorkflowExecutionModel execution = service.startExecution("wf", "alice", Map.of());
+        String executionId = execution.getId();
+
+        awaitIdle(service);
+        assertTrue(execution.isFailed());
+        assertTrue(execution.getLogs().stream().anyMatch(entry ->
+            entry.getMessage().contains("Step approve returned variables that cannot be stored")));
+        assertEquals(List.of("start", "approve"), executor.started);
+
+        // The failure itself was journaled, so a restart does not run the execution again
+        deactivate(service);
+        TaskExecutor after = new TaskExecutor();
+        assertEquals("failed", activate(after).getExecutionStatus(executionId));
+        assertTrue(after.started.isEmpty());
+    }
+
+    @Test
+    public void batchIsJournaledBeforeItsExecutionsRun() throws Exception {
+        TaskExecutor executor = new TaskExecutor();
+        WorkflowExecutionServiceImpl service = activate(executor);
+        ExecutionJournal journal = (ExecutionJournal) field(service, "journal");
+        List<String> unjournaled = Collections.synchronizedList(new ArrayList<>());
+        executor.onStart = context -> {
+            if (journal.getUncompacted(context.getExecutionId()) == null) {
+                unjournaled.add(context.getExecutionId());
+            }
+        };
+
+        List<StartResult> results = service.startExecutions(List.of(
+            new ExecutionRequest("wf", "alice", Map.of(), Priority.NORMAL),
+            new ExecutionRequest("wf", "bob", Map.of(), Priority.NORMAL)));
+
+        assertTrue(results.stream().allMatch(StartResult::isStarted));
+        for (StartResult result : results) {
+            assertTrue(awaitFinished(service, result.getExecutionId()).isCompleted());
+        }
+        assertEquals(6, executor.started.size());
+        assertEquals(List.of(), unjournaled);
+    }
+
+    private WorkflowExecutionServiceImpl activate(StepExecutor executor) throws ReflectiveOperationException {
+        WorkflowExecutionServiceImpl service = new WorkflowExecutionServiceImpl();
+        inject(service, "workflowDefinitionService", definitions);
+        inject(service, "resourceResolverFactory", resolverFactory);
+        service.bindStepExecutor(executor, Map.of(StepExecutor.STEP_TYPE_PROPERTY, "task"));
+        service.activate(mock(WorkflowConfig.class, invocation -> settings.getOrDefault(
+            invocation.getMethod().getName(), invocation.getMethod().getDefaultValue())));
+        services.add(service);
+        return service;
+    }
+
+    private void deactivate(WorkflowExecutionServiceImpl service) {
+        services.remove(service);
+        service.deactivate();
+    }
+
+    private static void inject(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static Object field(Object target, String name) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    private static WorkflowExecutionModel awaitFinished(WorkflowExecutionServiceImpl service, String executionId)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (System.currentTimeMillis() < deadline) {
+            WorkflowExecutionModel execution = service.getExecution(executionId).orElseThrow();
+            if (execution.getState().isTerminal()) {
+                return execution;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Execution did not finish: " + executionId);
+    }
+
+    /**
+     * Wait until no execution holds a slot. A run is checkpointed and done logging before it
+     * gives its slot back, whether it finished or was parked.
+     */
+    private static void awaitIdle(WorkflowExecutionServiceImpl service) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (service.getSchedulerStatistics().getRunningExecutions() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Executions still hold slots");
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Runs "task" steps, completing each at once unless a result is set for its step ID.
+     * The start hook runs first on every step.
+     */
+    private static final class TaskExecutor implements StepExecutor {
+        private final Map<String, CompletionStage<Map<String, Object>>> results = new HashMap<>();
+        private final Map<String, CountDownLatch> startedLatches = new HashMap<>();
+        private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+        private volatile Consumer<StepContext> onStart = context -> { };
+
+        @Override
+        public CompletionStage<Map<String, Object>> execute(StepContext context) {
+            String stepId = context.getStep().getId();
+            onStart.accept(context);
+            started.add(stepId);
+            latch(stepId).countDown();
+            return results.getOrDefault(stepId, CompletableFuture.completedFuture(Map.of()));
+        }
+
+        void await(String stepId) throws InterruptedException {
+            assertTrue("Step did not start: " + stepId, latch(stepId).await(10, TimeUnit.SECONDS));
+        }
+
+        private synchronized CountDownLatch latch(String stepId) {
+            return startedLatches.computeIfAbsent(stepId, id -> new CountDownLatch(1));
+        }
+    }
+}